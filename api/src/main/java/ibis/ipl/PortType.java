@@ -140,6 +140,17 @@ public final class PortType extends CapabilitySet {
      */
     public final static String COMMUNICATION_NUMBERED = COMMUNICATION + ".numbered";
 
+    /**
+     * This capability describes that multiple threads may build messages on a
+     * single sendport concurrently. Each thread writes its message into a private
+     * buffer; finished messages are handed to the connection(s) in the order in
+     * which they were finished. Only byte and data serialization can be combined
+     * with this capability.
+     *
+     * @ibis.experimental
+     */
+    public final static String COMMUNICATION_CONCURRENT_SENDERS = COMMUNICATION + ".concurrentsenders";
+
     /** This capability describes that communication is reliable. */
     public final static String COMMUNICATION_RELIABLE = COMMUNICATION + ".reliable";
 
@@ -152,6 +163,22 @@ public final class PortType extends CapabilitySet {
      */
     public final static String COMMUNICATION_RELIABLE_UNSAFE = COMMUNICATION + ".reliable.unsafe";
 
+    /**
+     * This capability describes that the data of messages is compressed, which
+     * trades CPU time for bandwidth. The codec is determined by the
+     * <code>ibis.io.compression</code> property of the sender.
+     */
+    public final static String COMMUNICATION_COMPRESSED = COMMUNICATION + ".compressed";
+
+    /**
+     * This capability describes that the sender may hold back finished messages
+     * for a short while, so that several small messages are sent in one go. The
+     * messages are still received one by one, but the latency of a message may
+     * grow by up to the <code>ibis.coalescing.delay</code> property of the
+     * sender, in microseconds.
+     */
+    public final static String COMMUNICATION_COALESCING = COMMUNICATION + ".coalescing";
+
     /**
      * This capability describes that readByte/writeByte and
      * readArray/writeArray(byte[]) are supported.
@@ -164,6 +191,14 @@ public final class PortType extends CapabilitySet {
      */
     public final static String SERIALIZATION_DATA = SERIALIZATION + ".data";
 
+    /**
+     * This capability describes that data serialization is supported with ints
+     * and longs sent as variable-length numbers, and int and long arrays as
+     * variable-length differences between successive elements. This saves
+     * bandwidth when most numbers are small, or arrays are (nearly) sorted.
+     */
+    public final static String SERIALIZATION_DATA_COMPACT = SERIALIZATION_DATA + ".compact";
+
     /**
      * This capability describes that some sort of object serialization is
      * supported. Applications may ask for a specific implementation by specifying,
@@ -19,6 +19,7 @@ package ibis.ipl;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A message used to write data from a {@link SendPort} to one or more
@@ -132,6 +133,29 @@ public interface WriteMessage {
      */
     public void finish(IOException exception);
 
+    /**
+     * Finishes the message like {@link #finish()}, but does not wait until the
+     * message has been sent. The message is finished when this method returns,
+     * so a new message may be obtained from the {@link SendPort}, but the data
+     * written to it may only be touched again when the returned future is
+     * complete. The future yields the number of bytes written in this message,
+     * or completes exceptionally when the message could not be sent.
+     * <p>
+     * The default implementation just calls {@link #finish()}.
+     *
+     * @return a future for the number of bytes written in this message.
+     */
+    public default CompletableFuture<Long> finishAsync() {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        try {
+            result.complete(finish());
+        } catch (IOException e) {
+            finish(e);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
     /**
      * Returns the number of bytes read from this message. Note that for streaming
      * implementations (i.e., messages with an unlimited capacity) this number may
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.benchmarks.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ibis.io.SerializationInput;
+import ibis.io.SerializationOutput;
+
+/**
+ * Measures writing and reading byte arrays with byte serialization, which
+ * supports nothing else.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ByteSerializationBenchmark extends SerializationBenchmark {
+
+    @Param({ "256", "65536" })
+    public int length;
+
+    private byte[] array;
+
+    @Setup
+    public void setup() throws Exception {
+        array = new byte[length];
+        open("byte");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        close();
+    }
+
+    @Override
+    void writeMessage(SerializationOutput out) throws IOException {
+        out.writeArray(array);
+    }
+
+    @Override
+    Object readMessage(SerializationInput in) throws IOException {
+        in.readArray(array);
+        return array;
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        super.write();
+    }
+
+    @Benchmark
+    public Object read() throws IOException, ClassNotFoundException {
+        return super.read();
+    }
+}
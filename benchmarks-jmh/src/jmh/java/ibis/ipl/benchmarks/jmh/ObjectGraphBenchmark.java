@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.benchmarks.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ibis.io.SerializationInput;
+import ibis.io.SerializationOutput;
+import ibis.ipl.benchmarks.javaGrande02.DList;
+import ibis.ipl.benchmarks.javaGrande02.List;
+import ibis.ipl.benchmarks.javaGrande02.Tree;
+
+/**
+ * Measures writing and reading object graphs with the object serializations.
+ * The lists and trees are the data types of the JavaGrande02 benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ObjectGraphBenchmark extends SerializationBenchmark {
+
+    @Param({ "ibis", "sun" })
+    public String serialization;
+
+    @Param({ "tree", "list", "dlist", "strings" })
+    public String graph;
+
+    /** Number of objects in the graph. */
+    @Param({ "1023" })
+    public int size;
+
+    private Object data;
+
+    @Setup
+    public void setup() throws Exception {
+        switch (graph) {
+        case "tree":
+            data = new Tree(size);
+            break;
+        case "list":
+            data = new List(size);
+            break;
+        case "dlist":
+            data = new DList(size);
+            break;
+        case "strings":
+            String[] strings = new String[size];
+            for (int i = 0; i < size; i++) {
+                strings[i] = "string number " + i;
+            }
+            data = strings;
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown object graph " + graph);
+        }
+        open(serialization);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        close();
+    }
+
+    @Override
+    void writeMessage(SerializationOutput out) throws IOException {
+        out.writeObject(data);
+    }
+
+    @Override
+    Object readMessage(SerializationInput in) throws IOException, ClassNotFoundException {
+        return in.readObject();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        super.write();
+    }
+
+    @Benchmark
+    public Object read() throws IOException, ClassNotFoundException {
+        return super.read();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.benchmarks.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ibis.io.SerializationInput;
+import ibis.io.SerializationOutput;
+
+/**
+ * Measures writing and reading primitive arrays with the serializations that
+ * support them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PrimitiveArrayBenchmark extends SerializationBenchmark {
+
+    @Param({ "data", "ibis", "sun" })
+    public String serialization;
+
+    @Param({ "byte", "int", "double" })
+    public String type;
+
+    @Param({ "256", "65536" })
+    public int length;
+
+    private Object array;
+
+    @Setup
+    public void setup() throws Exception {
+        switch (type) {
+        case "byte":
+            array = new byte[length];
+            break;
+        case "int":
+            array = new int[length];
+            break;
+        case "double":
+            array = new double[length];
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown array type " + type);
+        }
+        open(serialization);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        close();
+    }
+
+    @Override
+    void writeMessage(SerializationOutput out) throws IOException {
+        if (array instanceof byte[]) {
+            out.writeArray((byte[]) array);
+        } else if (array instanceof int[]) {
+            out.writeArray((int[]) array);
+        } else {
+            out.writeArray((double[]) array);
+        }
+    }
+
+    @Override
+    Object readMessage(SerializationInput in) throws IOException {
+        if (array instanceof byte[]) {
+            in.readArray((byte[]) array);
+        } else if (array instanceof int[]) {
+            in.readArray((int[]) array);
+        } else {
+            in.readArray((double[]) array);
+        }
+        return array;
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        super.write();
+    }
+
+    @Benchmark
+    public Object read() throws IOException, ClassNotFoundException {
+        return super.read();
+    }
+}
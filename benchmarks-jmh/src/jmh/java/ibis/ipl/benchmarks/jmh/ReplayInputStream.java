@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.benchmarks.jmh;
+
+import java.io.InputStream;
+
+/**
+ * An input stream that delivers a prefix once, and then repeats a single
+ * message forever. This allows a deserializer to read the same message over and
+ * over again, without any I/O.
+ */
+final class ReplayInputStream extends InputStream {
+
+    private final byte[] prefix;
+
+    private final byte[] message;
+
+    private byte[] current;
+
+    private int index = 0;
+
+    ReplayInputStream(byte[] prefix, byte[] message) {
+        this.prefix = prefix;
+        this.message = message;
+        current = prefix.length > 0 ? prefix : message;
+    }
+
+    @Override
+    public int read() {
+        int b = current[index++] & 0xff;
+        next();
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        int n = Math.min(len, current.length - index);
+        System.arraycopy(current, index, b, off, n);
+        index += n;
+        next();
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current.length - index;
+    }
+
+    private void next() {
+        if (index == current.length) {
+            current = message;
+            index = 0;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.benchmarks.jmh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import ibis.io.BufferedArrayInputStream;
+import ibis.io.BufferedArrayOutputStream;
+import ibis.io.SerializationFactory;
+import ibis.io.SerializationInput;
+import ibis.io.SerializationOutput;
+
+/**
+ * Base class of the serialization benchmarks. A benchmark writes messages to
+ * a serialization stream on top of a stream that discards everything, and
+ * reads messages from a serialization stream on top of a stream that replays a
+ * recorded message. No network or registry is involved.
+ */
+abstract class SerializationBenchmark {
+
+    /** The output stream under test. */
+    SerializationOutput out;
+
+    /** The input stream under test. */
+    SerializationInput in;
+
+    /**
+     * Writes a single message to the specified stream.
+     *
+     * @param out the stream.
+     * @throws IOException is thrown in case of trouble.
+     */
+    abstract void writeMessage(SerializationOutput out) throws IOException;
+
+    /**
+     * Reads a single message, as written by {@link #writeMessage}, from the
+     * specified stream.
+     *
+     * @param in the stream.
+     * @return something derived from the message, to be consumed by JMH.
+     * @throws IOException            is thrown in case of trouble.
+     * @throws ClassNotFoundException is thrown when a class cannot be loaded.
+     */
+    abstract Object readMessage(SerializationInput in) throws IOException, ClassNotFoundException;
+
+    /**
+     * Creates the streams under test for the specified serialization. Must be
+     * called after the payload has been created.
+     *
+     * @param serialization the serialization nickname.
+     * @throws Exception is thrown in case of trouble.
+     */
+    void open(String serialization) throws Exception {
+        out = SerializationFactory.createSerializationOutput(serialization, new BufferedArrayOutputStream(OutputStream.nullOutputStream()), null);
+
+        // Record the stream header plus a first message, which may contain
+        // type information, and then two more messages. Those should be the
+        // same, and one of them is replayed to the reader.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SerializationOutput recorder = SerializationFactory.createSerializationOutput(serialization, new BufferedArrayOutputStream(bytes), null);
+        int[] marks = new int[3];
+        for (int i = 0; i < marks.length; i++) {
+            writeMessage(recorder);
+            recorder.reset();
+            recorder.flush();
+            marks[i] = bytes.size();
+        }
+        byte[] recorded = bytes.toByteArray();
+        byte[] prefix = Arrays.copyOfRange(recorded, 0, marks[0]);
+        byte[] message = Arrays.copyOfRange(recorded, marks[0], marks[1]);
+        if (!Arrays.equals(message, Arrays.copyOfRange(recorded, marks[1], marks[2]))) {
+            throw new IllegalStateException("Messages of " + serialization + " serialization cannot be replayed");
+        }
+        recorder.close();
+
+        in = SerializationFactory.createSerializationInput(serialization, new BufferedArrayInputStream(new ReplayInputStream(prefix, message)), null);
+        readMessage(in);
+    }
+
+    /**
+     * Writes a message to the stream under test.
+     *
+     * @throws IOException is thrown in case of trouble.
+     */
+    void write() throws IOException {
+        writeMessage(out);
+        out.reset();
+        out.flush();
+    }
+
+    /**
+     * Reads a message from the stream under test.
+     *
+     * @return something derived from the message.
+     * @throws IOException            is thrown in case of trouble.
+     * @throws ClassNotFoundException is thrown when a class cannot be loaded.
+     */
+    Object read() throws IOException, ClassNotFoundException {
+        return readMessage(in);
+    }
+
+    void close() throws IOException {
+        out.close();
+        in.close();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.benchmarks.jmh;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ibis.util.ThreadPool;
+
+/**
+ * Compares the backends of {@link ThreadPool}. The backend is chosen when the
+ * class is initialized, which works here because JMH runs each parameter
+ * combination in a separate fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ThreadPoolBenchmark {
+
+    /** Number of blocking tasks in a burst, as with many upcalls at once. */
+    private static final int BURST = 1000;
+
+    @Param({ "pool", "virtual" })
+    public String backend;
+
+    @Setup
+    public void setup() {
+        System.setProperty(ThreadPool.s_backend, backend);
+    }
+
+    /** Time from submitting a task until it has run. */
+    @Benchmark
+    public void startLatency() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        ThreadPool.createNew(done::countDown, "benchmark");
+        done.await();
+    }
+
+    /** Time to run a burst of tasks that each block for a millisecond. */
+    @Benchmark
+    public void blockingBurst() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BURST);
+        for (int i = 0; i < BURST; i++) {
+            ThreadPool.createNew(() -> {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    // ignored
+                }
+                done.countDown();
+            }, "benchmark");
+        }
+        done.await();
+    }
+}
@@ -45,7 +45,10 @@ class Sender extends Thread {
 
     int me;
 
-    Sender(Ibis ibis, PortType t, int count, int repeat, boolean sendTree, IbisIdentifier master, int me) {
+    /** The sendport shared by all senders, or null if each sender has its own. */
+    SendPort shared;
+
+    Sender(Ibis ibis, PortType t, int count, int repeat, boolean sendTree, IbisIdentifier master, int me, SendPort shared) {
         this.ibis = ibis;
         this.t = t;
         this.count = count;
@@ -53,6 +56,7 @@ class Sender extends Thread {
         this.sendTree = sendTree;
         this.master = master;
         this.me = me;
+        this.shared = shared;
     }
 
     @Override
@@ -63,8 +67,11 @@ class Sender extends Thread {
                 tree = new DITree(1023);
             }
 
-            SendPort sport = ibis.createSendPort(t, "send port " + me);
-            sport.connect(master, "receive port");
+            SendPort sport = shared;
+            if (sport == null) {
+                sport = ibis.createSendPort(t, "send port " + me);
+                sport.connect(master, "receive port");
+            }
 
             System.err.println(this + ": Connection established -- I'm a Sender");
             long totalTime = System.currentTimeMillis();
@@ -76,7 +83,9 @@ class Sender extends Thread {
                 for (int i = 0; i < count; i++) {
                     WriteMessage writeMessage = sport.newMessage();
                     ConcurrentSenders.logger.debug("LAT: send message");
-                    if (sendTree) {
+                    if (shared != null) {
+                        writeMessage.writeArray(ConcurrentSenders.payload);
+                    } else if (sendTree) {
                         writeMessage.writeObject(tree);
                     } else {
                         writeMessage.writeObject("total world domination");
@@ -96,11 +105,13 @@ class Sender extends Thread {
             totalTime = System.currentTimeMillis() - totalTime;
             System.err.println("SENDER: TOTAL TIME is " + (totalTime / 1000.0) + " seconds");
 
-            System.err.println("sender done, freeing sport");
-            sport.close();
-            System.err.println("sender done, terminating ibis");
-            ibis.end();
-            System.err.println("sender done, exit");
+            if (shared == null) {
+                System.err.println("sender done, freeing sport");
+                sport.close();
+                System.err.println("sender done, terminating ibis");
+                ibis.end();
+                System.err.println("sender done, exit");
+            }
         } catch (Exception e) {
             System.err.println("got exception: " + e);
             e.printStackTrace();
@@ -125,12 +136,15 @@ class Receiver implements MessageUpcall {
 
     int senders;
 
-    Receiver(Ibis ibis, PortType t, int count, int repeat, int senders, boolean doFinish) {
+    boolean shared;
+
+    Receiver(Ibis ibis, PortType t, int count, int repeat, int senders, boolean doFinish, boolean shared) {
         this.ibis = ibis;
         this.t = t;
         this.count = count;
         this.repeat = repeat;
         this.senders = senders;
+        this.shared = shared;
         System.err.println(this + ": I'm a Receiver");
 
         try {
@@ -159,7 +173,11 @@ class Receiver implements MessageUpcall {
         // System.err.println("Got readMessage!!");
 
         try {
-            readMessage.readObject();
+            if (shared) {
+                readMessage.readArray(new int[ConcurrentSenders.payload.length]);
+            } else {
+                readMessage.readObject();
+            }
 
             if (doFinish) {
                 readMessage.finish();
@@ -200,8 +218,10 @@ class ConcurrentSenders {
 
     static IbisIdentifier master;
 
+    static final int[] payload = new int[256];
+
     static void usage() {
-        System.out.println("Usage: ConcurrentReceives [-ibis]");
+        System.out.println("Usage: ConcurrentSenders [-tree] [-finish] [-shared] [-count <n>] [-repeat <n>] [-senders <n>]");
         System.exit(0);
     }
 
@@ -212,6 +232,7 @@ class ConcurrentSenders {
         int repeat = 10;
         int rank = 0;
         int senders = 2;
+        boolean shared = false;
         /* Parse commandline parameters. */
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("-tree")) {
@@ -236,6 +257,9 @@ class ConcurrentSenders {
                 }
             } else if (args[i].equals("-finish")) {
                 doFinish = true;
+            } else if (args[i].equals("-shared")) {
+                // All sender threads share a single sendport.
+                shared = true;
             } else {
                 usage();
             }
@@ -244,8 +268,14 @@ class ConcurrentSenders {
         try {
             IbisCapabilities sp = new IbisCapabilities(IbisCapabilities.CLOSED_WORLD, IbisCapabilities.ELECTIONS_STRICT);
 
-            PortType t = new PortType(PortType.SERIALIZATION_OBJECT, PortType.COMMUNICATION_RELIABLE, PortType.RECEIVE_AUTO_UPCALLS,
-                    PortType.RECEIVE_EXPLICIT, PortType.CONNECTION_MANY_TO_ONE);
+            PortType t;
+            if (shared) {
+                t = new PortType(PortType.SERIALIZATION_DATA, PortType.COMMUNICATION_RELIABLE, PortType.COMMUNICATION_CONCURRENT_SENDERS,
+                        PortType.RECEIVE_AUTO_UPCALLS, PortType.RECEIVE_EXPLICIT, PortType.CONNECTION_MANY_TO_ONE);
+            } else {
+                t = new PortType(PortType.SERIALIZATION_OBJECT, PortType.COMMUNICATION_RELIABLE, PortType.RECEIVE_AUTO_UPCALLS,
+                        PortType.RECEIVE_EXPLICIT, PortType.CONNECTION_MANY_TO_ONE);
+            }
 
             ibis = IbisFactory.createIbis(sp, null, t);
 
@@ -264,11 +294,28 @@ class ConcurrentSenders {
             }
 
             if (rank == 0) {
-                new Receiver(ibis, t, count, repeat, senders, doFinish);
+                new Receiver(ibis, t, count, repeat, senders, doFinish, shared);
+            } else if (shared) {
+                SendPort sport = ibis.createSendPort(t, "shared send port");
+                sport.connect(master, "receive port");
+                long time = System.currentTimeMillis();
+                Sender[] s = new Sender[senders];
+                for (int i = 0; i < senders; i++) {
+                    s[i] = new Sender(ibis, t, count, repeat, sendTree, master, i, sport);
+                    s[i].start();
+                }
+                for (int i = 0; i < senders; i++) {
+                    s[i].join();
+                }
+                time = System.currentTimeMillis() - time;
+                System.err.println("SHARED: " + senders + " senders, " + ((long) count * repeat * senders * 1000L / Math.max(time, 1))
+                        + " msgs/s");
+                sport.close();
+                ibis.end();
             } else {
                 // start N senders
                 for (int i = 0; i < senders; i++) {
-                    new Sender(ibis, t, count, repeat, sendTree, master, i).start();
+                    new Sender(ibis, t, count, repeat, sendTree, master, i, null).start();
                 }
             }
 
@@ -33,6 +33,7 @@ import ibis.ipl.ReceivePort;
 import ibis.ipl.Registry;
 import ibis.ipl.SendPort;
 import ibis.ipl.WriteMessage;
+import ibis.util.Histogram;
 
 class Computer extends Thread {
 
@@ -105,6 +106,9 @@ class Sender {
 
     boolean objects;
 
+    /** Round-trip times, in nanoseconds. */
+    Histogram rtt = new Histogram();
+
     Sender(ReceivePort rport, SendPort sport, int size, boolean objects) {
         this.rport = rport;
         this.sport = sport;
@@ -121,6 +125,7 @@ class Sender {
             long time = System.currentTimeMillis();
 
             for (int i = 0; i < count; i++) {
+                long start = System.nanoTime();
                 WriteMessage writeMessage = sport.newMessage();
                 if (buffer != null) {
                     if (objects) {
@@ -142,12 +147,15 @@ class Sender {
                     }
                 }
                 readMessage.finish();
+                rtt.record(System.nanoTime() - start);
             }
 
             time = System.currentTimeMillis() - time;
 
             double speed = (time * 1000.0) / count;
             System.err.println("Latency: " + count + " calls took " + (time / 1000.0) + " seconds, time/call = " + speed + " micros");
+            System.err.println("Round trip micros: " + rtt.summary(1000));
+            rtt.reset();
             if (c != null) {
                 c.printCycles("Sender");
             }
@@ -307,6 +315,12 @@ class UpcallSender implements MessageUpcall {
 
     boolean objects;
 
+    /** Time at which the last message was sent, in nanoseconds. */
+    long sent;
+
+    /** Round-trip times, in nanoseconds. */
+    Histogram rtt = new Histogram();
+
     UpcallSender(SendPort sport, int count, int repeat, Computer c, int size, boolean objects) {
         this.sport = sport;
         this.count = 0;
@@ -322,6 +336,7 @@ class UpcallSender implements MessageUpcall {
     public void start() {
         try {
             System.err.println("Starting " + count);
+            sent = System.nanoTime();
             WriteMessage writeMessage = sport.newMessage();
             if (buffer != null) {
                 if (objects) {
@@ -349,6 +364,7 @@ class UpcallSender implements MessageUpcall {
             }
 
             readMessage.finish();
+            rtt.record(System.nanoTime() - sent);
 
             // System.err.println("Sending " + count);
 
@@ -366,6 +382,8 @@ class UpcallSender implements MessageUpcall {
                 time = System.currentTimeMillis();
                 double speed = ((time - temp) * 1000.0) / max;
                 System.err.println("Latency: " + max + " calls took " + ((time - temp) / 1000.0) + " seconds, time/call = " + speed + " micros");
+                System.err.println("Round trip micros: " + rtt.summary(1000));
+                rtt.reset();
                 synchronized (this) {
                     count = 0;
                     repeat--;
@@ -377,6 +395,7 @@ class UpcallSender implements MessageUpcall {
             }
 
             Latency.logger.debug("SEND pre new");
+            sent = System.nanoTime();
             WriteMessage writeMessage = sport.newMessage();
             if (buffer != null) {
                 if (objects) {
@@ -29,6 +29,7 @@ import ibis.ipl.ReceivePort;
 import ibis.ipl.Registry;
 import ibis.ipl.SendPort;
 import ibis.ipl.WriteMessage;
+import ibis.util.Histogram;
 
 class PollingPingPong {
 
@@ -36,6 +37,9 @@ class PollingPingPong {
         SendPort sport;
         ReceivePort rport;
 
+        /** Round-trip times, in nanoseconds. */
+        Histogram rtt = new Histogram();
+
         Sender(ReceivePort rport, SendPort sport) {
             this.rport = rport;
             this.sport = sport;
@@ -47,6 +51,7 @@ class PollingPingPong {
                 long time = System.currentTimeMillis();
 
                 for (int i = 0; i < count; i++) {
+                    long start = System.nanoTime();
                     WriteMessage writeMessage = sport.newMessage();
                     writeMessage.finish();
 
@@ -55,6 +60,7 @@ class PollingPingPong {
                         readMessage = rport.poll();
                     }
                     readMessage.finish();
+                    rtt.record(System.nanoTime() - start);
 //		System.err.print(".");
                 }
 
@@ -62,6 +68,8 @@ class PollingPingPong {
 
                 double speed = (time * 1000.0) / count;
                 System.err.println("Latency: " + count + " calls took " + (time / 1000.0) + " seconds, time/call = " + speed + " micros");
+                System.err.println("Round trip micros: " + rtt.summary(1000));
+                rtt.reset();
             }
         }
     }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.benchmarks.registry;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.ipl.Ibis;
+import ibis.ipl.IbisCapabilities;
+import ibis.ipl.IbisFactory;
+import ibis.ipl.PortType;
+import ibis.util.ThreadPool;
+
+/**
+ * Generates load on the central registry server: a number of Ibises join at
+ * the same time, after which each of them requests sequence numbers as fast as
+ * it can. Every request also counts as a heartbeat on the server. Reports the
+ * join rate and the request rate.
+ */
+public final class LoadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private final Ibis[] ibises;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private volatile boolean stopped = false;
+
+    LoadGenerator(int count) throws Exception {
+        ibises = new Ibis[count];
+
+        IbisCapabilities capabilities = new IbisCapabilities(IbisCapabilities.MEMBERSHIP_UNRELIABLE);
+        PortType portType = new PortType(PortType.CONNECTION_ONE_TO_ONE, PortType.SERIALIZATION_OBJECT);
+
+        CountDownLatch joined = new CountDownLatch(count);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            ThreadPool.createNew(() -> {
+                try {
+                    ibises[index] = IbisFactory.createIbis(capabilities, null, portType);
+                } catch (Exception e) {
+                    logger.error("cannot create ibis", e);
+                }
+                joined.countDown();
+            }, "joiner");
+        }
+        joined.await();
+        long time = System.currentTimeMillis() - start;
+
+        System.out.printf("%d joins in %d ms (%.1f joins/s)\n", count, time, count * 1000.0 / Math.max(time, 1));
+    }
+
+    void run(long runtime) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(ibises.length);
+        long start = System.currentTimeMillis();
+        for (Ibis ibis : ibises) {
+            ThreadPool.createNew(() -> {
+                try {
+                    while (!stopped && ibis != null) {
+                        ibis.registry().getSequenceNumber("load");
+                        requests.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    logger.error("request failed", e);
+                }
+                done.countDown();
+            }, "load generator");
+        }
+        Thread.sleep(runtime);
+        stopped = true;
+        done.await();
+        long time = System.currentTimeMillis() - start;
+
+        System.out.printf("%d requests in %d ms (%.1f requests/s)\n", requests.get(), time, requests.get() * 1000.0 / Math.max(time, 1));
+    }
+
+    void end() {
+        for (Ibis ibis : ibises) {
+            if (ibis != null) {
+                try {
+                    ibis.end();
+                } catch (IOException e) {
+                    logger.error("cannot end ibis: " + e);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = 100;
+        long runtime = 10000;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("--ibises")) {
+                i++;
+                count = Integer.parseInt(args[i]);
+            } else if (args[i].equalsIgnoreCase("--runtime")) {
+                i++;
+                runtime = Integer.parseInt(args[i]) * 1000L;
+            } else {
+                System.err.println("unknown option: " + args[i]);
+                System.exit(1);
+            }
+        }
+
+        LoadGenerator generator = new LoadGenerator(count);
+        generator.run(runtime);
+        generator.end();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.benchmarks.roundTrip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Properties;
+
+import ibis.ipl.Ibis;
+import ibis.ipl.IbisCapabilities;
+import ibis.ipl.IbisFactory;
+import ibis.ipl.PortType;
+import ibis.ipl.ReadMessage;
+import ibis.ipl.ReceivePort;
+import ibis.ipl.SendPort;
+import ibis.ipl.WriteMessage;
+
+/**
+ * Self-check of the bulk frames of NIO Ibis, in which large byte arrays and
+ * byte buffers are sent without copying. A single Ibis sends messages to
+ * itself, each with a small byte array in a normal frame, followed by a large
+ * byte array or direct byte buffer in a bulk frame, and an int. The sizes vary
+ * from message to message in steps that are not a multiple of eight, so that
+ * frames start and end at every position in the receive buffer, including
+ * exactly at its end, and the buffer has to be realigned after bulk data that
+ * was read straight from the channel. The sender runs ahead of the receiver,
+ * so bulk data is read both through the receive buffer and straight from the
+ * channel.
+ *
+ * Exits with a non-zero status when a message does not arrive intact.
+ *
+ * <pre>
+ * BulkFrameRoundTrip [count]
+ * </pre>
+ */
+public class BulkFrameRoundTrip {
+
+    /** Bulk frames are used for byte data of at least this size. */
+    static final int BULK_SIZE = 32 * 1024;
+
+    static final PortType portType = new PortType(PortType.SERIALIZATION_DATA, PortType.CONNECTION_ONE_TO_ONE, PortType.COMMUNICATION_RELIABLE,
+            PortType.RECEIVE_EXPLICIT);
+
+    final int count;
+
+    BulkFrameRoundTrip(int count) {
+        this.count = count;
+    }
+
+    static int smallSize(int i) {
+        return (i * 13) % 1021;
+    }
+
+    static int bulkSize(int i) {
+        return BULK_SIZE + (i * 4099) % (64 * 1024);
+    }
+
+    static byte[] data(int i, int size) {
+        byte[] b = new byte[size];
+        for (int j = 0; j < size; j++) {
+            b[j] = (byte) (i * 31 + j * 7);
+        }
+        return b;
+    }
+
+    void send(SendPort sport) throws IOException {
+        for (int i = 0; i < count; i++) {
+            WriteMessage w = sport.newMessage();
+            w.writeArray(data(i, smallSize(i)));
+            byte[] bulk = data(i, bulkSize(i));
+            if (i % 2 == 0) {
+                w.writeArray(bulk);
+            } else {
+                ByteBuffer b = ByteBuffer.allocateDirect(bulk.length + 3);
+                b.position(3);
+                b.put(bulk);
+                b.position(3);
+                w.writeByteBuffer(b);
+            }
+            w.writeInt(i);
+            w.finish();
+        }
+    }
+
+    boolean receive(ReceivePort rport) throws IOException {
+        for (int i = 0; i < count; i++) {
+            ReadMessage r = rport.receive();
+            byte[] small = new byte[smallSize(i)];
+            r.readArray(small);
+            byte[] bulk = new byte[bulkSize(i)];
+            if (i % 2 == 0) {
+                r.readArray(bulk);
+            } else {
+                ByteBuffer b = ByteBuffer.allocateDirect(bulk.length + 5);
+                b.position(5);
+                r.readByteBuffer(b);
+                b.position(5);
+                b.get(bulk);
+            }
+            int seqno = r.readInt();
+            r.finish();
+
+            if (!Arrays.equals(small, data(i, small.length)) || !Arrays.equals(bulk, data(i, bulk.length)) || seqno != i) {
+                System.err.println("Message " + i + " corrupt: small " + small.length + " bytes, bulk " + bulk.length + " bytes");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean run() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("ibis.implementation", "nio");
+        Ibis ibis = IbisFactory.createIbis(new IbisCapabilities(IbisCapabilities.CLOSED_WORLD), properties, true, null, portType);
+
+        ReceivePort rport = ibis.createReceivePort(portType, "round trip");
+        rport.enableConnections();
+        SendPort sport = ibis.createSendPort(portType);
+        sport.connect(rport.identifier());
+
+        IOException[] failure = new IOException[1];
+        Thread sender = new Thread("BulkFrameRoundTrip sender") {
+            @Override
+            public void run() {
+                try {
+                    send(sport);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        sender.setDaemon(true);
+        sender.start();
+
+        if (!receive(rport)) {
+            return false;
+        }
+        sender.join();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        sport.close();
+        rport.close();
+        ibis.end();
+        return true;
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        try {
+            if (!new BulkFrameRoundTrip(count).run()) {
+                System.exit(1);
+            }
+            System.out.println("BulkFrameRoundTrip: " + count + " messages ok");
+        } catch (Exception e) {
+            System.err.println("BulkFrameRoundTrip failed: " + e);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.benchmarks.roundTrip;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import ibis.ipl.Ibis;
+import ibis.ipl.IbisCapabilities;
+import ibis.ipl.IbisFactory;
+import ibis.ipl.PortType;
+import ibis.ipl.ReadMessage;
+import ibis.ipl.ReceivePort;
+import ibis.ipl.SendPort;
+import ibis.ipl.WriteMessage;
+
+/**
+ * Self-check of compact data serialization, which writes ints and longs as
+ * zigzag variable-length numbers and int and long arrays as variable-length
+ * differences. A single Ibis sends messages to itself, each starting with a
+ * different number of bytes, followed by more of the longest encodings than
+ * fit in a serialization buffer, so that numbers end exactly at the end of the
+ * buffer in some of the messages. The messages further hold the extreme
+ * values, sorted arrays that are sent as differences, random arrays that are
+ * sent as is, and arrays with runs of one-byte and of the longest differences,
+ * which also end exactly at the end of the buffer in some of the messages.
+ *
+ * Exits with a non-zero status when a message does not arrive intact.
+ *
+ * <pre>
+ * CompactRoundTrip [count]
+ * </pre>
+ */
+public class CompactRoundTrip {
+
+    static final PortType portType = new PortType(PortType.SERIALIZATION_DATA_COMPACT, PortType.CONNECTION_ONE_TO_ONE,
+            PortType.COMMUNICATION_RELIABLE, PortType.RECEIVE_EXPLICIT);
+
+    static final long[] LONGS = { 0, 1, -1, 63, -64, 64, -65, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE };
+
+    static final int[] INTS = { 0, 1, -1, 63, -64, 64, -65, Short.MAX_VALUE, Short.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE };
+
+    final int count;
+
+    CompactRoundTrip(int count) {
+        this.count = count;
+    }
+
+    /**
+     * The message contents, which depend on the message number only.
+     */
+    static final class Message {
+
+        final byte[] prefix;
+
+        final int[][] intArrays;
+
+        final long[][] longArrays;
+
+        Message(int i) {
+            Random random = new Random(i);
+            prefix = new byte[i % 31];
+            random.nextBytes(prefix);
+
+            int len = 64 + i % 1000;
+            int[] sorted = new int[len];
+            int[] noise = new int[len];
+            long[] drifting = new long[len];
+            for (int j = 0; j < len; j++) {
+                sorted[j] = j == 0 ? Integer.MIN_VALUE : sorted[j - 1] + random.nextInt(100);
+                noise[j] = random.nextInt();
+                drifting[j] = j == 0 ? Long.MAX_VALUE : drifting[j - 1] - random.nextInt(1000);
+            }
+
+            // Runs of one-byte differences and runs of the longest ones, over
+            // more than a serialization buffer.
+            int[] mixed = new int[4096];
+            long[] extremes = new long[2048];
+            for (int j = 0; j < mixed.length; j++) {
+                mixed[j] = (j / 64) % 2 == 0 ? j : (j % 2) * Integer.MIN_VALUE;
+            }
+            for (int j = 0; j < extremes.length; j++) {
+                extremes[j] = (j / 64) % 2 == 0 ? j : (j % 2) * Long.MIN_VALUE;
+            }
+
+            intArrays = new int[][] { sorted, mixed, noise, Arrays.copyOf(INTS, INTS.length) };
+            longArrays = new long[][] { drifting, extremes, Arrays.copyOf(LONGS, LONGS.length) };
+        }
+
+        void write(WriteMessage w) throws IOException {
+            for (byte b : prefix) {
+                w.writeByte(b);
+            }
+            // More of the longest encodings than fit in a buffer.
+            for (int j = 0; j < 1024; j++) {
+                w.writeLong(LONGS[9 + j % 2]);
+            }
+            for (long l : LONGS) {
+                w.writeLong(l);
+            }
+            for (int v : INTS) {
+                w.writeInt(v);
+            }
+            for (int[] a : intArrays) {
+                w.writeArray(a);
+            }
+            for (long[] a : longArrays) {
+                w.writeArray(a);
+            }
+        }
+
+        boolean read(ReadMessage r) throws IOException {
+            boolean ok = true;
+            for (byte b : prefix) {
+                ok &= r.readByte() == b;
+            }
+            for (int j = 0; j < 1024; j++) {
+                ok &= r.readLong() == LONGS[9 + j % 2];
+            }
+            for (long l : LONGS) {
+                ok &= r.readLong() == l;
+            }
+            for (int v : INTS) {
+                ok &= r.readInt() == v;
+            }
+            for (int[] a : intArrays) {
+                int[] b = new int[a.length];
+                r.readArray(b);
+                ok &= Arrays.equals(a, b);
+            }
+            for (long[] a : longArrays) {
+                long[] b = new long[a.length];
+                r.readArray(b);
+                ok &= Arrays.equals(a, b);
+            }
+            return ok;
+        }
+    }
+
+    void send(SendPort sport) throws IOException {
+        for (int i = 0; i < count; i++) {
+            WriteMessage w = sport.newMessage();
+            new Message(i).write(w);
+            w.finish();
+        }
+    }
+
+    boolean receive(ReceivePort rport) throws IOException {
+        for (int i = 0; i < count; i++) {
+            ReadMessage r = rport.receive();
+            boolean ok = new Message(i).read(r);
+            r.finish();
+            if (!ok) {
+                System.err.println("Message " + i + " corrupt");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean run() throws Exception {
+        Ibis ibis = IbisFactory.createIbis(new IbisCapabilities(IbisCapabilities.CLOSED_WORLD), null, portType);
+
+        ReceivePort rport = ibis.createReceivePort(portType, "round trip");
+        rport.enableConnections();
+        SendPort sport = ibis.createSendPort(portType);
+        sport.connect(rport.identifier());
+
+        IOException[] failure = new IOException[1];
+        Thread sender = new Thread("CompactRoundTrip sender") {
+            @Override
+            public void run() {
+                try {
+                    send(sport);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        sender.setDaemon(true);
+        sender.start();
+
+        if (!receive(rport)) {
+            return false;
+        }
+        sender.join();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        sport.close();
+        rport.close();
+        ibis.end();
+        return true;
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        try {
+            if (!new CompactRoundTrip(count).run()) {
+                System.exit(1);
+            }
+            System.out.println("CompactRoundTrip: " + count + " messages ok");
+        } catch (Exception e) {
+            System.err.println("CompactRoundTrip failed: " + e);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.benchmarks.roundTrip;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import ibis.ipl.Ibis;
+import ibis.ipl.IbisCapabilities;
+import ibis.ipl.IbisFactory;
+import ibis.ipl.PortType;
+import ibis.ipl.ReadMessage;
+import ibis.ipl.ReceivePort;
+import ibis.ipl.SendPort;
+import ibis.ipl.WriteMessage;
+
+/**
+ * Self-check of the compression of the <code>communication.compressed</code>
+ * capability. A single Ibis sends messages to itself, each with a number of
+ * byte arrays that are compressed as separate blocks:
+ * <ul>
+ * <li>random bytes, which do not compress and are sent as is;</li>
+ * <li>repetitive bytes, of which some blocks are sent as is because they
+ * follow a block that did not compress, and the others are compressed;</li>
+ * <li>random bytes with long repeats, which compress into long runs of
+ * literals and long matches;</li>
+ * <li>a few bytes, which are below the compression threshold.</li>
+ * </ul>
+ * The sizes vary from message to message. The codec is selected with the
+ * <code>ibis.io.compression</code> property, and is lz4 by default.
+ *
+ * Exits with a non-zero status when a message does not arrive intact.
+ *
+ * <pre>
+ * CompressionRoundTrip [count]
+ * </pre>
+ */
+public class CompressionRoundTrip {
+
+    static final PortType portType = new PortType(PortType.SERIALIZATION_DATA, PortType.COMMUNICATION_COMPRESSED, PortType.CONNECTION_ONE_TO_ONE,
+            PortType.COMMUNICATION_RELIABLE, PortType.RECEIVE_EXPLICIT);
+
+    final int count;
+
+    CompressionRoundTrip(int count) {
+        this.count = count;
+    }
+
+    /**
+     * Returns the arrays of a message, which depend on the message number only.
+     */
+    static byte[][] message(int i) {
+        Random random = new Random(i);
+
+        byte[] noise = new byte[1000 + (i * 997) % (200 * 1024)];
+        random.nextBytes(noise);
+
+        byte[] repetitive = new byte[1000 + (i * 1009) % (200 * 1024)];
+        for (int j = 0; j < repetitive.length; j++) {
+            repetitive[j] = (byte) ("round trip " + j / 100).charAt(j % 11);
+        }
+
+        // Repeats of a random pattern, each followed by random bytes.
+        byte[] repeats = new byte[300 + (i * 211) % (16 * 1024)];
+        byte[] pattern = new byte[300 + i % 700];
+        random.nextBytes(pattern);
+        for (int j = 0; j < repeats.length; j++) {
+            repeats[j] = (j / pattern.length) % 3 == 2 ? (byte) random.nextInt() : pattern[j % pattern.length];
+        }
+
+        byte[] small = new byte[i % 100];
+        random.nextBytes(small);
+
+        return new byte[][] { noise, repetitive, repeats, small, repetitive };
+    }
+
+    void send(SendPort sport) throws IOException {
+        for (int i = 0; i < count; i++) {
+            WriteMessage w = sport.newMessage();
+            for (byte[] b : message(i)) {
+                w.writeArray(b);
+                w.flush();
+            }
+            w.finish();
+        }
+    }
+
+    boolean receive(ReceivePort rport) throws IOException {
+        for (int i = 0; i < count; i++) {
+            ReadMessage r = rport.receive();
+            boolean ok = true;
+            for (byte[] b : message(i)) {
+                byte[] a = new byte[b.length];
+                r.readArray(a);
+                ok &= Arrays.equals(a, b);
+            }
+            r.finish();
+            if (!ok) {
+                System.err.println("Message " + i + " corrupt");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean run() throws Exception {
+        Ibis ibis = IbisFactory.createIbis(new IbisCapabilities(IbisCapabilities.CLOSED_WORLD), null, portType);
+
+        ReceivePort rport = ibis.createReceivePort(portType, "round trip");
+        rport.enableConnections();
+        SendPort sport = ibis.createSendPort(portType);
+        sport.connect(rport.identifier());
+
+        IOException[] failure = new IOException[1];
+        Thread sender = new Thread("CompressionRoundTrip sender") {
+            @Override
+            public void run() {
+                try {
+                    send(sport);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        sender.setDaemon(true);
+        sender.start();
+
+        if (!receive(rport)) {
+            return false;
+        }
+        sender.join();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        sport.close();
+        rport.close();
+        ibis.end();
+        return true;
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        try {
+            if (!new CompressionRoundTrip(count).run()) {
+                System.exit(1);
+            }
+            System.out.println("CompressionRoundTrip: " + count + " messages ok");
+        } catch (Exception e) {
+            System.err.println("CompressionRoundTrip failed: " + e);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
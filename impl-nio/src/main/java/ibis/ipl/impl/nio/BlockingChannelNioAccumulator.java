@@ -91,6 +91,12 @@ final class BlockingChannelNioAccumulator extends NioAccumulator {
         return true; // signal we are done with the buffer now
     }
 
+    /** Buffers are written before doSend() returns. */
+    @Override
+    boolean zeroCopy() {
+        return true;
+    }
+
     @Override
     void doFlush() throws IOException {
         // NOTHING
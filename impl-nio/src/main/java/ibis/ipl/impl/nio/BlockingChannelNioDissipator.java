@@ -18,6 +18,7 @@
 package ibis.ipl.impl.nio;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectableChannel;
 
@@ -45,4 +46,25 @@ final class BlockingChannelNioDissipator extends NioDissipator {
             readFromChannel();
         }
     }
+
+    /**
+     * Reads what the channel has available, without blocking.
+     *
+     * @return whether anything was read.
+     */
+    boolean readAvailable() throws IOException {
+        SelectableChannel sh = (SelectableChannel) channel;
+        sh.configureBlocking(false);
+        try {
+            return readFromChannel() > 0;
+        } finally {
+            sh.configureBlocking(true);
+        }
+    }
+
+    @Override
+    protected boolean readDirect(ByteBuffer b) throws IOException {
+        readFromChannel(b);
+        return true;
+    }
 }
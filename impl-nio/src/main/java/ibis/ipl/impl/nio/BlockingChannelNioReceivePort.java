@@ -100,6 +100,7 @@ final class BlockingChannelNioReceivePort extends NioReceivePort {
         long time;
         boolean deadlinePassed = false;
         BlockingChannelNioDissipator dissipator = null;
+        BlockingChannelNioDissipator polled = null;
         SelectionKey[] keys = new SelectionKey[0];
 
         synchronized (this) {
@@ -117,17 +118,38 @@ final class BlockingChannelNioReceivePort extends NioReceivePort {
                     i--;
                 }
             }
-            if (nrOfConnections == 1 && type.hasCapability(PortType.CONNECTION_ONE_TO_ONE) && deadline == 0) {
-                dissipator = connections[0];
+            if (nrOfConnections == 1 && type.hasCapability(PortType.CONNECTION_ONE_TO_ONE)) {
+                if (deadline == 0) {
+                    dissipator = connections[0];
+                } else if (deadline == -1) {
+                    polled = connections[0];
+                }
             }
         }
 
+        // A poll on the one channel reads it directly, which is a lot cheaper
+        // than setting up a selector.
+        if (polled != null) {
+            try {
+                if (spin(polled::readAvailable) && polled.messageWaiting()) {
+                    return polled;
+                }
+            } catch (IOException e) {
+                errorOnRead(polled, e);
+            }
+            throw new ReceiveTimedOutException("timeout while selecting" + " dissipator");
+        }
+
         // since we have only one connection, and no more are allowed, and
         // we can wait for ever for data we just do a blocking
         // receive here on the one channel
         try {
             while (dissipator != null && !dissipator.messageWaiting()) {
                 if (dissipator.available() == 0) {
+                    // Spin for a while before blocking in the read.
+                    if (spinTime > 0 && spin(dissipator::readAvailable)) {
+                        continue;
+                    }
                     try {
                         dissipator.receive();
                     } catch (IOException e) {
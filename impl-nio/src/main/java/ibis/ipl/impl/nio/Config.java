@@ -29,4 +29,10 @@ interface Config {
      * Buffer sized used for primitive buffers. Must be a multiple of eight.
      */
     static final int PRIMITIVE_BUFFER_SIZE = 6 * 1024;
+
+    /**
+     * Byte arrays and byte buffers of at least this size are sent in a frame of
+     * their own, straight from the memory of the caller.
+     */
+    static final int ZERO_COPY_THRESHOLD = 32 * 1024;
 }
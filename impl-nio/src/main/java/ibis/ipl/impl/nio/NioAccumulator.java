@@ -171,6 +171,24 @@ public abstract class NioAccumulator extends DataOutputStream implements Config
         }
     }
 
+    /**
+     * Sends the remaining bytes of the given buffer in a bulk frame, without
+     * copying them into a send buffer first. Only returns when the bytes are
+     * sent, as the buffer belongs to the user.
+     */
+    synchronized private void sendBulk(ByteBuffer b) throws IOException {
+        send();
+
+        SendBuffer bulk = new SendBuffer(b);
+        count += bulk.remaining();
+
+        if (doSend(bulk)) {
+            SendBuffer.recycle(bulk);
+        }
+        doFlush();
+        b.position(b.limit());
+    }
+
     /*
      * makes sure all data given to the accumulator is send ,or at least copied.
      */
@@ -305,6 +323,11 @@ public abstract class NioAccumulator extends DataOutputStream implements Config
             }
         }
 
+        if (len >= ZERO_COPY_THRESHOLD && zeroCopy()) {
+            sendBulk(ByteBuffer.wrap(array, off, len));
+            return;
+        }
+
         try {
             bytes.put(array, off, len);
         } catch (BufferOverflowException e) {
@@ -455,6 +478,11 @@ public abstract class NioAccumulator extends DataOutputStream implements Config
 
     @Override
     public void writeByteBuffer(ByteBuffer b) throws IOException {
+        if (b.remaining() >= ZERO_COPY_THRESHOLD && zeroCopy()) {
+            sendBulk(b);
+            return;
+        }
+
         try {
             bytes.put(b);
         } catch (BufferOverflowException e) {
@@ -466,13 +494,24 @@ public abstract class NioAccumulator extends DataOutputStream implements Config
                 }
 
                 int size = Math.min(len, bytes.remaining());
-                b.limit(b.position() + size);
-                b.put(b);
+                ByteBuffer part = b.duplicate();
+                part.limit(b.position() + size);
+                bytes.put(part);
+                b.position(b.position() + size);
                 len -= size;
             }
         }
     }
 
+    /**
+     * Returns whether {@link #doFlush()} only returns when all buffers are
+     * sent, so that large byte arrays and byte buffers can be sent without
+     * copying them.
+     */
+    boolean zeroCopy() {
+        return false;
+    }
+
     abstract NioAccumulatorConnection newConnection(GatheringByteChannel channel, ReceivePortIdentifier peer) throws IOException;
 
     /**
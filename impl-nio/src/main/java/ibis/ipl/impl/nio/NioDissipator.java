@@ -34,6 +34,7 @@ import java.nio.channels.ReadableByteChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ibis.io.BufferPool;
 import ibis.io.Conversion;
 import ibis.io.DataInputStream;
 import ibis.ipl.impl.ReceivePortIdentifier;
@@ -126,6 +127,20 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
 
     private long count = 0;
 
+    /**
+     * The thread that last read into the buffer. Only a close by this thread
+     * gives the buffer back to the pool.
+     */
+    private volatile Thread reader;
+
+    private volatile boolean closed = false;
+
+    // bytes of the current bulk frame that have not been read yet
+    private int bulkLeft = 0;
+
+    // padding after the data of the current bulk frame
+    private int bulkPadding = 0;
+
     NioReceivePort.ConnectionInfo info;
 
     ReadableByteChannel channel;
@@ -135,22 +150,13 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
 
         order = ByteOrder.BIG_ENDIAN;
 
-        buffer = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
+        buffer = BufferPool.getDirectBuffer(BYTE_BUFFER_SIZE);
         copyFromBuffer = buffer.duplicate();
         copyToBuffer = buffer.duplicate();
         buffer.limit(BUFFER_LIMIT);
 
         initViews(order);
-
-        // make the views appear empty
-        header.limit(0);
-        longs.limit(0);
-        doubles.limit(0);
-        floats.limit(0);
-        ints.limit(0);
-        shorts.limit(0);
-        chars.limit(0);
-        bytes.limit(0);
+        emptyViews();
     }
 
     @Override
@@ -193,6 +199,20 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
         buffer.limit(limit);
     }
 
+    /**
+     * Makes the views appear empty.
+     */
+    private void emptyViews() {
+        header.limit(0);
+        longs.limit(0);
+        doubles.limit(0);
+        floats.limit(0);
+        ints.limit(0);
+        shorts.limit(0);
+        chars.limit(0);
+        bytes.limit(0);
+    }
+
     /**
      * Sets a view correctly.
      *
@@ -244,12 +264,6 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
     }
 
     void receive() throws IOException {
-        ByteOrder receivedOrder;
-        int next;
-        int totalSize;
-        int paddingLength;
-        short[] headerArray = new short[SIZEOF_HEADER / SIZEOF_SHORT];
-
         if (logger.isDebugEnabled()) {
             logger.debug("receiving buffer");
             if (remaining() > 0) {
@@ -260,7 +274,15 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
             }
         }
 
-        // release old used data
+        if (bulkLeft > 0 || receiveHeader()) {
+            receiveBulkChunk();
+        }
+    }
+
+    /**
+     * Releases the data claimed for the user so far.
+     */
+    private void release() {
         usedPosition = usedLimit;
 
         // remember we can use the newly freed space to put data in
@@ -275,6 +297,37 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
         if (logger.isDebugEnabled()) {
             logger.debug("usedPosition = " + usedPosition + " buffer.position(" + buffer.position() + ") buffer.limit(" + buffer.limit() + ")");
         }
+    }
+
+    /**
+     * Claims the received data up to the given position for the user.
+     */
+    private void claim(int end) {
+        usedLimit = end % BUFFER_LIMIT;
+        if (usedLimit == 0 && buffer.position() == BUFFER_LIMIT) {
+            // Everything up to the end of the buffer is claimed. Wrap now, as
+            // the buffer would otherwise look completely full.
+            buffer.position(0);
+            buffer.limit(usedPosition - 1);
+        }
+    }
+
+    /**
+     * Receives the header of the next frame. Sets the views to the data of a
+     * normal frame.
+     *
+     * @return true if the frame is a bulk frame, of which only the header is
+     *         consumed.
+     */
+    private boolean receiveHeader() throws IOException {
+        ByteOrder receivedOrder;
+        int next;
+        int totalSize;
+        int paddingLength;
+        short[] headerArray = new short[SIZEOF_HEADER / SIZEOF_SHORT];
+
+        // release old used data
+        release();
 
         if (unUsedLength() < SIZEOF_HEADER) {
             fillBuffer(SIZEOF_HEADER);
@@ -300,6 +353,19 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
         // extract header
         header.get(headerArray);
 
+        if (paddingLength == SendBuffer.BULK) {
+            bulkLeft = ((headerArray[LONGS] & 0xffff) << 16) | (headerArray[DOUBLES] & 0xffff);
+            bulkPadding = headerArray[INTS];
+            claim(next);
+            release();
+            emptyViews();
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("receiving bulk frame of " + bulkLeft + " bytes, padding: " + bulkPadding);
+            }
+            return true;
+        }
+
         totalSize = SIZEOF_HEADER + headerArray[LONGS] + headerArray[DOUBLES] + headerArray[INTS] + headerArray[FLOATS] + headerArray[SHORTS]
                 + headerArray[CHARS] + headerArray[BYTES] + paddingLength;
 
@@ -312,7 +378,7 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
         }
 
         // claim space
-        usedLimit = (usedPosition + totalSize) % BUFFER_LIMIT;
+        claim(usedPosition + totalSize);
 
         next = setView(longs, next, headerArray[LONGS], SIZEOF_LONG);
         next = setView(doubles, next, headerArray[DOUBLES], SIZEOF_DOUBLE);
@@ -327,6 +393,115 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
                     + "] s[" + shorts.remaining() + "] c[" + chars.remaining() + "] b[" + bytes.remaining() + "]");
         }
 
+        return false;
+    }
+
+    /**
+     * Makes the next part of the current bulk frame available in the byte view,
+     * for reads that do not take the data straight from the channel.
+     */
+    private void receiveBulkChunk() throws IOException {
+        int size = Math.min(bulkLeft, PRIMITIVE_BUFFER_SIZE);
+        int claim = size;
+
+        release();
+        if (size == bulkLeft) {
+            claim += bulkPadding;
+        }
+        realign();
+        if (unUsedLength() < claim) {
+            fillBuffer(claim);
+        }
+
+        setView(bytes, usedPosition, size, SIZEOF_BYTE);
+        claim(usedPosition + claim);
+        bulkLeft -= size;
+    }
+
+    /**
+     * Reads bytes of the current bulk frame into the given buffer, straight from
+     * the channel once the bytes already received are used up.
+     */
+    private void readBulk(ByteBuffer b) throws IOException {
+        int limit = b.limit();
+
+        release();
+        b.limit(b.position() + Math.min(b.remaining(), bulkLeft));
+        try {
+            while (b.hasRemaining()) {
+                int start = b.position();
+                int size = Math.min(Math.min(b.remaining(), unUsedLength()), PRIMITIVE_BUFFER_SIZE);
+                if (size > 0) {
+                    claim(setView(bytes, usedPosition, size, SIZEOF_BYTE));
+                    b.put(bytes);
+                    release();
+                } else {
+                    realign();
+                    if (!readDirect(b)) {
+                        fillBuffer(Math.min(b.remaining(), PRIMITIVE_BUFFER_SIZE));
+                    }
+                }
+                bulkLeft -= b.position() - start;
+            }
+        } finally {
+            b.limit(limit);
+        }
+
+        if (bulkLeft == 0) {
+            // skip the padding
+            realign();
+            if (unUsedLength() < bulkPadding) {
+                fillBuffer(bulkPadding);
+            }
+            claim(usedPosition + bulkPadding);
+            release();
+        }
+    }
+
+    /**
+     * Frames must start at a multiple of eight in the receive buffer, but data of
+     * a bulk frame that is read straight from the channel never enters it. So,
+     * when the receive buffer is empty, move the empty space such that the end of
+     * the current bulk frame will be aligned.
+     */
+    private void realign() {
+        if (unUsedLength() != 0 || usedPosition != usedLimit) {
+            return;
+        }
+        int start = (8 - ((bulkLeft + bulkPadding) % 8)) % 8;
+        buffer.limit(BUFFER_LIMIT);
+        buffer.position(start);
+        usedPosition = start;
+        usedLimit = start;
+    }
+
+    /**
+     * Reads some bytes from the channel into the given buffer, bypassing the
+     * receive buffer. Only called when the receive buffer is empty. The default
+     * implementation does nothing, for dissipators of which the channel is read
+     * by another thread.
+     *
+     * @param b the buffer to read into.
+     * @return false if nothing was read because this dissipator does not read
+     *         from the channel itself.
+     * @throws IOException if an error occurred on reading from the channel
+     */
+    protected boolean readDirect(ByteBuffer b) throws IOException {
+        return false;
+    }
+
+    /**
+     * Reads data from the channel into the given buffer ONCE.
+     *
+     * @return the number of bytes read.
+     */
+    protected int readFromChannel(ByteBuffer b) throws IOException {
+        int count = channel.read(b);
+        if (count == -1) {
+            throw new IOException("END-OF-STREAM encountered");
+        }
+        this.count += count;
+        return count;
     }
 
     /**
@@ -384,10 +559,21 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
 
     /**
      * Reads data from the channel into the buffer ONCE. Wraps the buffer if needed.
+     *
+     * @return the number of bytes read.
      */
-    void readFromChannel() throws IOException {
+    int readFromChannel() throws IOException {
         int count;
 
+        Thread t = Thread.currentThread();
+        if (reader != t) {
+            reader = t;
+        }
+        if (closed) {
+            // Checked after setting the reader, see close().
+            throw new IOException("Dissipator closed");
+        }
+
         if (logger.isDebugEnabled()) {
             logger.debug("reading into buffer, position(" + buffer.position() + ") limit(" + buffer.limit() + ")");
         }
@@ -410,6 +596,7 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
                 logger.debug("buffer wrapped, position(" + buffer.position() + ") limit(" + buffer.limit() + ")");
             }
         }
+        return count;
     }
 
     int remaining() {
@@ -562,6 +749,11 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
 
     @Override
     public void readArray(byte ref[], int off, int len) throws IOException {
+        if (len >= ZERO_COPY_THRESHOLD) {
+            readByteBuffer(ByteBuffer.wrap(ref, off, len));
+            return;
+        }
+
         try {
             bytes.get(ref, off, len);
         } catch (BufferUnderflowException e) {
@@ -795,13 +987,16 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
 
     @Override
     public void readByteBuffer(ByteBuffer b) throws IOException {
-        if (b.hasArray()) {
-            readArray(b.array(), b.arrayOffset(), b.limit() - b.position());
-            b.position(b.limit());
-        } else {
-            byte[] buf = new byte[b.limit() - b.position()];
-            readArray(buf);
-            b.put(buf);
+        while (b.hasRemaining()) {
+            if (bytes.hasRemaining()) {
+                int size = Math.min(b.remaining(), bytes.remaining());
+                ByteBuffer part = bytes.duplicate();
+                part.limit(part.position() + size);
+                b.put(part);
+                bytes.position(part.position());
+            } else if (bulkLeft > 0 || receiveHeader()) {
+                readBulk(b);
+            }
         }
     }
 
@@ -819,6 +1014,18 @@ public abstract class NioDissipator extends DataInputStream implements Config, P
      */
     @Override
     public void close() throws IOException {
-        channel.close();
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            // Views and copies of the buffer are not used after a close. When
+            // another thread read into the buffer last, it may still be busy
+            // with it, so then the buffer is left to the garbage collector.
+            Thread t = reader;
+            if (buffer != null && (t == null || t == Thread.currentThread())) {
+                BufferPool.release(buffer);
+                buffer = null;
+            }
+        }
     }
 }
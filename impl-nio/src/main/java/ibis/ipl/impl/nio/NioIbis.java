@@ -23,6 +23,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetSocketAddress;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.slf4j.Logger;
@@ -47,7 +48,14 @@ public final class NioIbis extends ibis.ipl.impl.Ibis {
 
     static final String s_rpi = prefix + "rpi";
 
-    static final String[] props = { s_spi, s_rpi };
+    /**
+     * Integer: the number of send/receive threads used by the "thread" send and
+     * receive ports (default 1). Each connection is handled by the thread that
+     * has the fewest connections when it is created.
+     */
+    static final String s_selectors = prefix + "selectors";
+
+    static final String[] props = { s_spi, s_rpi, s_selectors };
 
     private static final Logger logger = LoggerFactory.getLogger(NioIbis.class);
 
@@ -55,7 +63,7 @@ public final class NioIbis extends ibis.ipl.impl.Ibis {
 
     private HashMap<ibis.ipl.IbisIdentifier, InetSocketAddress> addresses = new HashMap<>();
 
-    private SendReceiveThread sendReceiveThread = null;
+    private SendReceiveThread[] sendReceiveThreads = null;
 
     public NioIbis(RegistryEventHandler r, IbisCapabilities p, Credentials credentials, byte[] applicationTag, PortType[] types, Properties tp,
             IbisStarter starter) throws IbisCreationFailedException {
@@ -99,8 +107,12 @@ public final class NioIbis extends ibis.ipl.impl.Ibis {
                 factory.quit();
             }
 
-            if (sendReceiveThread != null) {
-                factory.quit();
+            synchronized (this) {
+                if (sendReceiveThreads != null) {
+                    for (SendReceiveThread thread : sendReceiveThreads) {
+                        thread.quit();
+                    }
+                }
             }
         } catch (Throwable e) {
             // ignored
@@ -108,11 +120,39 @@ public final class NioIbis extends ibis.ipl.impl.Ibis {
         logger.info("NioIbis" + ident + " DE-initialized");
     }
 
+    /**
+     * Returns the send/receive thread that a new connection should be
+     * registered with: the one with the fewest connections.
+     */
     synchronized SendReceiveThread sendReceiveThread() throws IOException {
-        if (sendReceiveThread == null) {
-            sendReceiveThread = new SendReceiveThread();
+        if (sendReceiveThreads == null) {
+            int n = Math.max(1, properties.getIntProperty(s_selectors, 1));
+            SendReceiveThread[] threads = new SendReceiveThread[n];
+            for (int i = 0; i < n; i++) {
+                threads[i] = new SendReceiveThread("NioIbis send/receive thread " + i);
+            }
+            sendReceiveThreads = threads;
+        }
+        SendReceiveThread result = sendReceiveThreads[0];
+        for (int i = 1; i < sendReceiveThreads.length; i++) {
+            if (sendReceiveThreads[i].load() < result.load()) {
+                result = sendReceiveThreads[i];
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<String, String> managementProperties() {
+        Map<String, String> result = super.managementProperties();
+
+        if (sendReceiveThreads != null) {
+            result.put("selectors", "" + sendReceiveThreads.length);
+            for (int i = 0; i < sendReceiveThreads.length; i++) {
+                sendReceiveThreads[i].getStatistics(result, "selector." + i + ".");
+            }
         }
-        return sendReceiveThread;
+        return result;
     }
 
     InetSocketAddress getAddress(IbisIdentifier id) throws IOException {
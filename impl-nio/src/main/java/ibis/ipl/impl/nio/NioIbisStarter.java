@@ -41,12 +41,13 @@ public final class NioIbisStarter extends ibis.ipl.IbisStarter {
             IbisCapabilities.ELECTIONS_STRICT);
 
     static final PortType portCapabilities = new PortType(PortType.SERIALIZATION_OBJECT_SUN, PortType.SERIALIZATION_OBJECT_IBIS,
-            PortType.SERIALIZATION_OBJECT, PortType.SERIALIZATION_DATA, PortType.SERIALIZATION_BYTE, PortType.COMMUNICATION_FIFO,
-            PortType.COMMUNICATION_NUMBERED, PortType.COMMUNICATION_RELIABLE, PortType.CONNECTION_DOWNCALLS, PortType.CONNECTION_UPCALLS,
-            PortType.CONNECTION_TIMEOUT, PortType.CONNECTION_MANY_TO_MANY, PortType.CONNECTION_MANY_TO_ONE, PortType.CONNECTION_ONE_TO_MANY,
-            PortType.CONNECTION_ONE_TO_ONE, PortType.RECEIVE_POLL, PortType.RECEIVE_AUTO_UPCALLS, PortType.RECEIVE_EXPLICIT,
-            PortType.RECEIVE_POLL_UPCALLS, PortType.RECEIVE_TIMEOUT, "sendport.blocking", "sendport.nonblocking", "sendport.thread",
-            "receiveport.blocking", "receivport.nonblocking", "receiveport.thread");
+            PortType.SERIALIZATION_OBJECT, PortType.SERIALIZATION_DATA, PortType.SERIALIZATION_DATA_COMPACT, PortType.SERIALIZATION_BYTE,
+            PortType.COMMUNICATION_FIFO, PortType.COMMUNICATION_NUMBERED, PortType.COMMUNICATION_RELIABLE, PortType.COMMUNICATION_COMPRESSED,
+            PortType.CONNECTION_DOWNCALLS, PortType.CONNECTION_UPCALLS, PortType.CONNECTION_TIMEOUT, PortType.CONNECTION_MANY_TO_MANY,
+            PortType.CONNECTION_MANY_TO_ONE, PortType.CONNECTION_ONE_TO_MANY, PortType.CONNECTION_ONE_TO_ONE, PortType.RECEIVE_POLL,
+            PortType.RECEIVE_AUTO_UPCALLS, PortType.RECEIVE_EXPLICIT, PortType.RECEIVE_POLL_UPCALLS, PortType.RECEIVE_TIMEOUT, "sendport.blocking",
+            "sendport.nonblocking", "sendport.thread", "receiveport.blocking", "receivport.nonblocking", "receiveport.thread",
+            PortType.COMMUNICATION_COALESCING);
 
     public NioIbisStarter(String nickName, String iplVersion, String implementationVersion) {
         super(nickName, iplVersion, implementationVersion);
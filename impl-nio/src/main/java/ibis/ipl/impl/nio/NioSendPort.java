@@ -48,7 +48,7 @@ public final class NioSendPort extends SendPort implements Protocol {
         } else if (type.hasCapability("sendport.nonblocking")) {
             accumulator = new NonBlockingChannelNioAccumulator(this);
         } else if (type.hasCapability("sendport.thread")) {
-            accumulator = new ThreadNioAccumulator(this, ((NioIbis) ibis).sendReceiveThread());
+            accumulator = new ThreadNioAccumulator(this, (NioIbis) ibis);
         } else if (type.hasCapability(PortType.CONNECTION_ONE_TO_ONE) || type.hasCapability(PortType.CONNECTION_ONE_TO_MANY)) {
             accumulator = new BlockingChannelNioAccumulator(this);
         } else {
@@ -118,6 +118,12 @@ final class NonBlockingChannelNioAccumulator extends NioAccumulator {
         return false;
     }
 
+    /** A flush sends out all pending buffers. */
+    @Override
+    boolean zeroCopy() {
+        return true;
+    }
+
     @Override
     void doFlush() throws IOException {
         doFlush(null);
@@ -18,6 +18,7 @@
 package ibis.ipl.impl.nio;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
@@ -76,6 +77,15 @@ final class NonBlockingChannelNioDissipator extends NioDissipator {
         }
     }
 
+    @Override
+    protected boolean readDirect(ByteBuffer b) throws IOException {
+        if (readFromChannel(b) == 0) {
+            selector.select();
+            selector.selectedKeys().clear();
+        }
+        return true;
+    }
+
     @Override
     public void close() throws IOException {
         selector.close();
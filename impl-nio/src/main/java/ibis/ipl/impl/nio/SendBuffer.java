@@ -29,6 +29,8 @@ import java.nio.ShortBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ibis.io.BufferPool;
+
 final class SendBuffer implements Config {
 
     // primitives are send in order of size, largest first
@@ -61,6 +63,16 @@ final class SendBuffer implements Config {
 
     private static final int SIZEOF_PADDING = 8;
 
+    /**
+     * Put in the header in place of the padding length to mark a bulk frame,
+     * which holds nothing but the bytes of a single large byte array or byte
+     * buffer. The length of these bytes follows in the first two shorts of the
+     * header (high part first), and the padding length in the third.
+     */
+    static final byte BULK = (byte) -1;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocateDirect(0);
+
     public static final int SIZEOF_BYTE = 1;
 
     public static final int SIZEOF_CHAR = 2;
@@ -110,10 +122,15 @@ final class SendBuffer implements Config {
                 // throw new Error("tried to recycle buffer with children!");
                 return;
             }
+            if (buffer.bulk) {
+                buffer.free();
+                return;
+            }
             if (cacheSize >= BUFFER_CACHE_SIZE) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("SendBuffer: cache full" + " apon recycling buffer, throwing away");
                 }
+                buffer.free();
                 return;
             }
             cache[cacheSize] = buffer;
@@ -127,10 +144,15 @@ final class SendBuffer implements Config {
             }
             buffer.parent.copies--;
             if (buffer.parent.copies == 0) {
+                if (buffer.parent.bulk) {
+                    buffer.parent.free();
+                    return;
+                }
                 if (cacheSize >= BUFFER_CACHE_SIZE) {
                     if (logger.isDebugEnabled()) {
                         logger.debug("SendBuffer: cache full" + " apon recycling parent of child buffer," + " throwing away");
                     }
+                    buffer.parent.free();
                     return;
                 }
                 cache[cacheSize] = buffer.parent;
@@ -162,6 +184,9 @@ final class SendBuffer implements Config {
     // original buffer this buffer is a copy of (if applicable)
     SendBuffer parent = null;
 
+    // whether this is a bulk frame, which refers to the data of the user
+    private boolean bulk = false;
+
     private static long nextSequenceNr = 0;
 
     ShortBuffer header;
@@ -192,8 +217,8 @@ final class SendBuffer implements Config {
         ByteOrder order = ByteOrder.nativeOrder();
 
         byteBuffers = new ByteBuffer[NR_OF_BUFFERS];
-        byteBuffers[HEADER] = ByteBuffer.allocateDirect(SIZEOF_HEADER).order(order);
-        byteBuffers[PADDING] = ByteBuffer.allocateDirect(SIZEOF_PADDING).order(order);
+        byteBuffers[HEADER] = BufferPool.getDirectBuffer(SIZEOF_HEADER).order(order);
+        byteBuffers[PADDING] = BufferPool.getDirectBuffer(SIZEOF_PADDING).order(order);
 
         // put the byte order in the first byte of the header
         if (order == ByteOrder.BIG_ENDIAN) {
@@ -203,7 +228,7 @@ final class SendBuffer implements Config {
         }
 
         for (int i = 1; i < (NR_OF_BUFFERS - 1); i++) {
-            byteBuffers[i] = ByteBuffer.allocateDirect(PRIMITIVE_BUFFER_SIZE).order(order);
+            byteBuffers[i] = BufferPool.getDirectBuffer(PRIMITIVE_BUFFER_SIZE).order(order);
         }
 
         header = byteBuffers[HEADER].asShortBuffer();
@@ -218,6 +243,41 @@ final class SendBuffer implements Config {
         clear();
     }
 
+    /**
+     * Creates a bulk frame holding the remaining bytes of the given buffer,
+     * without copying them. The buffer must not be modified until the frame is
+     * sent.
+     */
+    SendBuffer(ByteBuffer data) {
+        ByteOrder order = ByteOrder.nativeOrder();
+        int length = data.remaining();
+
+        bulk = true;
+        byteBuffers = new ByteBuffer[NR_OF_BUFFERS];
+        byteBuffers[HEADER] = BufferPool.getDirectBuffer(SIZEOF_HEADER).order(order);
+        byteBuffers[PADDING] = BufferPool.getDirectBuffer(SIZEOF_PADDING).order(order);
+        for (int i = 1; i < BYTES; i++) {
+            byteBuffers[i] = EMPTY;
+        }
+        byteBuffers[BYTES] = data.slice();
+
+        // same padding rule as a normal frame: never empty
+        int paddingLength = 8 - ((SIZEOF_HEADER + length) % 8);
+        byteBuffers[PADDING].position(0).limit(paddingLength);
+
+        header = byteBuffers[HEADER].asShortBuffer();
+        header.put(1, (short) (length >>> 16));
+        header.put(2, (short) length);
+        header.put(3, (short) paddingLength);
+        byteBuffers[HEADER].put(0, order == ByteOrder.BIG_ENDIAN ? (byte) 1 : (byte) 0);
+        byteBuffers[HEADER].put(1, BULK);
+        byteBuffers[HEADER].position(0).limit(SIZEOF_HEADER);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("bulk buffer of " + length + " bytes, padding size: " + paddingLength);
+        }
+    }
+
     /**
      * Copy constructor. Acutally only copies byteBuffers;
      */
@@ -230,6 +290,20 @@ final class SendBuffer implements Config {
         }
     }
 
+    /**
+     * Gives the direct buffers of this (original) buffer back to the buffer pool.
+     * The buffer cannot be used anymore after this.
+     */
+    private void free() {
+        for (int i = 0; i < NR_OF_BUFFERS; i++) {
+            // the data of a bulk frame belongs to the user
+            if (!bulk || i == HEADER || i == PADDING) {
+                BufferPool.release(byteBuffers[i]);
+            }
+            byteBuffers[i] = null;
+        }
+    }
+
     /**
      *
      *
@@ -22,7 +22,12 @@ import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
-import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,36 +35,66 @@ import org.slf4j.LoggerFactory;
 import ibis.util.ThreadPool;
 
 /**
- * Class used as a single send/receive thread for an entire NioIbis instance.
+ * Thread that does the sending and receiving for the channels registered with
+ * its selector. A NioIbis instance has one or more of these, see
+ * {@link NioIbis#sendReceiveThread()}.
+ *
+ * Other threads hand work to this thread through lock-free queues, and only
+ * wake up the selector when this thread is blocked in a select.
  */
 final class SendReceiveThread implements Runnable {
 
-    static final int INITIAL_ARRAY_SIZE = 8;
-
     private static Logger logger = LoggerFactory.getLogger(SendReceiveThread.class);
 
-    private ArrayList<SelectableChannel> pendingChannels = new ArrayList<>();
+    /** A channel waiting to be registered by the send/receive thread. */
+    private static final class Registration {
+        final SelectableChannel channel;
+        final Object attachment;
+        final CompletableFuture<SelectionKey> key = new CompletableFuture<>();
+
+        Registration(SelectableChannel channel, Object attachment) {
+            this.channel = channel;
+            this.attachment = attachment;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Registration> pendingRegistrations = new ConcurrentLinkedQueue<>();
+
+    private final ConcurrentLinkedQueue<SelectionKey> readyWriteKeys = new ConcurrentLinkedQueue<>();
+
+    private final ConcurrentLinkedQueue<SelectionKey> readyReadKeys = new ConcurrentLinkedQueue<>();
+
+    private final Selector selector;
 
-    private ArrayList<Object> pendingAttachments = new ArrayList<>();
+    private final String name;
 
-    private SelectionKey[] readyWriteKeys;
+    /** Set while this thread is in, or about to go into, a blocking select. */
+    private final AtomicBoolean selecting = new AtomicBoolean(false);
 
-    private int nrOfReadyWriteKeys;
+    private volatile boolean exit = false;
 
-    private SelectionKey[] readyReadKeys;
+    // Statistics, only written by this thread except for the wakeups.
 
-    private int nrOfReadyReadKeys;
+    private volatile int nrOfKeys = 0;
 
-    private Selector selector;
+    private final AtomicLong wakeups = new AtomicLong();
 
-    private boolean exit = false;
+    private volatile long selects = 0;
 
-    SendReceiveThread() throws IOException {
+    private volatile long selectTime = 0;
+
+    SendReceiveThread(String name) throws IOException {
+        this.name = name;
         selector = Selector.open();
-        ThreadPool.createNew(this, "SendReceiveThread");
+        ThreadPool.createNew(this, name);
+    }
 
-        readyWriteKeys = new SelectionKey[INITIAL_ARRAY_SIZE];
-        readyReadKeys = new SelectionKey[INITIAL_ARRAY_SIZE];
+    /**
+     * Returns the number of channels registered with this thread, including
+     * the ones still waiting to be registered.
+     */
+    int load() {
+        return nrOfKeys + pendingRegistrations.size();
     }
 
     /**
@@ -68,125 +103,105 @@ final class SendReceiveThread implements Runnable {
      * @return The SelectionKey representing the registration, with the given
      *         attachment attached to it.
      */
-    synchronized SelectionKey register(SelectableChannel channel, Object attachment) throws IOException {
-        SelectionKey key = null;
-
-        pendingChannels.add(channel);
-        pendingAttachments.add(attachment);
-
+    SelectionKey register(SelectableChannel channel, Object attachment) throws IOException {
+        if (exit) {
+            throw new IOException(name + " has stopped");
+        }
         channel.configureBlocking(false);
 
-        selector.wakeup();
+        Registration registration = new Registration(channel, attachment);
+        pendingRegistrations.add(registration);
+        // If the thread stopped in the meantime, it may have failed the pending
+        // registrations before this one was added. Exit is set before that, so
+        // either this registration is failed by the thread, or it is removed
+        // here.
+        if (exit && pendingRegistrations.remove(registration)) {
+            throw new IOException(name + " has stopped");
+        }
+        wakeup();
 
-        while (key == null) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                // IGNORE
+        try {
+            return registration.key.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
-            key = channel.keyFor(selector);
+            throw new IOException("could not register channel", e.getCause());
         }
-        return key;
     }
 
-    void registerPendingChannels() {
-        SelectableChannel channel;
-        SelectionKey key;
-
-        if (pendingChannels.size() == 0) {
-            return;
-        }
-
-        if (logger.isDebugEnabled()) {
-            logger.debug("registering " + pendingChannels.size() + " channels");
-        }
+    private void registerPendingChannels() {
+        Registration registration;
 
-        for (int i = 0; i < pendingChannels.size(); i++) {
-            channel = pendingChannels.get(i);
+        while ((registration = pendingRegistrations.poll()) != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("registering channel");
+            }
             try {
-                key = channel.register(selector, 0);
-                key.attach(pendingAttachments.get(i));
-            } catch (IOException e) {
-                // IGNORE
+                SelectionKey key = registration.channel.register(selector, 0, registration.attachment);
+                nrOfKeys = selector.keys().size();
+                registration.key.complete(key);
+            } catch (Throwable e) {
+                registration.key.completeExceptionally(e);
             }
         }
-
-        pendingChannels.clear();
-        pendingAttachments.clear();
-
-        notifyAll();
     }
 
     /**
      * signals a connection is ready for writing data
      */
-    synchronized void enableWriting(SelectionKey key) {
+    void enableWriting(SelectionKey key) {
         if (logger.isDebugEnabled()) {
             logger.debug("queueing write enable");
         }
-
-        if (nrOfReadyWriteKeys == readyWriteKeys.length) {
-            SelectionKey[] newKeys;
-            newKeys = new SelectionKey[readyWriteKeys.length * 2];
-            for (int i = 0; i < readyWriteKeys.length; i++) {
-                newKeys[i] = readyWriteKeys[i];
-            }
-            readyWriteKeys = newKeys;
-        }
-        readyWriteKeys[nrOfReadyWriteKeys] = key;
-        nrOfReadyWriteKeys++;
-
-        selector.wakeup();
+        readyWriteKeys.add(key);
+        wakeup();
     }
 
     /**
      * signals a connection is ready to read data
      */
-    synchronized void enableReading(SelectionKey key) {
+    void enableReading(SelectionKey key) {
         if (logger.isDebugEnabled()) {
             logger.debug("queueing read enable");
         }
+        readyReadKeys.add(key);
+        wakeup();
+    }
 
-        if (nrOfReadyReadKeys == readyReadKeys.length) {
-            SelectionKey[] newKeys;
-            newKeys = new SelectionKey[readyReadKeys.length * 2];
-            for (int i = 0; i < readyReadKeys.length; i++) {
-                newKeys[i] = readyReadKeys[i];
-            }
-            readyReadKeys = newKeys;
+    /**
+     * Wakes up the selector if this thread is blocked in a select. Otherwise,
+     * the queued work is picked up before the next select anyway.
+     */
+    private void wakeup() {
+        if (selecting.getAndSet(false)) {
+            wakeups.incrementAndGet();
+            selector.wakeup();
         }
-        readyReadKeys[nrOfReadyReadKeys] = key;
-        nrOfReadyReadKeys++;
+    }
 
-        selector.wakeup();
+    private boolean workPending() {
+        return !pendingRegistrations.isEmpty() || !readyWriteKeys.isEmpty() || !readyReadKeys.isEmpty();
     }
 
-    void handlePendingKeys() {
-        if (logger.isDebugEnabled()) {
-            if (nrOfReadyWriteKeys != 0 || nrOfReadyReadKeys != 0) {
-                logger.debug("enabling " + nrOfReadyWriteKeys + " write keys and " + nrOfReadyReadKeys + " read keys");
-            }
-        }
+    private void handlePendingKeys() {
+        SelectionKey key;
 
-        for (int i = 0; i < nrOfReadyWriteKeys; i++) {
+        while ((key = readyWriteKeys.poll()) != null) {
             try {
-                readyWriteKeys[i].interestOps(SelectionKey.OP_WRITE);
+                key.interestOps(SelectionKey.OP_WRITE);
             } catch (CancelledKeyException e) {
                 // Channels was closed/lost, ignore
             }
-            readyWriteKeys[i] = null;
         }
-        nrOfReadyWriteKeys = 0;
 
-        for (int i = 0; i < nrOfReadyReadKeys; i++) {
+        while ((key = readyReadKeys.poll()) != null) {
             try {
-                readyReadKeys[i].interestOps(SelectionKey.OP_READ);
+                key.interestOps(SelectionKey.OP_READ);
             } catch (CancelledKeyException e) {
                 // Channels was closed/lost, ignore
             }
-            readyReadKeys[i] = null;
         }
-        nrOfReadyReadKeys = 0;
     }
 
     private void send(SelectionKey key) {
@@ -205,18 +220,28 @@ final class SendReceiveThread implements Runnable {
         in.doRead();
     }
 
+    /**
+     * Adds the statistics of this thread to the given management properties,
+     * with the given prefix.
+     */
+    void getStatistics(Map<String, String> properties, String prefix) {
+        properties.put(prefix + "keys", "" + nrOfKeys);
+        properties.put(prefix + "wakeups", "" + wakeups.get());
+        properties.put(prefix + "selects", "" + selects);
+        properties.put(prefix + "selectTime", "" + selectTime / 1000000);
+    }
+
     /**
      * Stops the send/receive Thread
      */
-    synchronized void quit() {
+    void quit() {
         exit = true;
+        selector.wakeup();
     }
 
     @Override
     public void run() {
 
-        Thread.currentThread().setName("send/receive thread");
-
         // try to add some importance to this thread
         try {
             int max = Thread.currentThread().getThreadGroup().getMaxPriority();
@@ -226,34 +251,36 @@ final class SendReceiveThread implements Runnable {
             // IGNORE
         }
 
-        while (true) {
+        while (!exit) {
             if (logger.isDebugEnabled()) {
                 logger.debug("looking for work");
             }
 
-            synchronized (this) {
-                if (exit) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("done looking for work");
-                    }
-                    return;
-                }
-                registerPendingChannels();
-                handlePendingKeys();
-            }
+            registerPendingChannels();
+            handlePendingKeys();
+            nrOfKeys = selector.keys().size();
 
             if (logger.isDebugEnabled()) {
-                logger.debug("doing a select on " + selector.keys().size() + " channels");
+                logger.debug("doing a select on " + nrOfKeys + " channels");
             }
 
+            long start = System.nanoTime();
             try {
-                selector.select();
+                selecting.set(true);
+                if (workPending() || exit) {
+                    selector.selectNow();
+                } else {
+                    selector.select();
+                }
             } catch (IOException e) {
                 logger.warn("ibis.ipl.impl.nio.SendReceiveThread.run():" + " select failed with exception: " + e);
                 // IGNORE
             } catch (CancelledKeyException e) {
                 // INGORE
             }
+            selecting.set(false);
+            selectTime += System.nanoTime() - start;
+            selects++;
 
             if (logger.isDebugEnabled()) {
                 logger.debug("selected " + selector.selectedKeys().size() + " channel(s)");
@@ -281,7 +308,20 @@ final class SendReceiveThread implements Runnable {
             if (logger.isDebugEnabled()) {
                 logger.debug("done");
             }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("done looking for work");
+        }
 
+        Registration registration;
+        while ((registration = pendingRegistrations.poll()) != null) {
+            registration.key.completeExceptionally(new IOException(name + " has stopped"));
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // IGNORE
         }
     }
 }
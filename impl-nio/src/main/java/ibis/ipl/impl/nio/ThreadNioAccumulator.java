@@ -32,11 +32,11 @@ final class ThreadNioAccumulator extends NioAccumulator {
 
     private static Logger logger = LoggerFactory.getLogger(ThreadNioAccumulator.class);
 
-    SendReceiveThread thread;
+    private final NioIbis ibis;
 
-    ThreadNioAccumulator(NioSendPort port, SendReceiveThread thread) {
+    ThreadNioAccumulator(NioSendPort port, NioIbis ibis) {
         super(port);
-        this.thread = thread;
+        this.ibis = ibis;
     }
 
     @Override
@@ -49,7 +49,7 @@ final class ThreadNioAccumulator extends NioAccumulator {
             logger.debug("creating new" + " ThreadNioAccumulatorConnection");
         }
 
-        return new ThreadNioAccumulatorConnection(port, thread, channel, peer);
+        return new ThreadNioAccumulatorConnection(port, ibis.sendReceiveThread(), channel, peer);
     }
 
     @Override
@@ -18,6 +18,7 @@
 package ibis.ipl.impl.nio;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
@@ -61,6 +62,19 @@ final class ThreadNioDissipator extends NioDissipator {
         }
     }
 
+    /**
+     * Bulk data is read through the receive buffer, by the send/receive thread.
+     */
+    @Override
+    public synchronized void readByteBuffer(ByteBuffer b) throws IOException {
+        super.readByteBuffer(b);
+
+        if (!reading) {
+            sendReceiveThread.enableReading(key);
+            reading = true;
+        }
+    }
+
     @Override
     synchronized boolean messageWaiting() throws IOException {
         if (key == null) {
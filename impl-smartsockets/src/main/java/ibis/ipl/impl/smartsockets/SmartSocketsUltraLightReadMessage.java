@@ -57,7 +57,9 @@ public final class SmartSocketsUltraLightReadMessage implements ReadMessage {
 
         String serialization = null;
 
-        if (type.hasCapability(PortType.SERIALIZATION_DATA)) {
+        if (type.hasCapability(PortType.SERIALIZATION_DATA_COMPACT)) {
+            serialization = "compact";
+        } else if (type.hasCapability(PortType.SERIALIZATION_DATA)) {
             serialization = "data";
         } else if (type.hasCapability(PortType.SERIALIZATION_OBJECT_SUN)) {
             serialization = "sun";
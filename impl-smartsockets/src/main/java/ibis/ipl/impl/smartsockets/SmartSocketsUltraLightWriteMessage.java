@@ -42,7 +42,9 @@ public class SmartSocketsUltraLightWriteMessage implements WriteMessage {
 
         String serialization = null;
 
-        if (type.hasCapability(PortType.SERIALIZATION_DATA)) {
+        if (type.hasCapability(PortType.SERIALIZATION_DATA_COMPACT)) {
+            serialization = "compact";
+        } else if (type.hasCapability(PortType.SERIALIZATION_DATA)) {
             serialization = "data";
         } else if (type.hasCapability(PortType.SERIALIZATION_OBJECT_SUN)) {
             serialization = "sun";
@@ -17,6 +17,7 @@ package ibis.ipl.impl.stacking.dummy;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 import ibis.ipl.SendPort;
 import ibis.ipl.WriteMessage;
@@ -56,6 +57,11 @@ public class StackingWriteMessage implements WriteMessage {
         base.finish(e);
     }
 
+    @Override
+    public CompletableFuture<Long> finishAsync() {
+        return base.finishAsync();
+    }
+
     @Override
     public SendPort localPort() {
         return port;
@@ -17,6 +17,14 @@ package ibis.ipl.impl.stacking.lrmc.util;
 
 import java.util.LinkedList;
 
+import ibis.io.BufferPool;
+
+/**
+ * Cache of byte arrays of a fixed size. Arrays that do not fit in the cache go
+ * to the shared {@link BufferPool}, and new arrays are taken from there, so
+ * arrays obtained from {@link #get(int)} may be larger than the array size
+ * specified at construction.
+ */
 public class ByteArrayCache {
 
     private static final int DEFAULT_MAX = 100;
@@ -36,14 +44,22 @@ public class ByteArrayCache {
     }
 
     public synchronized void put(byte[] array) {
-        if (cache.size() < maxSize && array.length == arraySize) {
+        if (array.length < arraySize) {
+            return;
+        }
+        if (cache.size() < maxSize) {
             cache.addLast(array);
+        } else {
+            BufferPool.release(array);
         }
     }
 
     public synchronized byte[] get(int len) {
-        if (len <= arraySize && cache.size() > 0) {
-            return cache.removeLast();
+        if (len <= arraySize) {
+            if (cache.size() > 0) {
+                return cache.removeLast();
+            }
+            return BufferPool.getArray(arraySize);
         }
 
         return new byte[len];
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.impl.tcp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import ibis.io.ScatteringInput;
+
+/**
+ * An input stream on top of a blocking socket channel, which also allows
+ * reading straight into byte buffers.
+ */
+class ChannelInputStream extends InputStream implements ScatteringInput {
+
+    private final SocketChannel channel;
+
+    /** Only used to find out how many bytes are available. */
+    private final InputStream socketIn;
+
+    private final ByteBuffer single = ByteBuffer.allocate(1);
+
+    ChannelInputStream(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        socketIn = channel.socket().getInputStream();
+    }
+
+    @Override
+    public int read() throws IOException {
+        single.clear();
+        int n;
+        do {
+            n = channel.read(single);
+        } while (n == 0);
+        if (n < 0) {
+            return -1;
+        }
+        return single.get(0) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+        int n;
+        do {
+            n = channel.read(buf);
+        } while (n == 0);
+        return n;
+    }
+
+    @Override
+    public void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("EOF encountered");
+            }
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return socketIn.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.impl.tcp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import ibis.io.GatheringOutput;
+
+/**
+ * An output stream on top of a blocking socket channel, which also allows
+ * gathering writes of byte buffers.
+ */
+class ChannelOutputStream extends OutputStream implements GatheringOutput {
+
+    private final SocketChannel channel;
+
+    private final ByteBuffer single = ByteBuffer.allocate(1);
+
+    ChannelOutputStream(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single.clear();
+        single.put((byte) b);
+        single.flip();
+        while (single.hasRemaining()) {
+            channel.write(single);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    @Override
+    public boolean writeBuffers(ByteBuffer[] buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        do {
+            channel.write(buffers);
+        } while (last.hasRemaining());
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.impl.tcp;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.ipl.PortType;
+import ibis.ipl.impl.IbisIdentifier;
+import ibis.util.ThreadPool;
+
+/**
+ * Keeps the connections of send ports that were disconnected or closed, so
+ * that a later connect to the same Ibis with the same port type can skip
+ * setting up a new TCP connection. The receiving side of a cached connection
+ * waits for a new connection request on it, exactly as it does on a freshly
+ * accepted connection.
+ *
+ * The cache is bounded: when it is full, the connection that has been idle
+ * longest is closed. A sweeper thread closes connections that have been idle
+ * for too long, and exits when the cache is empty.
+ */
+final class ConnectionCache implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionCache.class);
+
+    private static final class Key {
+        final IbisIdentifier ibis;
+        final PortType type;
+
+        Key(IbisIdentifier ibis, PortType type) {
+            this.ibis = ibis;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return ibis.equals(other.ibis) && type.equals(other.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(ibis, type);
+        }
+    }
+
+    private static final class Entry {
+        final Key key;
+        final IbisSocket socket;
+        final long time;
+
+        Entry(Key key, IbisSocket socket) {
+            this.key = key;
+            this.socket = socket;
+            this.time = System.currentTimeMillis();
+        }
+    }
+
+    private final int maxSize;
+
+    private final long timeout;
+
+    /** Idle connections, in the order in which they were added. */
+    private final LinkedHashMap<IbisSocket, Entry> entries = new LinkedHashMap<>();
+
+    private boolean sweeping = false;
+
+    private boolean ended = false;
+
+    private int hits = 0;
+
+    private int misses = 0;
+
+    /**
+     * Creates a connection cache.
+     *
+     * @param maxSize maximum number of idle connections, 0 disables the cache.
+     * @param timeout time in milliseconds after which an idle connection is
+     *                closed.
+     */
+    ConnectionCache(int maxSize, long timeout) {
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+    }
+
+    boolean enabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Removes and returns an idle connection to the specified Ibis that was used
+     * for the specified port type.
+     *
+     * @return the connection, or <code>null</code> if there is none.
+     */
+    synchronized IbisSocket get(IbisIdentifier ibis, PortType type) {
+        if (!enabled()) {
+            return null;
+        }
+        Key key = new Key(ibis, type);
+        // Take the most recently added one, which is least likely to have been
+        // closed by the other side.
+        Entry found = null;
+        for (Entry e : entries.values()) {
+            if (e.key.equals(key)) {
+                found = e;
+            }
+        }
+        if (found == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entries.remove(found.socket);
+        return found.socket;
+    }
+
+    /**
+     * Adds an idle connection. It is closed instead when the cache is disabled
+     * or ended.
+     */
+    void put(IbisIdentifier ibis, PortType type, IbisSocket socket) {
+        ArrayList<IbisSocket> evicted = new ArrayList<>();
+        synchronized (this) {
+            if (!enabled() || ended) {
+                evicted.add(socket);
+            } else {
+                entries.put(socket, new Entry(new Key(ibis, type), socket));
+                Iterator<IbisSocket> it = entries.keySet().iterator();
+                while (entries.size() > maxSize) {
+                    evicted.add(it.next());
+                    it.remove();
+                }
+                if (!sweeping) {
+                    sweeping = true;
+                    ThreadPool.createNew(this, "TcpIbis Connection Cache Sweeper");
+                }
+            }
+        }
+        close(evicted);
+    }
+
+    /** Closes all idle connections. */
+    void end() {
+        ArrayList<IbisSocket> evicted;
+        synchronized (this) {
+            ended = true;
+            evicted = new ArrayList<>(entries.keySet());
+            entries.clear();
+            notifyAll();
+        }
+        close(evicted);
+        if (logger.isInfoEnabled() && hits + misses > 0) {
+            logger.info("Connection cache: " + hits + " hits, " + misses + " misses");
+        }
+    }
+
+    private static void close(ArrayList<IbisSocket> sockets) {
+        for (IbisSocket s : sockets) {
+            try {
+                s.close();
+            } catch (Throwable e) {
+                // ignored
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        for (;;) {
+            ArrayList<IbisSocket> evicted = new ArrayList<>();
+            synchronized (this) {
+                if (ended || entries.isEmpty()) {
+                    sweeping = false;
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                Iterator<Entry> it = entries.values().iterator();
+                while (it.hasNext()) {
+                    Entry e = it.next();
+                    if (now - e.time < timeout) {
+                        break;
+                    }
+                    evicted.add(e.socket);
+                    it.remove();
+                }
+                if (evicted.isEmpty()) {
+                    Entry oldest = entries.values().iterator().next();
+                    try {
+                        wait(Math.max(1, oldest.time + timeout - now));
+                    } catch (InterruptedException e) {
+                        // ignored
+                    }
+                }
+            }
+            if (logger.isDebugEnabled() && !evicted.isEmpty()) {
+                logger.debug("Closing " + evicted.size() + " idle connections");
+            }
+            close(evicted);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.impl.tcp;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.util.ThreadPool;
+
+/**
+ * Watches idle incoming connections of receive ports, so that they do not need
+ * a thread each. When data arrives on a connection, the connection is removed
+ * from the selector, and handed to a worker thread which reads from it until no
+ * more data is available, after which the connection is parked here again.
+ * There is a fixed number of workers. When all of them are busy, for instance
+ * because they are blocked in upcalls, a pool thread is used instead, so that a
+ * blocked upcall cannot hold up the other connections.
+ */
+final class ConnectionSelector implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionSelector.class);
+
+    /** Something that can be parked in a connection selector. */
+    interface Parkable {
+
+        /** Returns the channel to watch. */
+        SocketChannel channel();
+
+        /**
+         * Called in a worker thread when data is available. The channel is in
+         * blocking mode again.
+         */
+        void selected();
+    }
+
+    /** Tells a worker to stop. */
+    private static final Parkable STOP = new Parkable() {
+        @Override
+        public SocketChannel channel() {
+            return null;
+        }
+
+        @Override
+        public void selected() {
+            // not used
+        }
+    };
+
+    private final Selector selector;
+
+    /** Connections that are to be registered by the selector thread. */
+    private final ConcurrentLinkedQueue<Parkable> pending = new ConcurrentLinkedQueue<>();
+
+    private final ArrayList<Parkable> ready = new ArrayList<>();
+
+    /** Connections that are handed to a worker. */
+    private final LinkedBlockingQueue<Parkable> work = new LinkedBlockingQueue<>();
+
+    /** The number of workers that wait for a connection and are not claimed yet. */
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+
+    private final int nWorkers;
+
+    private volatile boolean done = false;
+
+    ConnectionSelector(String name, int nWorkers) throws IOException {
+        selector = Selector.open();
+        this.nWorkers = nWorkers;
+        for (int i = 0; i < nWorkers; i++) {
+            ThreadPool.createNew(this::worker, name + " Worker " + i);
+        }
+        ThreadPool.createNew(this, name);
+    }
+
+    /**
+     * Parks the specified connection until data is available on it. The caller
+     * must not use the channel until {@link Parkable#selected()} is called.
+     *
+     * @param p the connection.
+     */
+    void park(Parkable p) {
+        pending.add(p);
+        selector.wakeup();
+    }
+
+    /**
+     * Reads from the specified connection in a worker thread, or in a pool
+     * thread when all workers are busy.
+     *
+     * @param p the connection.
+     */
+    void dispatch(Parkable p) {
+        int n;
+        while ((n = idleWorkers.get()) > 0) {
+            if (idleWorkers.compareAndSet(n, n - 1)) {
+                work.add(p);
+                return;
+            }
+        }
+        ThreadPool.createNew(() -> handle(p), "ConnectionHandler");
+    }
+
+    void end() {
+        done = true;
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // ignored
+        }
+        // Wake up the idle workers, so that they can die.
+        for (int i = 0; i < nWorkers; i++) {
+            work.add(STOP);
+        }
+    }
+
+    private void worker() {
+        while (!done) {
+            idleWorkers.incrementAndGet();
+            Parkable p;
+            try {
+                p = work.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (p == STOP) {
+                return;
+            }
+            handle(p);
+        }
+    }
+
+    private static void handle(Parkable p) {
+        try {
+            p.channel().configureBlocking(true);
+        } catch (Throwable e) {
+            // ignored, the read will fail.
+        }
+        try {
+            p.selected();
+        } catch (Throwable e) {
+            logger.warn("Connection handler got exception", e);
+        }
+    }
+
+    private void registerPending() {
+        Parkable p;
+        while ((p = pending.poll()) != null) {
+            SocketChannel channel = p.channel();
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, p);
+            } catch (Throwable e) {
+                // The channel was closed in the meantime. Let the connection
+                // find out for itself.
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Could not register channel", e);
+                }
+                ready.add(p);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!done) {
+            try {
+                registerPending();
+                if (ready.isEmpty()) {
+                    selector.select();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    key.cancel();
+                    ready.add((Parkable) key.attachment());
+                }
+                if (ready.isEmpty()) {
+                    continue;
+                }
+                // Flush the cancelled keys, so that the channels can be put
+                // back in blocking mode.
+                selector.selectNow();
+                for (Parkable p : ready) {
+                    dispatch(p);
+                }
+                ready.clear();
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (Throwable e) {
+                if (done) {
+                    return;
+                }
+                logger.warn("Connection selector got exception", e);
+            }
+        }
+    }
+}
@@ -20,21 +20,29 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import ibis.util.IPUtils;
 
 class IbisServerSocket {
 
+    private static final Logger logger = LoggerFactory.getLogger(IbisServerSocket.class);
+
     ServerSocket socket = null;
 
-    IbisServerSocket(ServerSocket s) {
+    private final IbisSocketFactory factory;
+
+    IbisServerSocket(ServerSocket s, IbisSocketFactory factory) {
         socket = s;
+        this.factory = factory;
     }
 
     IbisSocket accept() throws java.io.IOException {
         Socket s = socket.accept();
         int b = s.getInputStream().read();
         if (b > 1) {
-            ServerSocket n = new ServerSocket();
+            ServerSocket n = factory.createParallelServerSocket();
             Socket[] result = new Socket[b];
             result[0] = s;
             try {
@@ -47,10 +55,12 @@ class IbisServerSocket {
                 d.write(baddr);
                 d.flush();
                 for (int i = 1; i < b; i++) {
-                    System.out.println("Accept from address " + addr.toString());
                     result[i] = n.accept();
                 }
-                return new IbisSocket(result);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Accepted " + (b - 1) + " parallel streams at " + addr);
+                }
+                return factory.createParallelSocket(result);
             } finally {
                 n.close();
             }
@@ -19,25 +19,46 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.Arrays;
 
 class IbisSocket {
 
     Socket[] sockets = null;
+    Stripe[] stripes = null;
     InputStream in;
     OutputStream out;
 
     IbisSocket(Socket s) throws IOException {
         sockets = new Socket[1];
         sockets[0] = s;
-        in = s.getInputStream();
-        out = s.getOutputStream();
+        SocketChannel channel = s.getChannel();
+        if (channel != null) {
+            in = new ChannelInputStream(channel);
+            out = new ChannelOutputStream(channel);
+        } else {
+            in = s.getInputStream();
+            out = s.getOutputStream();
+        }
     }
 
-    public IbisSocket(Socket[] sockets) throws IOException {
+    /**
+     * Creates a connection of parallel streams.
+     *
+     * @param sockets   the sockets, of which the first is the control stream.
+     * @param threshold blocks of at least this size are striped over the
+     *                  sockets.
+     * @param adaptive  whether the number of sockets used adapts to the
+     *                  measured bandwidth.
+     */
+    IbisSocket(Socket[] sockets, int threshold, boolean adaptive) throws IOException {
         this.sockets = sockets;
-        in = new PInputStream(sockets);
-        out = new POutputStream(sockets);
+        stripes = new Stripe[sockets.length];
+        for (int i = 0; i < sockets.length; i++) {
+            stripes[i] = new Stripe(sockets[i]);
+        }
+        in = new PInputStream(stripes);
+        out = new POutputStream(stripes, threshold, adaptive);
     }
 
     void setTcpNoDelay(boolean val) throws IOException {
@@ -47,16 +68,10 @@ class IbisSocket {
     }
 
     java.io.OutputStream getOutputStream() throws IOException {
-        if (sockets.length == 1) {
-            return sockets[0].getOutputStream();
-        }
         return out;
     }
 
     java.io.InputStream getInputStream() throws IOException {
-        if (sockets.length == 1) {
-            return sockets[0].getInputStream();
-        }
         return in;
     }
 
@@ -65,13 +80,20 @@ class IbisSocket {
             return;
         }
         try {
-            for (Socket socket : sockets) {
-                if (socket != null) {
-                    socket.close();
+            if (stripes != null) {
+                for (Stripe stripe : stripes) {
+                    stripe.close();
+                }
+            } else {
+                for (Socket socket : sockets) {
+                    if (socket != null) {
+                        socket.close();
+                    }
                 }
             }
         } finally {
             sockets = null;
+            stripes = null;
         }
     }
 
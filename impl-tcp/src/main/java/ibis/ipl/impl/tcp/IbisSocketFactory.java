@@ -20,9 +20,14 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Map;
 import java.util.Properties;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import ibis.ipl.IbisConfigurationException;
 import ibis.ipl.impl.IbisIdentifier;
 import ibis.util.IPUtils;
@@ -30,56 +35,122 @@ import ibis.util.TypedProperties;
 
 class IbisSocketFactory {
 
+    private static final Logger logger = LoggerFactory.getLogger(IbisSocketFactory.class);
+
+    /** Management property of a send port with its number of parallel streams. */
+    static final String PARALLEL_STREAMS = "nParallelStreams";
+
+    /** The number of streams is sent as a byte. */
+    private static final int MAX_PARALLEL_STREAMS = 255;
+
+    /**
+     * Whether sockets are created through socket channels, which allows large
+     * arrays to be sent and received without copying them through a byte array.
+     */
+    final boolean useChannels;
+
+    /** Default number of parallel streams of a connection. */
+    private final int parallelStreams;
+
+    private final int stripeThreshold;
+
+    private final boolean adaptive;
+
     IbisSocketFactory(TypedProperties properties) throws IbisConfigurationException, IOException {
+        useChannels = properties.getBooleanProperty(TcpIbis.s_channels, true);
+        parallelStreams = properties.getIntProperty(TcpIbis.s_parallel_streams, 1);
+        stripeThreshold = properties.getIntProperty(TcpIbis.s_parallel_threshold, 64 * 1024);
+        adaptive = properties.getBooleanProperty(TcpIbis.s_parallel_adaptive, true);
+        if (parallelStreams < 1 || parallelStreams > MAX_PARALLEL_STREAMS) {
+            throw new IbisConfigurationException(TcpIbis.s_parallel_streams + " must be between 1 and " + MAX_PARALLEL_STREAMS);
+        }
+        if (stripeThreshold < 1) {
+            throw new IbisConfigurationException(TcpIbis.s_parallel_threshold + " must be positive");
+        }
     }
 
     void setIdent(IbisIdentifier id) {
     }
 
     IbisServerSocket createServerSocket(int port, int backlog, boolean retry, Properties properties) throws IOException {
-        ServerSocket server = new ServerSocket();
+        ServerSocket server = useChannels ? ServerSocketChannel.open().socket() : new ServerSocket();
         InetSocketAddress local = new InetSocketAddress(IPUtils.getLocalHostAddress(), port);
         server.bind(local, backlog);
-        return new IbisServerSocket(server);
+        return new IbisServerSocket(server, this);
     }
 
     IbisSocket createClientSocket(IbisSocketAddress addr, int timeout, boolean fillTimeout, Map<String, String> properties) throws IOException {
 
-        int nparallel = 1;
-        Socket s = new Socket();
+        int nparallel = parallelStreams(properties);
+        Socket s = newSocket();
         s.connect(addr.address, timeout);
-        if (properties != null) {
-            String np = properties.get("nParallelStreams");
-            System.out.println("nParallelStreams = " + np);
-            if (np != null) {
-                try {
-                    nparallel = Integer.parseInt(np);
-                } catch (Throwable e) {
-                    // ignore
-                }
-            }
-        }
         s.getOutputStream().write(nparallel);
         s.getOutputStream().flush();
         if (nparallel > 1) {
             Socket[] result = new Socket[nparallel];
             result[0] = s;
-            DataInputStream b = new DataInputStream(s.getInputStream());
-            int sz = b.readInt();
-            byte[] buf = new byte[sz];
-            b.readFully(buf);
-            addr = new IbisSocketAddress(buf);
-            for (int i = 1; i < nparallel; i++) {
-                result[i] = new Socket();
-                System.out.println("Connecting to " + addr.toString());
-                result[i].connect(addr.address, timeout);
+            try {
+                DataInputStream b = new DataInputStream(s.getInputStream());
+                int sz = b.readInt();
+                byte[] buf = new byte[sz];
+                b.readFully(buf);
+                addr = new IbisSocketAddress(buf);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Connecting " + (nparallel - 1) + " parallel streams to " + addr);
+                }
+                for (int i = 1; i < nparallel; i++) {
+                    result[i] = newSocket();
+                    result[i].connect(addr.address, timeout);
+                }
+            } catch (IOException e) {
+                for (Socket r : result) {
+                    if (r != null) {
+                        try {
+                            r.close();
+                        } catch (IOException e2) {
+                            // ignored
+                        }
+                    }
+                }
+                throw e;
             }
-            return new IbisSocket(result);
+            return createParallelSocket(result);
         } else {
             return new IbisSocket(s);
         }
     }
 
+    /**
+     * Returns the number of parallel streams for a connection of a send port
+     * with the specified management properties.
+     */
+    int parallelStreams(Map<String, String> properties) {
+        if (properties != null) {
+            String np = properties.get(PARALLEL_STREAMS);
+            if (np != null) {
+                try {
+                    return Math.max(1, Math.min(MAX_PARALLEL_STREAMS, Integer.parseInt(np)));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring illegal " + PARALLEL_STREAMS + " value: " + np);
+                }
+            }
+        }
+        return parallelStreams;
+    }
+
+    private Socket newSocket() throws IOException {
+        return useChannels ? SocketChannel.open().socket() : new Socket();
+    }
+
+    /** Creates the server socket on which the extra parallel streams arrive. */
+    ServerSocket createParallelServerSocket() throws IOException {
+        return useChannels ? ServerSocketChannel.open().socket() : new ServerSocket();
+    }
+
+    IbisSocket createParallelSocket(Socket[] sockets) throws IOException {
+        return new IbisSocket(sockets, stripeThreshold, adaptive);
+    }
+
     void printStatistics(String s) {
     }
 }
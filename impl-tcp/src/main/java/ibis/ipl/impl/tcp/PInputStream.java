@@ -15,38 +15,57 @@
  */
 package ibis.ipl.impl.tcp;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.Socket;
+import java.nio.ByteBuffer;
 
-import ibis.io.Conversion;
+import ibis.io.BufferPool;
+import ibis.io.ScatteringInput;
 
-public class PInputStream extends InputStream {
+/**
+ * Input stream over a connection that consists of several sockets, reading the
+ * blocks written by a {@link POutputStream}. A striped block is read
+ * concurrently from all its sockets. When the buffer of the reader is large
+ * enough, the stripes are read straight into it, otherwise the block is first
+ * collected in a temporary buffer. Striped blocks are at most
+ * {@link POutputStream#MAX_BLOCK} bytes.
+ */
+public class PInputStream extends InputStream implements ScatteringInput {
 
-    private Conversion conversion = Conversion.loadConversion(false);
-    private InputStream[] streams;
-    private int currentStream;
-    private int leftOver = -1;
-    private byte[] tmp = new byte[1];
-    private byte[] tmpInt = new byte[4];
+    private Stripe[] stripes;
 
-    public PInputStream(Socket[] sockets) throws IOException {
-        streams = new InputStream[sockets.length];
-        for (int i = 0; i < sockets.length; i++) {
-            streams[i] = sockets[i].getInputStream();
-        }
+    /** Bytes of the current block on the control stream that are not read yet. */
+    private int leftOver = 0;
+
+    /** Size of the striped block of which the header has just been read. */
+    private int stripedLength = 0;
+
+    private int stripeCount;
+
+    /** Rest of a striped block that did not fit in the buffer of the reader. */
+    private ByteBuffer staged = null;
+
+    private byte[] stagedArray = null;
+
+    private final ByteBuffer header = ByteBuffer.allocate(POutputStream.HEADER_SIZE);
+
+    private final byte[] single = new byte[1];
+
+    PInputStream(Stripe[] stripes) {
+        this.stripes = stripes;
     }
 
     @Override
     public int read() throws IOException {
         int rc = 0;
         while (rc == 0) {
-            rc = this.read(tmp);
+            rc = read(single, 0, 1);
         }
         if (rc == -1) {
             return -1;
         }
-        return tmp[0] & 255;
+        return single[0] & 255;
     }
 
     @Override
@@ -56,48 +75,177 @@ public class PInputStream extends InputStream {
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        if (leftOver == 0) {
-            currentStream = (currentStream + 1) % streams.length;
-        }
-        if (leftOver <= 0) {
-            int index = 0;
-            while (index < 4) {
-                int rc = streams[currentStream].read(tmpInt, index, 4 - index);
-                if (rc < 0) {
-                    return -1;
+        if (len == 0) {
+            return 0;
+        }
+        return read(ByteBuffer.wrap(b, off, len));
+    }
+
+    @Override
+    public void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (read(buffer) < 0) {
+                throw new EOFException("EOF encountered");
+            }
+        }
+    }
+
+    /**
+     * Reads some bytes, but never more than the rest of the current block.
+     *
+     * @return the number of bytes read, or -1 at end of stream.
+     */
+    private int read(ByteBuffer dst) throws IOException {
+        if (stripes == null) {
+            throw new IOException("Stream closed");
+        }
+        for (;;) {
+            if (staged != null) {
+                int n = Math.min(staged.remaining(), dst.remaining());
+                ByteBuffer b = staged.duplicate();
+                b.limit(b.position() + n);
+                dst.put(b);
+                staged.position(staged.position() + n);
+                if (!staged.hasRemaining()) {
+                    BufferPool.release(stagedArray);
+                    staged = null;
+                    stagedArray = null;
+                }
+                return n;
+            }
+            if (leftOver > 0) {
+                int limit = dst.limit();
+                if (dst.remaining() > leftOver) {
+                    dst.limit(dst.position() + leftOver);
+                }
+                int n;
+                try {
+                    n = stripes[0].read(dst);
+                } finally {
+                    dst.limit(limit);
+                }
+                if (n < 0) {
+                    throw new EOFException("EOF encountered in the middle of a block");
                 }
-                index += rc;
+                leftOver -= n;
+                return n;
+            }
+            if (stripedLength > 0) {
+                int len = stripedLength;
+                stripedLength = 0;
+                if (dst.remaining() >= len) {
+                    ByteBuffer b = dst.duplicate();
+                    b.limit(b.position() + len);
+                    readStriped(b);
+                    dst.position(dst.position() + len);
+                    return len;
+                }
+                stagedArray = BufferPool.getArray(len);
+                staged = ByteBuffer.wrap(stagedArray, 0, len);
+                readStriped(staged.duplicate());
+                continue;
+            }
+            if (!readHeader()) {
+                return -1;
             }
-            leftOver = conversion.byte2int(tmpInt, 0);
         }
+    }
 
-        int min = Math.min(leftOver, len);
-        int rc = streams[currentStream].read(b, off, min);
-        if (rc < 0) {
-            return -1;
+    /**
+     * Reads the header of the next block.
+     *
+     * @return <code>false</code> at end of stream.
+     */
+    private boolean readHeader() throws IOException {
+        header.clear().limit(4);
+        while (header.hasRemaining()) {
+            if (stripes[0].read(header) < 0) {
+                if (header.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("EOF encountered in block header");
+            }
+        }
+        int h = header.getInt(0);
+        if (h >= 0) {
+            leftOver = h;
+            return true;
+        }
+        header.limit(POutputStream.HEADER_SIZE);
+        stripes[0].readFully(header);
+        if (h < -POutputStream.MAX_BLOCK) {
+            throw new IOException("Got striped block of " + -(long) h + " bytes, the maximum is " + POutputStream.MAX_BLOCK);
+        }
+        stripedLength = -h;
+        stripeCount = header.get(4) & 255;
+        if (stripeCount < 1 || stripeCount > stripes.length) {
+            throw new IOException("Got block of " + stripeCount + " stripes, but there are " + stripes.length + " streams");
+        }
+        return true;
+    }
+
+    /**
+     * Reads a striped block into the specified buffer, in the same way as
+     * {@link POutputStream} cut it up.
+     */
+    private void readStriped(ByteBuffer data) throws IOException {
+        int n = stripeCount;
+        int pos = data.position();
+        int len = data.remaining();
+        int base = len / n;
+        for (int i = 1; i < n; i++) {
+            ByteBuffer s = data.duplicate();
+            s.position(pos + i * base);
+            s.limit(i == n - 1 ? pos + len : pos + (i + 1) * base);
+            stripes[i].submit(s, false);
+        }
+        IOException failure = null;
+        try {
+            ByteBuffer s = data.duplicate();
+            s.limit(pos + base);
+            stripes[0].readFully(s);
+        } catch (IOException e) {
+            failure = e;
+        }
+        for (int i = 1; i < n; i++) {
+            try {
+                stripes[i].await();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
         }
-        leftOver -= rc;
-        return rc;
     }
 
     @Override
     public int available() throws IOException {
-        int rc = 0;
-        for (InputStream in : streams) {
-            rc += in.available();
+        if (staged != null) {
+            return staged.remaining();
         }
-        return rc;
+        if (stripes == null) {
+            return 0;
+        }
+        return stripes[0].in.available();
     }
 
     @Override
     public void close() throws IOException {
-        if (streams != null) {
+        if (stripes != null) {
             try {
-                for (InputStream i : streams) {
-                    i.close();
+                for (Stripe s : stripes) {
+                    s.in.close();
                 }
             } finally {
-                streams = null;
+                stripes = null;
+                if (stagedArray != null) {
+                    BufferPool.release(stagedArray);
+                    staged = null;
+                    stagedArray = null;
+                }
             }
         }
     }
@@ -17,44 +17,240 @@ package ibis.ipl.impl.tcp;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.net.Socket;
+import java.nio.ByteBuffer;
 
-import ibis.io.Conversion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class POutputStream extends OutputStream {
+import ibis.io.GatheringOutput;
 
-    private Conversion conversion = Conversion.loadConversion(false);
-    private OutputStream[] streams;
-    private int currentStream;
-    private byte[] tmp = new byte[1];
-    private byte[] tmpInt = new byte[4];
+/**
+ * Output stream over a connection that consists of several sockets. The data
+ * is sent in blocks, each preceded by a header on the first socket, the control
+ * stream. Blocks smaller than the stripe threshold are sent on the control
+ * stream only, so that small messages do not suffer from the parallel streams.
+ * Larger blocks are cut into stripes, one per active socket, that are written
+ * concurrently.
+ *
+ * The number of active sockets adapts to the measured bandwidth: every
+ * {@link #ADAPT_INTERVAL} striped blocks, one socket is added or removed,
+ * and the direction is reversed when the bandwidth went down.
+ *
+ * The header of a block is an int. A non-negative value is the size of a block
+ * on the control stream. A negative value is minus the size of a striped block,
+ * followed by a byte with the number of stripes. See {@link PInputStream}.
+ */
+public class POutputStream extends OutputStream implements GatheringOutput {
 
-    public POutputStream(Socket[] sockets) throws IOException {
-        streams = new OutputStream[sockets.length];
-        for (int i = 0; i < sockets.length; i++) {
-            streams[i] = sockets[i].getOutputStream();
-        }
+    private static final Logger logger = LoggerFactory.getLogger(POutputStream.class);
+
+    /** Number of striped blocks between changes of the number of stripes. */
+    static final int ADAPT_INTERVAL = 16;
+
+    /** Size of a block header. */
+    static final int HEADER_SIZE = 5;
+
+    /**
+     * Maximum size of a striped block. A receiver may have to collect a whole
+     * striped block in a temporary buffer, so larger writes are cut up.
+     */
+    static final int MAX_BLOCK = 4 * 1024 * 1024;
+
+    private Stripe[] stripes;
+
+    private final int threshold;
+
+    private final boolean adaptive;
+
+    /** Number of sockets used for the next striped block. */
+    private int active;
+
+    /** Direction in which the number of active sockets is changed next. */
+    private int step = -1;
+
+    private long measuredBytes = 0;
+
+    private long measuredTime = 0;
+
+    private int measuredBlocks = 0;
+
+    private double lastRate = 0.0;
+
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+    /** Header and data of a small block, so that it is sent in one go. */
+    private final byte[] small;
+
+    private final byte[] single = new byte[1];
+
+    /**
+     * Creates a striped output stream.
+     *
+     * @param stripes   the sockets, of which the first is the control stream.
+     * @param threshold blocks of at least this size are striped.
+     * @param adaptive  whether the number of sockets used adapts to the
+     *                  measured bandwidth.
+     */
+    POutputStream(Stripe[] stripes, int threshold, boolean adaptive) {
+        this.stripes = stripes;
+        this.threshold = threshold;
+        this.adaptive = adaptive;
+        active = stripes.length;
+        small = new byte[HEADER_SIZE + threshold];
     }
 
     @Override
     public void write(int v) throws IOException {
-        tmp[0] = (byte) v;
-        this.write(tmp);
+        single[0] = (byte) v;
+        write(single, 0, 1);
     }
 
     @Override
     public void write(byte[] b) throws IOException {
-        this.write(b, 0, b.length);
+        write(b, 0, b.length);
     }
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        conversion.int2byte(len, tmpInt, 0);
+        if (len == 0) {
+            return;
+        }
+        if (len < threshold) {
+            writeSmall(b, off, len);
+        } else {
+            writeLarge(ByteBuffer.wrap(b, off, len));
+        }
+    }
+
+    /**
+     * Writes the buffers as separate blocks, so that the large ones are striped
+     * without copying them.
+     */
+    @Override
+    public boolean writeBuffers(ByteBuffer[] buffers) throws IOException {
+        for (ByteBuffer b : buffers) {
+            int len = b.remaining();
+            if (len == 0) {
+                continue;
+            }
+            if (len < threshold) {
+                b.get(small, HEADER_SIZE, len);
+                writeSmall(small, HEADER_SIZE, len);
+            } else {
+                writeLarge(b);
+            }
+        }
+        return true;
+    }
+
+    private void writeSmall(byte[] b, int off, int len) throws IOException {
+        if (stripes == null) {
+            throw new IOException("Stream closed");
+        }
+        // The header of a block on the control stream is just the int.
+        ByteBuffer.wrap(small).putInt(1, len);
+        if (b != small) {
+            System.arraycopy(b, off, small, HEADER_SIZE, len);
+        }
+        stripes[0].out.write(small, 1, len + HEADER_SIZE - 1);
+    }
+
+    private void writeLarge(ByteBuffer data) throws IOException {
+        if (stripes == null) {
+            throw new IOException("Stream closed");
+        }
+        // Cut into blocks of about the same size, so that there is no small
+        // block at the end.
+        int blocks = (int) ((data.remaining() + (long) MAX_BLOCK - 1) / MAX_BLOCK);
+        while (blocks > 1) {
+            ByteBuffer block = data.duplicate();
+            block.limit(block.position() + data.remaining() / blocks);
+            writeBlock(block);
+            data.position(block.position());
+            blocks--;
+        }
+        writeBlock(data);
+    }
+
+    private void writeBlock(ByteBuffer data) throws IOException {
+        int len = data.remaining();
+        int n = active;
+        long start = System.nanoTime();
 
-        streams[currentStream].write(tmpInt);
-        streams[currentStream].write(b, off, len);
+        header.clear();
+        if (n == 1) {
+            header.putInt(len).flip();
+            stripes[0].write(header, data);
+        } else {
+            header.putInt(-len).put((byte) n).flip();
+            int pos = data.position();
+            int base = len / n;
+            for (int i = 1; i < n; i++) {
+                ByteBuffer s = data.duplicate();
+                s.position(pos + i * base);
+                s.limit(i == n - 1 ? pos + len : pos + (i + 1) * base);
+                stripes[i].submit(s, true);
+            }
+            IOException failure = null;
+            try {
+                ByteBuffer s = data.duplicate();
+                s.limit(pos + base);
+                stripes[0].write(header, s);
+            } catch (IOException e) {
+                failure = e;
+            }
+            for (int i = 1; i < n; i++) {
+                try {
+                    stripes[i].await();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            data.position(pos + len);
+        }
+
+        if (adaptive && stripes.length > 1) {
+            adapt(len, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Accounts for a striped block, and changes the number of active sockets
+     * at the end of a measuring interval.
+     */
+    private void adapt(int len, long time) {
+        measuredBytes += len;
+        measuredTime += time;
+        if (++measuredBlocks < ADAPT_INTERVAL) {
+            return;
+        }
+        double rate = (double) measuredBytes / Math.max(1, measuredTime);
+        if (rate < lastRate) {
+            // The last change made things worse.
+            step = -step;
+        }
+        if (active + step < 1 || active + step > stripes.length) {
+            step = -step;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Measured " + (rate * 1000) + " MB/s with " + active + " of " + stripes.length + " streams, now using "
+                    + (active + step));
+        }
+        lastRate = rate;
+        active += step;
+        measuredBytes = 0;
+        measuredTime = 0;
+        measuredBlocks = 0;
+    }
 
-        currentStream = (currentStream + 1) % streams.length;
+    /** Returns the number of sockets used for the next striped block. */
+    int activeStreams() {
+        return active;
     }
 
     @Override
@@ -64,13 +260,13 @@ public class POutputStream extends OutputStream {
 
     @Override
     public void close() throws IOException {
-        if (streams != null) {
+        if (stripes != null) {
             try {
-                for (OutputStream o : streams) {
-                    o.close();
+                for (Stripe s : stripes) {
+                    s.out.close();
                 }
             } finally {
-                streams = null;
+                stripes = null;
             }
         }
     }
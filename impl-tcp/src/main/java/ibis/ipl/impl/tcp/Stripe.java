@@ -0,0 +1,233 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.impl.tcp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import ibis.io.BufferPool;
+import ibis.util.ThreadPool;
+
+/**
+ * One of the sockets of a parallel-stream connection. Besides reading and
+ * writing byte buffers in the calling thread, a stripe can read or write a
+ * single buffer in a thread of its own, so that the stripes of a large block
+ * are transferred concurrently. The thread returns to the thread pool when it
+ * has been idle for a while.
+ */
+final class Stripe implements Runnable {
+
+    /** Time after which an idle stripe thread exits. */
+    private static final long IDLE_TIMEOUT = 10000;
+
+    /** Size of the copies made when there is no channel to use. */
+    private static final int COPY_SIZE = 64 * 1024;
+
+    final Socket socket;
+
+    private final SocketChannel channel;
+
+    final InputStream in;
+
+    final OutputStream out;
+
+    /** The buffer the stripe thread is working on, or <code>null</code>. */
+    private ByteBuffer job = null;
+
+    private boolean writeJob;
+
+    private IOException error = null;
+
+    private boolean running = false;
+
+    private boolean closed = false;
+
+    Stripe(Socket socket) throws IOException {
+        this.socket = socket;
+        channel = socket.getChannel();
+        if (channel != null) {
+            in = new ChannelInputStream(channel);
+            out = new ChannelOutputStream(channel);
+        } else {
+            in = socket.getInputStream();
+            out = socket.getOutputStream();
+        }
+    }
+
+    /**
+     * Reads some bytes into the specified buffer.
+     *
+     * @return the number of bytes read, or -1 at end of stream.
+     */
+    int read(ByteBuffer b) throws IOException {
+        if (channel != null) {
+            int n;
+            do {
+                n = channel.read(b);
+            } while (n == 0 && b.hasRemaining());
+            return n;
+        }
+        if (b.hasArray()) {
+            int n = in.read(b.array(), b.arrayOffset() + b.position(), b.remaining());
+            if (n > 0) {
+                b.position(b.position() + n);
+            }
+            return n;
+        }
+        byte[] tmp = BufferPool.getArray(Math.min(b.remaining(), COPY_SIZE));
+        try {
+            int n = in.read(tmp, 0, Math.min(tmp.length, b.remaining()));
+            if (n > 0) {
+                b.put(tmp, 0, n);
+            }
+            return n;
+        } finally {
+            BufferPool.release(tmp);
+        }
+    }
+
+    void readFully(ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) {
+            if (read(b) < 0) {
+                throw new EOFException("EOF encountered");
+            }
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the specified buffers, with a single
+     * gathering write when there is a channel.
+     */
+    void write(ByteBuffer... buffers) throws IOException {
+        if (channel != null) {
+            ByteBuffer last = buffers[buffers.length - 1];
+            do {
+                channel.write(buffers);
+            } while (last.hasRemaining());
+            return;
+        }
+        for (ByteBuffer b : buffers) {
+            if (b.hasArray()) {
+                out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+                b.position(b.limit());
+                continue;
+            }
+            byte[] tmp = BufferPool.getArray(Math.min(b.remaining(), COPY_SIZE));
+            try {
+                while (b.hasRemaining()) {
+                    int n = Math.min(tmp.length, b.remaining());
+                    b.get(tmp, 0, n);
+                    out.write(tmp, 0, n);
+                }
+            } finally {
+                BufferPool.release(tmp);
+            }
+        }
+    }
+
+    /**
+     * Lets the stripe thread fill or write the specified buffer. Completion
+     * must be awaited with {@link #await()} before the next submit.
+     *
+     * @param b     the buffer.
+     * @param write whether the buffer is to be written or read.
+     */
+    synchronized void submit(ByteBuffer b, boolean write) {
+        job = b;
+        writeJob = write;
+        if (!running) {
+            running = true;
+            ThreadPool.createNew(this, "Stripe " + socket.getLocalPort());
+        } else {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the submitted buffer is done.
+     *
+     * @exception IOException the exception that the stripe thread got.
+     */
+    synchronized void await() throws IOException {
+        while (job != null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // Ignored
+            }
+        }
+        if (error != null) {
+            IOException e = error;
+            error = null;
+            throw e;
+        }
+    }
+
+    @Override
+    public void run() {
+        for (;;) {
+            ByteBuffer b;
+            boolean write;
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + IDLE_TIMEOUT;
+                while (job == null) {
+                    long timeout = deadline - System.currentTimeMillis();
+                    if (closed || timeout <= 0) {
+                        running = false;
+                        return;
+                    }
+                    try {
+                        wait(timeout);
+                    } catch (InterruptedException e) {
+                        // Ignored
+                    }
+                }
+                b = job;
+                write = writeJob;
+            }
+            IOException failure = null;
+            try {
+                if (write) {
+                    write(b);
+                } else {
+                    readFully(b);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (Throwable e) {
+                failure = new IOException("Stripe got exception", e);
+            }
+            synchronized (this) {
+                error = failure;
+                job = null;
+                notifyAll();
+            }
+        }
+    }
+
+    void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        socket.close();
+    }
+}
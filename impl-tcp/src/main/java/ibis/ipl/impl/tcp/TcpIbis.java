@@ -22,6 +22,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
 import java.util.HashMap;
 import java.util.Properties;
 
@@ -52,6 +53,58 @@ import ibis.util.ThreadPool;
 
 public final class TcpIbis extends ibis.ipl.impl.Ibis implements Runnable, TcpProtocol {
 
+    static final String prefix = "ibis.ipl.impl.tcp.";
+
+    /** Boolean: if true (default), sockets are created through socket channels. */
+    static final String s_channels = prefix + "channels";
+
+    /**
+     * Integer: the number of selector threads that watch idle incoming
+     * connections. If 0 (default), each connection has a thread of its own.
+     */
+    static final String s_selectors = prefix + "selectors";
+
+    /**
+     * Integer: the number of worker threads per selector that read from
+     * connections on which data arrived (default 2). When all workers are
+     * busy, a pool thread is used.
+     */
+    static final String s_selector_workers = prefix + "selectors.workers";
+
+    /**
+     * Integer: the number of parallel streams of a connection (default 1). A
+     * send port may override this with its "nParallelStreams" management
+     * property.
+     */
+    static final String s_parallel_streams = prefix + "parallel.streams";
+
+    /**
+     * Integer: writes of at least this many bytes (default 64K) are striped over
+     * the parallel streams. Smaller writes only use the first stream.
+     */
+    static final String s_parallel_threshold = prefix + "parallel.threshold";
+
+    /**
+     * Boolean: if true (default), the number of parallel streams that is used
+     * adapts to the measured bandwidth.
+     */
+    static final String s_parallel_adaptive = prefix + "parallel.adaptive";
+
+    /**
+     * Integer: the maximum number of idle connections that are kept for reuse by
+     * later connects (default 16). If 0, connections are not reused.
+     */
+    static final String s_cache_size = prefix + "cache.size";
+
+    /**
+     * Integer: the time in milliseconds after which an idle connection is
+     * closed (default 30000).
+     */
+    static final String s_cache_timeout = prefix + "cache.timeout";
+
+    static final String[] props = { s_channels, s_selectors, s_selector_workers, s_parallel_streams, s_parallel_threshold, s_parallel_adaptive, s_cache_size,
+            s_cache_timeout };
+
     static final Logger logger = LoggerFactory.getLogger(TcpIbis.class);
 
     private IbisSocketFactory factory;
@@ -64,14 +117,35 @@ public final class TcpIbis extends ibis.ipl.impl.Ibis implements Runnable, TcpPr
 
     private HashMap<ibis.ipl.IbisIdentifier, IbisSocketAddress> addresses = new HashMap<>();
 
+    private ConnectionSelector[] selectors = null;
+
+    private int nextSelector = 0;
+
+    private final ConnectionCache cache;
+
     public TcpIbis(RegistryEventHandler registryEventHandler, IbisCapabilities capabilities, Credentials credentials, byte[] applicationTag,
             PortType[] types, Properties userProperties, IbisStarter starter) throws IbisCreationFailedException {
         super(registryEventHandler, capabilities, credentials, applicationTag, types, userProperties, starter);
 
-        this.properties.checkProperties("ibis.ipl.impl.tcp.", new String[] {}, null, true);
+        this.properties.checkProperties(prefix, props, null, true);
 
         factory.setIdent(ident);
 
+        cache = new ConnectionCache(properties.getIntProperty(s_cache_size, 16), properties.getLongProperty(s_cache_timeout, 30000));
+
+        int nSelectors = properties.getIntProperty(s_selectors, 0);
+        if (nSelectors > 0 && properties.getBooleanProperty(s_channels, true)) {
+            int nWorkers = properties.getIntProperty(s_selector_workers, 2);
+            selectors = new ConnectionSelector[nSelectors];
+            try {
+                for (int i = 0; i < nSelectors; i++) {
+                    selectors[i] = new ConnectionSelector("TcpIbis Connection Selector " + i, nWorkers);
+                }
+            } catch (IOException e) {
+                throw new IbisCreationFailedException("Could not create selector", e);
+            }
+        }
+
         // Create a new accept thread
         ThreadPool.createNew(this, "TcpIbis Accept Thread");
     }
@@ -125,16 +199,28 @@ public final class TcpIbis extends ibis.ipl.impl.Ibis implements Runnable, TcpPr
 
         PortType sendPortType = sp.getPortType();
 
+        IbisSocket cached = null;
+        if (cache.enabled() && factory.parallelStreams(sp.managementProperties()) == 1) {
+            cached = cache.get(id, sendPortType);
+        }
+
         do {
             DataOutputStream out = null;
             IbisSocket s = null;
             int result = -1;
-
-            sp.printManagementProperties(System.out);
+            boolean reused = cached != null;
 
             try {
-                s = factory.createClientSocket(idAddr, timeout, fillTimeout, sp.managementProperties());
-                s.setTcpNoDelay(true);
+                if (reused) {
+                    s = cached;
+                    cached = null;
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("--> Reusing connection " + s);
+                    }
+                } else {
+                    s = factory.createClientSocket(idAddr, timeout, fillTimeout, sp.managementProperties());
+                    s.setTcpNoDelay(true);
+                }
                 out = new DataOutputStream(new BufferedArrayOutputStream(s.getOutputStream()));
 
                 out.writeUTF(name);
@@ -144,6 +230,12 @@ public final class TcpIbis extends ibis.ipl.impl.Ibis implements Runnable, TcpPr
 
                 result = s.getInputStream().read();
 
+                if (reused && result == -1) {
+                    // The other side closed the idle connection in the
+                    // meantime.
+                    continue;
+                }
+
                 switch (result) {
                 case ReceivePort.ACCEPTED:
                     return s;
@@ -182,6 +274,14 @@ public final class TcpIbis extends ibis.ipl.impl.Ibis implements Runnable, TcpPr
                 }
             } catch (SocketTimeoutException e) {
                 throw new ConnectionTimedOutException("Could not connect", rip);
+            } catch (IOException e) {
+                if (!reused || result != -1) {
+                    throw e;
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("--> Could not reuse connection " + s, e);
+                }
+                continue;
             } finally {
                 if (result != ReceivePort.ACCEPTED) {
                     try {
@@ -206,8 +306,93 @@ public final class TcpIbis extends ibis.ipl.impl.Ibis implements Runnable, TcpPr
         } while (true);
     }
 
+    /**
+     * Returns a selector for watching an idle incoming connection, or
+     * <code>null</code> if connections should have a thread of their own.
+     *
+     * @return the selector, or <code>null</code>.
+     */
+    synchronized ConnectionSelector getConnectionSelector() {
+        if (selectors == null) {
+            return null;
+        }
+        ConnectionSelector result = selectors[nextSelector];
+        nextSelector = (nextSelector + 1) % selectors.length;
+        return result;
+    }
+
+    /**
+     * Keeps the connection of a send port that disconnected from a receive port
+     * at the specified Ibis, for reuse by a later connect.
+     */
+    void cacheConnection(IbisIdentifier id, PortType type, IbisSocket s) {
+        cache.put(id, type, s);
+    }
+
+    boolean cachingConnections() {
+        return cache.enabled();
+    }
+
+    /**
+     * Called when a send port disconnected from a receive port and left the
+     * connection open for reuse. Waits for a new connection request on it.
+     *
+     * @param s  the connection.
+     * @param in the input stream of the connection.
+     */
+    void reuseConnection(IbisSocket s, BufferedArrayInputStream in) {
+        ConnectionSelector selector = s.sockets.length == 1 && s.sockets[0].getChannel() != null ? getConnectionSelector() : null;
+        Runnable handler = () -> {
+            try {
+                handleConnectionRequest(s, in);
+            } catch (Throwable e) {
+                // Most likely, the other side closed the idle connection.
+                if (logger.isDebugEnabled()) {
+                    logger.debug("--> Reused connection " + s + " closed", e);
+                }
+                try {
+                    s.close();
+                } catch (Throwable e2) {
+                    // ignored
+                }
+            }
+        };
+        if (selector != null) {
+            ConnectionSelector.Parkable p = new ConnectionSelector.Parkable() {
+                @Override
+                public SocketChannel channel() {
+                    return s.sockets[0].getChannel();
+                }
+
+                @Override
+                public void selected() {
+                    handler.run();
+                }
+            };
+            try {
+                if (in.available() == 0) {
+                    selector.park(p);
+                    return;
+                }
+            } catch (IOException e) {
+                // Let the handler find out.
+            }
+            selector.dispatch(p);
+            return;
+        }
+        ThreadPool.createNew(handler, "Connection Handler");
+    }
+
     @Override
     protected void quit() {
+        cache.end();
+        if (selectors != null) {
+            for (ConnectionSelector selector : selectors) {
+                if (selector != null) {
+                    selector.end();
+                }
+            }
+        }
         try {
             quiting = true;
             // Connect so that the TcpIbis thread wakes up.
@@ -218,13 +403,15 @@ public final class TcpIbis extends ibis.ipl.impl.Ibis implements Runnable, TcpPr
     }
 
     private void handleConnectionRequest(IbisSocket s) throws IOException {
+        handleConnectionRequest(s, new BufferedArrayInputStream(s.getInputStream()));
+    }
+
+    private void handleConnectionRequest(IbisSocket s, BufferedArrayInputStream bais) throws IOException {
 
         if (logger.isDebugEnabled()) {
             logger.debug("--> TcpIbis got connection request from " + s);
         }
 
-        BufferedArrayInputStream bais = new BufferedArrayInputStream(s.getInputStream());
-
         DataInputStream in = new DataInputStream(bais);
         OutputStream out = s.getOutputStream();
 
@@ -18,6 +18,7 @@
 package ibis.ipl.impl.tcp;
 
 import java.io.IOException;
+import java.nio.channels.SocketChannel;
 import java.util.Properties;
 
 import ibis.io.BufferedArrayInputStream;
@@ -35,17 +36,71 @@ import ibis.util.ThreadPool;
 
 class TcpReceivePort extends ReceivePort implements TcpProtocol {
 
-    class ConnectionHandler extends ReceivePortConnectionInfo implements Runnable, TcpProtocol {
+    class ConnectionHandler extends ReceivePortConnectionInfo implements Runnable, ConnectionSelector.Parkable, TcpProtocol {
 
         private final IbisSocket s;
 
-        ConnectionHandler(SendPortIdentifier origin, IbisSocket s, ReceivePort port, BufferedArrayInputStream in) throws IOException {
+        /**
+         * The selector that watches this connection while it is idle, or
+         * <code>null</code> if this connection has a thread of its own.
+         */
+        private final ConnectionSelector selector;
+
+        private final BufferedArrayInputStream bais;
+
+        /** Set when the connection has been handed back to the Ibis for reuse. */
+        private boolean handedOff = false;
+
+        ConnectionHandler(SendPortIdentifier origin, IbisSocket s, ReceivePort port, BufferedArrayInputStream in, ConnectionSelector selector)
+                throws IOException {
             super(origin, port, in);
             this.s = s;
+            this.selector = selector;
+            this.bais = in;
+        }
+
+        @Override
+        public SocketChannel channel() {
+            return s.sockets[0].getChannel();
+        }
+
+        @Override
+        public void selected() {
+            try {
+                reader(true);
+            } catch (Throwable e) {
+                logger.info("ConnectionHandler.selected, connected " + "to " + origin + ", caught exception", e);
+                close(e);
+            }
+        }
+
+        /**
+         * Continues reading from this connection: immediately, in a worker of
+         * the selector, when input is available, otherwise when the selector
+         * finds that input is available.
+         */
+        void resume() throws IOException {
+            if (hasInput()) {
+                selector.dispatch(this);
+            } else {
+                selector.park(this);
+            }
+        }
+
+        /**
+         * Returns whether input can be read from this connection without
+         * blocking, including input that is buffered by the streams. Only
+         * called between messages.
+         */
+        private boolean hasInput() throws IOException {
+            return available() > 0;
         }
 
         @Override
         public void close(Throwable e) {
+            if (handedOff) {
+                return;
+            }
             super.close(e);
             try {
                 s.close();
@@ -54,6 +109,41 @@ class TcpReceivePort extends ReceivePort implements TcpProtocol {
             }
         }
 
+        /**
+         * Returns whether the socket can be reused for a new connection once the
+         * sendport is done with it. Sun serialization closes the underlying
+         * stream, so then it cannot.
+         */
+        private boolean reusable() {
+            return in != null && !"sun".equals(in.serializationImplName());
+        }
+
+        /**
+         * Ends this connection without closing the socket, which is handed back
+         * to the Ibis to wait for a new connection request. The sendport may
+         * keep the socket for a later connect.
+         *
+         * @param ack whether the sendport waits for an acknowledgement.
+         */
+        private void handOff(boolean ack) throws IOException {
+            try {
+                in.close();
+            } catch (Throwable z) {
+                // ignore
+            }
+            closed = true;
+            in = null;
+            if (logger.isDebugEnabled()) {
+                logger.debug(port.name + ": connection with " + origin + " handed off for reuse");
+            }
+            port.lostConnection(origin, null);
+            if (ack) {
+                s.getOutputStream().write(0);
+            }
+            handedOff = true;
+            ((TcpIbis) ibis).reuseConnection(s, bais);
+        }
+
         @Override
         public void run() {
             logger.info("Started connection handler thread");
@@ -114,10 +204,42 @@ class TcpReceivePort extends ReceivePort implements TcpProtocol {
         @Override
         protected void upcallCalledFinish() {
             super.upcallCalledFinish();
+            if (selector != null) {
+                try {
+                    resume();
+                    return;
+                } catch (Throwable e) {
+                    // Fall back to a thread of its own.
+                }
+            }
             ThreadPool.createNew(this, "ConnectionHandler");
         }
 
+        /**
+         * Called before an application thread reads from this connection itself.
+         * Spins for a while until there is input, so that a message that is about
+         * to arrive is read without the thread blocking in the socket read.
+         *
+         * @param block whether the thread may block in the read that follows.
+         * @return whether to go ahead with the read.
+         */
+        private boolean awaitInput(boolean block) throws IOException {
+            if (block && spinTime == 0) {
+                return true;
+            }
+            return spin(this::hasInput) || block;
+        }
+
         void reader(boolean fromHandlerThread) throws IOException {
+            reader(fromHandlerThread, true);
+        }
+
+        /**
+         * Reads from this connection until a message arrives, or, for a thread
+         * that reads from the connection itself and may not block, until there
+         * is no input left.
+         */
+        void reader(boolean fromHandlerThread, boolean block) throws IOException {
             byte opcode = -1;
 
             // Moved here to prevent deadlocks and timeouts when using sun
@@ -126,7 +248,19 @@ class TcpReceivePort extends ReceivePort implements TcpProtocol {
                 newStream();
             }
 
+            // When a selector watches this connection, the thread goes back to
+            // the pool once all available input has been handled.
+            boolean park = false;
+
             while (in != null) {
+                if (park && !hasInput()) {
+                    selector.park(this);
+                    return;
+                }
+                park = selector != null && fromHandlerThread;
+                if (!fromHandlerThread && !awaitInput(block)) {
+                    return;
+                }
                 if (logger.isDebugEnabled()) {
                     logger.debug(name + ": handler for " + origin + " woke up");
                 }
@@ -158,7 +292,11 @@ class TcpReceivePort extends ReceivePort implements TcpProtocol {
                     if (logger.isDebugEnabled()) {
                         logger.debug(name + ": Got a CLOSE_ALL_CONNECTIONS from " + origin);
                     }
-                    close(null);
+                    if (reusable()) {
+                        handOff(false);
+                    } else {
+                        close(null);
+                    }
                     if (lazy_connectionhandler_thread && !fromHandlerThread) {
                         // Wake up the connection handler thread so that it can die.
                         synchronized (this) {
@@ -195,31 +333,35 @@ class TcpReceivePort extends ReceivePort implements TcpProtocol {
                         //
                         // Fixed by lazy connection handler thread.
 
-                        try {
-                            in.close();
-                        } catch (Throwable z) {
-                            // ignore
-                        }
-                        closed = true;
-                        in = null;
-                        if (logger.isDebugEnabled()) {
-                            logger.debug(port.name + ": connection with " + origin + " closing");
-                        }
+                        if (reusable()) {
+                            handOff(true);
+                        } else {
+                            try {
+                                in.close();
+                            } catch (Throwable z) {
+                                // ignore
+                            }
+                            closed = true;
+                            in = null;
+                            if (logger.isDebugEnabled()) {
+                                logger.debug(port.name + ": connection with " + origin + " closing");
+                            }
 
-                        port.lostConnection(origin, null);
+                            port.lostConnection(origin, null);
 
-                        s.getOutputStream().write(0);
+                            s.getOutputStream().write(0);
 
-                        try {
-                            dataIn.close();
-                        } catch (Throwable e) {
-                            // ignore
-                        }
+                            try {
+                                dataIn.close();
+                            } catch (Throwable e) {
+                                // ignore
+                            }
 
-                        try {
-                            s.close();
-                        } catch (Throwable e) {
-                            // ignore
+                            try {
+                                s.close();
+                            } catch (Throwable e) {
+                                // ignore
+                            }
                         }
                         if (lazy_connectionhandler_thread && !fromHandlerThread) {
                             // Wake up the connection handler thread so that it can die.
@@ -244,9 +386,10 @@ class TcpReceivePort extends ReceivePort implements TcpProtocol {
             throws IOException {
         super(ibis, type, name, upcall, connUpcall, props);
 
+        // When spinning, polls also read from the connection themselves.
         lazy_connectionhandler_thread = upcall == null && connUpcall == null
                 && (type.hasCapability(PortType.CONNECTION_ONE_TO_ONE) || type.hasCapability(PortType.CONNECTION_ONE_TO_MANY))
-                && !type.hasCapability(PortType.RECEIVE_POLL) && !type.hasCapability(PortType.RECEIVE_TIMEOUT);
+                && (!type.hasCapability(PortType.RECEIVE_POLL) || spinTime > 0) && !type.hasCapability(PortType.RECEIVE_TIMEOUT);
     }
 
     private ReadMessage getPortMessage() {
@@ -339,11 +482,57 @@ class TcpReceivePort extends ReceivePort implements TcpProtocol {
         }
     }
 
+    @Override
+    protected ReadMessage doPoll() throws IOException {
+        if (!lazy_connectionhandler_thread) {
+            return super.doPoll();
+        }
+        ConnectionHandler conn;
+        synchronized (this) {
+            // First check if the lazy thread delivered a message.
+            if (message != null && !delivered) {
+                delivered = true;
+                return message;
+            }
+            if (reader_busy || message != null || connections.size() == 0 || closed) {
+                return null;
+            }
+            conn = (ConnectionHandler) connections()[0];
+            reader_busy = true;
+        }
+        try {
+            conn.reader(false, false);
+        } finally {
+            synchronized (this) {
+                reader_busy = false;
+                notifyAll();
+            }
+        }
+        synchronized (this) {
+            if (message == null || delivered) {
+                return null;
+            }
+            delivered = true;
+            return message;
+        }
+    }
+
     void connect(SendPortIdentifier origin, IbisSocket s, BufferedArrayInputStream in) throws IOException {
         ConnectionHandler conn;
+        ConnectionSelector selector = null;
+
+        if (!lazy_connectionhandler_thread && s.sockets.length == 1 && s.sockets[0].getChannel() != null) {
+            selector = ((TcpIbis) ibis).getConnectionSelector();
+        }
 
         synchronized (this) {
-            conn = new ConnectionHandler(origin, s, this, in);
+            conn = new ConnectionHandler(origin, s, this, in, selector);
+        }
+
+        if (selector != null) {
+            // No thread needed until data arrives.
+            conn.resume();
+            return;
         }
 
         // ThreadPool.createNew(conn, "ConnectionHandler");
@@ -20,6 +20,7 @@ package ibis.ipl.impl.tcp;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 import ibis.io.BufferedArrayOutputStream;
 import ibis.io.Conversion;
@@ -28,6 +29,7 @@ import ibis.io.SplitterException;
 import ibis.ipl.PortType;
 import ibis.ipl.SendPortDisconnectUpcall;
 import ibis.ipl.impl.Ibis;
+import ibis.ipl.impl.IbisIdentifier;
 import ibis.ipl.impl.ReceivePortIdentifier;
 import ibis.ipl.impl.SendPort;
 import ibis.ipl.impl.SendPortConnectionInfo;
@@ -41,6 +43,9 @@ final class TcpSendPort extends SendPort implements TcpProtocol {
 
         OutputStream out;
 
+        /** Set when the connection is to be kept for a later connect. */
+        boolean reusable = false;
+
         Conn(IbisSocket s, TcpSendPort port, ReceivePortIdentifier target) throws IOException {
             super(port, target);
             this.s = s;
@@ -48,8 +53,27 @@ final class TcpSendPort extends SendPort implements TcpProtocol {
             splitter.add(out);
         }
 
+        /**
+         * Takes the connection out of the splitter, so that it survives closing
+         * the port, and lets {@link #closeConnection()} hand it to the connection
+         * cache. Only to be called once the receiver has been told that the
+         * connection ends.
+         */
+        void keep() {
+            try {
+                splitter.remove(out);
+                reusable = true;
+            } catch (IOException e) {
+                // Then the connection is closed as usual.
+            }
+        }
+
         @Override
         public void closeConnection() {
+            if (reusable) {
+                ((TcpIbis) ibis).cacheConnection((IbisIdentifier) target.ibisIdentifier(), type, s);
+                return;
+            }
             try {
                 s.close();
             } catch (Throwable e) {
@@ -68,13 +92,20 @@ final class TcpSendPort extends SendPort implements TcpProtocol {
 
     final BufferedArrayOutputStream bufferedStream;
 
+    /** Set when messages may go to more than one receiver. */
+    private final boolean multicast;
+
+    /** Set when messages carry a sequence number. */
+    private final boolean numbered;
+
     TcpSendPort(Ibis ibis, PortType type, String name, SendPortDisconnectUpcall cU, Properties props) throws IOException {
         super(ibis, type, name, cU, props);
-        addValidKey("nParallelStreams");
+        addValidKey(IbisSocketFactory.PARALLEL_STREAMS);
 
+        multicast = type.hasCapability(PortType.CONNECTION_ONE_TO_MANY) || type.hasCapability(PortType.CONNECTION_MANY_TO_MANY);
+        numbered = type.hasCapability(PortType.COMMUNICATION_NUMBERED);
         splitter = new OutputStreamSplitter(
-                !type.hasCapability(PortType.CONNECTION_ONE_TO_ONE) && !type.hasCapability(PortType.CONNECTION_MANY_TO_ONE),
-                type.hasCapability(PortType.CONNECTION_ONE_TO_MANY) || type.hasCapability(PortType.CONNECTION_MANY_TO_MANY));
+                !type.hasCapability(PortType.CONNECTION_ONE_TO_ONE) && !type.hasCapability(PortType.CONNECTION_MANY_TO_ONE), multicast);
 
         bufferedStream = new BufferedArrayOutputStream(splitter);
         initStream(bufferedStream);
@@ -126,20 +157,31 @@ final class TcpSendPort extends SendPort implements TcpProtocol {
         // Unfortunately, it also causes a deadlock in 1-to-1 explict receive
         // applications -- J
         Conn c = (Conn) conn;
-        c.s.getInputStream().read();
+        if (c.s.getInputStream().read() == 0 && cacheable(c)) {
+            c.keep();
+        }
+    }
+
+    /**
+     * Returns whether the specified connection may be reused after the receiver
+     * has been told that it ends. Sun serialization closes the underlying
+     * stream, so then connections are never reused.
+     */
+    private boolean cacheable(Conn c) {
+        return ((TcpIbis) ibis).cachingConnections() && c.s.sockets.length == 1 && out != null && !"sun".equals(out.serializationImplName());
     }
 
     @Override
     protected void announceNewMessage() throws IOException {
         out.writeByte(NEW_MESSAGE);
-        if (type.hasCapability(PortType.COMMUNICATION_NUMBERED)) {
+        if (numbered) {
             out.writeLong(ibis.registry().getSequenceNumber(name));
         }
     }
 
     @Override
     protected void finishMessage(WriteMessage w, long cnt) throws IOException {
-        if (type.hasCapability(PortType.CONNECTION_ONE_TO_MANY) || type.hasCapability(PortType.CONNECTION_MANY_TO_MANY)) {
+        if (multicast) {
             // exception may have been saved by the splitter. Get them
             // now.
             SplitterException e = splitter.getExceptions();
@@ -150,6 +192,47 @@ final class TcpSendPort extends SendPort implements TcpProtocol {
         super.finishMessage(w, cnt);
     }
 
+    @Override
+    protected long startSend() throws IOException {
+        // The flush only queues the data for the writer threads of the
+        // splitter, which send it in the background.
+        long ticket;
+        splitter.beginSend();
+        try {
+            out.flush();
+        } finally {
+            ticket = splitter.endSend();
+        }
+        return ticket;
+    }
+
+    @Override
+    protected void syncSend(long ticket) throws IOException {
+        splitter.sync(ticket);
+    }
+
+    @Override
+    protected CompletableFuture<Void> whenSent(long ticket) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        splitter.whenDone(ticket).whenComplete((v, e) -> {
+            if (e == null) {
+                result.complete(null);
+                return;
+            }
+            // Find out which connections were lost, as a synchronous send
+            // does. The message is finished already, so none is passed. The
+            // exceptions may have been picked up by a flush already.
+            SplitterException x = splitter.getExceptions();
+            if (x == null) {
+                result.completeExceptionally(e);
+                return;
+            }
+            handleSendException(null, x);
+            result.completeExceptionally(x);
+        });
+        return result;
+    }
+
     @Override
     protected void handleSendException(WriteMessage w, IOException x) {
         ReceivePortIdentifier[] ports = null;
@@ -185,6 +268,16 @@ final class TcpSendPort extends SendPort implements TcpProtocol {
 
         try {
             out.writeByte(CLOSE_ALL_CONNECTIONS);
+            out.flush();
+            // The receivers are done with the connections now, so they can be
+            // kept for reuse. Anything written by closing the streams does not
+            // reach them.
+            for (SendPortConnectionInfo info : connections()) {
+                Conn c = (Conn) info;
+                if (cacheable(c)) {
+                    c.keep();
+                }
+            }
             out.close();
             bufferedStream.close();
         } catch (Throwable e) {
@@ -80,7 +80,7 @@ final class AlternativeTypeInfo {
         @Override
         void writeObject(IbisSerializationOutputStream out, Object ref, AlternativeTypeInfo t, int hashCode, boolean unshared) throws IOException {
             super.writeHeader(out, ref, t, hashCode, unshared);
-            out.writeUTF((String) ref);
+            out.writeStringData((String) ref);
         }
     }
 
@@ -142,7 +142,7 @@ final class AlternativeTypeInfo {
     private static class StringReader extends IbisReader {
         @Override
         Object readObject(IbisSerializationInputStream in, AlternativeTypeInfo t, int typeHandle) throws IOException, ClassNotFoundException {
-            String o = in.readUTF();
+            String o = in.readStringData();
             in.addObjectToCycleCheck(o);
             return o;
         }
@@ -235,6 +235,12 @@ final class AlternativeTypeInfo {
     /** The sorted list of serializable fields. */
     Field[] serializable_fields;
 
+    /**
+     * Method handle based access to the serializable fields, or
+     * <code>null</code> if the fields must be accessed through reflection.
+     */
+    FieldAccessor accessor;
+
     final IbisWriter writer;
 
     final IbisReader reader;
@@ -759,6 +765,10 @@ final class AlternativeTypeInfo {
             } else {
                 serializable_fields = null;
             }
+
+            if (gen == null && IOProperties.FIELD_ACCESSORS) {
+                accessor = FieldAccessor.create(this);
+            }
         } catch (Exception e) {
             throw new SerializationError("Cannot initialize serialization " + "info for " + clazz.getName(), e);
         }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.io;
+
+import java.io.IOException;
+
+/**
+ * Compresses and decompresses independent blocks of bytes, for
+ * {@link CompressionOutputStream} and {@link CompressionInputStream}. A codec
+ * instance keeps state between blocks and must not be shared between streams.
+ */
+abstract class BlockCodec {
+
+    /** Block kind of blocks that are sent as is. */
+    static final byte RAW = 0;
+
+    /** Block kind of blocks compressed by {@link Lz4BlockCodec}. */
+    static final byte LZ4 = 1;
+
+    /** Block kind of blocks compressed by {@link DeflateBlockCodec}. */
+    static final byte DEFLATE = 2;
+
+    /**
+     * Returns a codec, given its name.
+     *
+     * @param name "lz4" or "deflate".
+     * @return the codec.
+     * @exception IllegalArgumentException when there is no such codec.
+     */
+    static BlockCodec create(String name) {
+        if ("lz4".equals(name)) {
+            return new Lz4BlockCodec();
+        }
+        if ("deflate".equals(name)) {
+            return new DeflateBlockCodec();
+        }
+        throw new IllegalArgumentException("Unknown compression codec: " + name);
+    }
+
+    /**
+     * Returns a codec, given the block kind it writes.
+     *
+     * @param kind the block kind.
+     * @return the codec, or <code>null</code> when there is no such codec.
+     */
+    static BlockCodec create(byte kind) {
+        switch (kind) {
+        case LZ4:
+            return new Lz4BlockCodec();
+        case DEFLATE:
+            return new DeflateBlockCodec();
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the block kind of the blocks this codec writes.
+     *
+     * @return the block kind.
+     */
+    abstract byte kind();
+
+    /**
+     * Returns the maximum size of a compressed block.
+     *
+     * @param len the size of the uncompressed block.
+     * @return the maximum size.
+     */
+    abstract int maxCompressedLength(int len);
+
+    /**
+     * Compresses a block.
+     *
+     * @param src  the data.
+     * @param off  offset of the data.
+     * @param len  size of the data.
+     * @param dst  the destination, with room for
+     *             {@link #maxCompressedLength(int)} bytes.
+     * @param doff where to store the compressed data.
+     * @return the size of the compressed data.
+     */
+    abstract int compress(byte[] src, int off, int len, byte[] dst, int doff);
+
+    /**
+     * Decompresses a block.
+     *
+     * @param src  the compressed data.
+     * @param off  offset of the compressed data.
+     * @param len  size of the compressed data.
+     * @param dst  the destination.
+     * @param doff where to store the data.
+     * @param size the size of the uncompressed block.
+     * @exception IOException when the data is corrupt.
+     */
+    abstract void decompress(byte[] src, int off, int len, byte[] dst, int doff, int size) throws IOException;
+
+    /**
+     * Releases the resources of this codec.
+     */
+    void end() {
+        // Default implementation does nothing.
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pool of byte arrays and direct byte buffers, shared by all streams. Streams
+ * that are created and closed often (one per connection) take their buffers
+ * from here, and give them back when closed, so that short-lived connections do
+ * not cause garbage collector churn.
+ *
+ * Byte arrays are pooled in size classes of powers of two, so an array obtained
+ * from {@link #getArray(int)} may be larger than requested. Direct buffers are
+ * pooled per exact capacity, because NIO code relies on <code>clear()</code>
+ * restoring the requested capacity. Each thread has a small private cache in
+ * front of the shared pool.
+ *
+ * A buffer must be released exactly once, and must not be used after it was
+ * released. The pool can be disabled with the <code>ibis.io.buffer.pool</code>
+ * property, in which case buffers are just allocated and released buffers are
+ * left to the garbage collector.
+ */
+public final class BufferPool {
+
+    /** Smallest pooled array size, as a power of two (1 KB). */
+    private static final int MIN_SHIFT = 10;
+
+    /** Largest pooled array size, as a power of two (1 MB). */
+    private static final int MAX_SHIFT = 20;
+
+    private static final int NUM_CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+
+    /** Number of free buffers per size kept in each thread. */
+    private static final int THREAD_CACHE_SIZE = 4;
+
+    private static final boolean ENABLED = IOProperties.BUFFER_POOL;
+
+    private static final int POOL_SIZE = IOProperties.BUFFER_POOL_SIZE;
+
+    /** A bounded stack of free buffers. */
+    private static final class Stack<T> {
+        private final Object[] free;
+
+        private int count = 0;
+
+        Stack(int size) {
+            free = new Object[size];
+        }
+
+        @SuppressWarnings("unchecked")
+        T pop() {
+            if (count == 0) {
+                return null;
+            }
+            T result = (T) free[--count];
+            free[count] = null;
+            return result;
+        }
+
+        boolean push(T buffer) {
+            if (count == free.length) {
+                return false;
+            }
+            free[count++] = buffer;
+            return true;
+        }
+    }
+
+    /** A stack that may be used by several threads. */
+    private static final class SharedStack<T> {
+        private final Stack<T> stack = new Stack<>(POOL_SIZE);
+
+        synchronized T pop() {
+            return stack.pop();
+        }
+
+        synchronized boolean push(T buffer) {
+            return stack.push(buffer);
+        }
+    }
+
+    /** The free buffers of a single thread. */
+    private static final class ThreadCache {
+        @SuppressWarnings("unchecked")
+        final Stack<byte[]>[] arrays = (Stack<byte[]>[]) new Stack<?>[NUM_CLASSES];
+
+        final HashMap<Integer, Stack<ByteBuffer>> direct = new HashMap<>();
+
+        ThreadCache() {
+            for (int i = 0; i < NUM_CLASSES; i++) {
+                arrays[i] = new Stack<>(THREAD_CACHE_SIZE);
+            }
+        }
+
+        Stack<ByteBuffer> direct(int capacity) {
+            Stack<ByteBuffer> s = direct.get(capacity);
+            if (s == null) {
+                s = new Stack<>(THREAD_CACHE_SIZE);
+                direct.put(capacity, s);
+            }
+            return s;
+        }
+    }
+
+    private static final SharedStack<byte[]>[] arrays;
+
+    private static final ConcurrentHashMap<Integer, SharedStack<ByteBuffer>> direct = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<ThreadCache> caches = ThreadLocal.withInitial(ThreadCache::new);
+
+    static {
+        @SuppressWarnings("unchecked")
+        SharedStack<byte[]>[] a = (SharedStack<byte[]>[]) new SharedStack<?>[NUM_CLASSES];
+        for (int i = 0; i < NUM_CLASSES; i++) {
+            a[i] = new SharedStack<>();
+        }
+        arrays = a;
+    }
+
+    private BufferPool() {
+        // prevent construction.
+    }
+
+    /**
+     * Returns the size class of the specified size, or -1 if arrays of this size
+     * are not pooled.
+     */
+    private static int sizeClass(int size) {
+        if (size > (1 << MAX_SHIFT)) {
+            return -1;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift, MIN_SHIFT) - MIN_SHIFT;
+    }
+
+    /**
+     * Obtains a byte array of at least the specified size.
+     *
+     * @param size the minimum size.
+     * @return the array.
+     */
+    public static byte[] getArray(int size) {
+        int cls = sizeClass(size);
+        if (!ENABLED || cls < 0) {
+            return new byte[size];
+        }
+        byte[] result = caches.get().arrays[cls].pop();
+        if (result == null) {
+            result = arrays[cls].pop();
+            if (result == null) {
+                result = new byte[1 << (cls + MIN_SHIFT)];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gives a byte array back to the pool. Arrays that were not obtained from
+     * {@link #getArray(int)} are accepted as long as their size matches a size
+     * class.
+     *
+     * @param array the array to release, may be <code>null</code>.
+     */
+    public static void release(byte[] array) {
+        if (!ENABLED || array == null) {
+            return;
+        }
+        int cls = sizeClass(array.length);
+        if (cls < 0 || array.length != 1 << (cls + MIN_SHIFT)) {
+            return;
+        }
+        if (!caches.get().arrays[cls].push(array)) {
+            arrays[cls].push(array);
+        }
+    }
+
+    /**
+     * Obtains a cleared direct byte buffer with exactly the specified capacity,
+     * in big-endian byte order.
+     *
+     * @param capacity the capacity.
+     * @return the buffer.
+     */
+    public static ByteBuffer getDirectBuffer(int capacity) {
+        if (!ENABLED) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        ByteBuffer result = caches.get().direct(capacity).pop();
+        if (result == null) {
+            SharedStack<ByteBuffer> s = direct.get(capacity);
+            if (s != null) {
+                result = s.pop();
+            }
+            if (result == null) {
+                return ByteBuffer.allocateDirect(capacity);
+            }
+        }
+        result.clear();
+        result.order(ByteOrder.BIG_ENDIAN);
+        return result;
+    }
+
+    /**
+     * Gives a direct byte buffer back to the pool. Views and duplicates of the
+     * buffer must no longer be used.
+     *
+     * @param buffer the buffer to release, may be <code>null</code>.
+     */
+    public static void release(ByteBuffer buffer) {
+        if (!ENABLED || buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        if (!caches.get().direct(capacity).push(buffer)) {
+            direct.computeIfAbsent(capacity, c -> new SharedStack<>()).push(buffer);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.ReadOnlyBufferException;
 
 import org.slf4j.Logger;
@@ -37,6 +38,9 @@ public final class BufferedArrayInputStream extends DataInputStream {
 
     private static final Logger logger = LoggerFactory.getLogger(BufferedArrayInputStream.class);
 
+    /** Default size of the direct buffers used for reading large arrays. */
+    private static final int SCATTER_SIZE = 256 * 1024;
+
     /** The buffer size. */
     private final int BUF_SIZE;
 
@@ -44,16 +48,42 @@ public final class BufferedArrayInputStream extends DataInputStream {
     private InputStream in;
 
     /** The buffer. */
-    private final byte[] buffer;
+    private byte[] buffer;
 
     private int index, buffered_bytes;
 
+    /**
+     * The thread that last read into the buffer. The buffer only goes back to
+     * the pool when that thread closes the stream; after a close by another
+     * thread, the reader may still be using it.
+     */
+    private volatile Thread reader;
+
+    private volatile boolean closed = false;
+
     /** Number of bytes read so far from the underlying layer. */
     private long bytes = 0;
 
     /** Object used to convert primitive types to bytes. */
     private Conversion conversion;
 
+    /**
+     * The underlying stream, if it can read into byte buffers directly,
+     * otherwise <code>null</code>.
+     */
+    private final ScatteringInput scatter;
+
+    /** Size of the direct buffers used for reading large arrays. */
+    private final int scatterSize;
+
+    /** Byte order of the conversion. */
+    private final ByteOrder order;
+
+    /** Copies part of a direct buffer into an array. */
+    private interface ArrayDrainer {
+        void drain(ByteBuffer data, int off, int len);
+    }
+
     /**
      * Constructor.
      *
@@ -63,8 +93,11 @@ public final class BufferedArrayInputStream extends DataInputStream {
     public BufferedArrayInputStream(InputStream in, int bufSize) {
         this.in = in;
         BUF_SIZE = bufSize;
-        buffer = new byte[BUF_SIZE];
+        buffer = BufferPool.getArray(BUF_SIZE);
         conversion = Conversion.loadConversion(false);
+        order = conversion.bigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        scatter = in instanceof ScatteringInput ? (ScatteringInput) in : null;
+        scatterSize = Math.max(SCATTER_SIZE, (bufSize + 7) & ~7);
     }
 
     /**
@@ -109,6 +142,7 @@ public final class BufferedArrayInputStream extends DataInputStream {
         if (buffered_bytes >= len) {
             return;
         }
+        claimBuffer();
         if (buffered_bytes == 0) {
             index = 0;
         } else if (index + buffered_bytes > BUF_SIZE - len) {
@@ -126,6 +160,67 @@ public final class BufferedArrayInputStream extends DataInputStream {
         }
     }
 
+    /**
+     * Makes the current thread the reader, before it reads into the buffer.
+     * Either a concurrent {@link #close()} sees this thread, and keeps the
+     * buffer out of the pool, or this thread sees the close.
+     */
+    private void claimBuffer() throws IOException {
+        Thread t = Thread.currentThread();
+        if (reader != t) {
+            reader = t;
+        }
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Returns whether an array of the specified size should be read with
+     * {@link #scatterArray(int, int, int, ArrayDrainer)}.
+     */
+    private boolean canScatter(int len, int elementSize) {
+        return scatter != null && (long) len * elementSize - buffered_bytes >= BUF_SIZE;
+    }
+
+    /**
+     * Reads a large array straight into a direct buffer, starting with the bytes
+     * that are already buffered. This avoids copying the array through the byte
+     * array buffer. Only to be called when {@link #canScatter(int, int)} returns
+     * <code>true</code>, so that all buffered bytes belong to the array.
+     *
+     * @param off         offset of the first element.
+     * @param len         number of elements.
+     * @param elementSize size of an element in bytes.
+     * @param drainer     copies elements out of the direct buffer.
+     * @exception IOException in case of trouble.
+     */
+    private void scatterArray(int off, int len, int elementSize, ArrayDrainer drainer) throws IOException {
+        ByteBuffer data = BufferPool.getDirectBuffer(scatterSize).order(order);
+        int capacity = scatterSize / elementSize;
+        int done = 0;
+
+        try {
+            while (done < len) {
+                int n = Math.min(len - done, capacity);
+                data.clear();
+                data.limit(n * elementSize);
+                if (buffered_bytes > 0) {
+                    data.put(buffer, index, buffered_bytes);
+                    buffered_bytes = 0;
+                }
+                index = 0;
+                bytes += data.remaining();
+                scatter.readFully(data);
+                data.flip();
+                drainer.drain(data, off + done, n);
+                done += n;
+            }
+        } finally {
+            BufferPool.release(data);
+        }
+    }
+
     @Override
     public final int available() throws IOException {
         return (buffered_bytes + in.available());
@@ -219,6 +314,11 @@ public final class BufferedArrayInputStream extends DataInputStream {
             logger.debug("readArray(char[" + off + " ... " + (off + len) + "])");
         }
 
+        if (canScatter(len, Constants.SIZEOF_SHORT)) {
+            scatterArray(off, len, Constants.SIZEOF_SHORT, (data, o, n) -> data.asShortBuffer().get(a, o, n));
+            return;
+        }
+
         int useable, converted;
         int to_convert = len * Constants.SIZEOF_SHORT;
 
@@ -265,6 +365,11 @@ public final class BufferedArrayInputStream extends DataInputStream {
             logger.debug("readArray(char[" + off + " ... " + (off + len) + "])");
         }
 
+        if (canScatter(len, Constants.SIZEOF_CHAR)) {
+            scatterArray(off, len, Constants.SIZEOF_CHAR, (data, o, n) -> data.asCharBuffer().get(a, o, n));
+            return;
+        }
+
         int useable, converted;
         int to_convert = len * Constants.SIZEOF_CHAR;
 
@@ -311,6 +416,11 @@ public final class BufferedArrayInputStream extends DataInputStream {
             logger.debug("readArray(int[" + off + " ... " + (off + len) + "])");
         }
 
+        if (canScatter(len, Constants.SIZEOF_INT)) {
+            scatterArray(off, len, Constants.SIZEOF_INT, (data, o, n) -> data.asIntBuffer().get(a, o, n));
+            return;
+        }
+
         int useable, converted;
         int to_convert = len * Constants.SIZEOF_INT;
 
@@ -359,6 +469,11 @@ public final class BufferedArrayInputStream extends DataInputStream {
             logger.debug("readArray(long[" + off + " ... " + (off + len) + "])");
         }
 
+        if (canScatter(len, Constants.SIZEOF_LONG)) {
+            scatterArray(off, len, Constants.SIZEOF_LONG, (data, o, n) -> data.asLongBuffer().get(a, o, n));
+            return;
+        }
+
         int useable, converted;
         int to_convert = len * Constants.SIZEOF_LONG;
 
@@ -405,6 +520,11 @@ public final class BufferedArrayInputStream extends DataInputStream {
             logger.debug("readArray(float[" + off + " ... " + (off + len) + "])");
         }
 
+        if (canScatter(len, Constants.SIZEOF_FLOAT)) {
+            scatterArray(off, len, Constants.SIZEOF_FLOAT, (data, o, n) -> data.asFloatBuffer().get(a, o, n));
+            return;
+        }
+
         int useable, converted;
         int to_convert = len * Constants.SIZEOF_FLOAT;
 
@@ -451,6 +571,11 @@ public final class BufferedArrayInputStream extends DataInputStream {
             logger.debug("readArray(double[" + off + " ... " + (off + len) + "])");
         }
 
+        if (canScatter(len, Constants.SIZEOF_DOUBLE)) {
+            scatterArray(off, len, Constants.SIZEOF_DOUBLE, (data, o, n) -> data.asDoubleBuffer().get(a, o, n));
+            return;
+        }
+
         int useable, converted;
         int to_convert = len * Constants.SIZEOF_DOUBLE;
 
@@ -606,7 +731,19 @@ public final class BufferedArrayInputStream extends DataInputStream {
 
     @Override
     public void close() throws IOException {
-        in.close();
+        closed = true;
+        try {
+            in.close();
+        } finally {
+            // The buffer goes back to the pool, so this stream must not be
+            // used anymore. A buffer that another thread may still be reading
+            // into is left to the garbage collector.
+            Thread t = reader;
+            if (buffer != null && (t == null || t == Thread.currentThread())) {
+                BufferPool.release(buffer);
+                buffer = null;
+            }
+        }
     }
 
     @Override
@@ -20,6 +20,7 @@ package ibis.io;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +36,9 @@ public final class BufferedArrayOutputStream extends DataOutputStream {
 
     private static final boolean DEBUG = IOProperties.DEBUG;
 
+    /** Default size of the direct buffers used for writing large arrays. */
+    private static final int GATHER_SIZE = 256 * 1024;
+
     /** Size of the buffer in which output data is collected. */
     private final int BUF_SIZE;
 
@@ -53,6 +57,26 @@ public final class BufferedArrayOutputStream extends DataOutputStream {
     /** Object used for conversion of primitive types to bytes. */
     private Conversion conversion;
 
+    /**
+     * The underlying stream, if it can write byte buffers directly, otherwise
+     * <code>null</code>.
+     */
+    private final GatheringOutput gather;
+
+    /** Size of the direct buffers used for writing large arrays. */
+    private final int gatherSize;
+
+    /** Byte order of the conversion. */
+    private final ByteOrder order;
+
+    /** The buffers passed to a gathering write. */
+    private final ByteBuffer[] gatherBuffers = new ByteBuffer[2];
+
+    /** Fills a direct buffer with part of an array. */
+    private interface ArrayFiller {
+        void fill(ByteBuffer data, int off, int len);
+    }
+
     /**
      * Constructor.
      *
@@ -62,8 +86,11 @@ public final class BufferedArrayOutputStream extends DataOutputStream {
     public BufferedArrayOutputStream(OutputStream out, int bufSize) {
         this.out = out;
         BUF_SIZE = bufSize;
-        buffer = new byte[BUF_SIZE];
+        buffer = BufferPool.getArray(BUF_SIZE);
         conversion = Conversion.loadConversion(false);
+        order = conversion.bigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        gather = out instanceof GatheringOutput ? (GatheringOutput) out : null;
+        gatherSize = Math.max(GATHER_SIZE, (bufSize + 7) & ~7);
     }
 
     /**
@@ -106,6 +133,55 @@ public final class BufferedArrayOutputStream extends DataOutputStream {
         }
     }
 
+    /**
+     * Returns whether an array of the specified size should be written with
+     * {@link #gatherArray(int, int, int, ArrayFiller)}.
+     */
+    private boolean canGather(int len, int elementSize) {
+        return gather != null && (long) len * elementSize >= BUF_SIZE;
+    }
+
+    /**
+     * Writes (part of) a large array straight from a direct buffer, preceded by
+     * the data collected sofar. This avoids copying the array into the byte
+     * array buffer first. Only to be called when {@link #canGather(int, int)}
+     * returns <code>true</code>.
+     *
+     * @param off         offset of the first element.
+     * @param len         number of elements.
+     * @param elementSize size of an element in bytes.
+     * @param filler      copies elements into the direct buffer.
+     * @return the number of elements written.
+     * @exception IOException in case of trouble.
+     */
+    private int gatherArray(int off, int len, int elementSize, ArrayFiller filler) throws IOException {
+        ByteBuffer data = BufferPool.getDirectBuffer(gatherSize).order(order);
+        int capacity = gatherSize / elementSize;
+        int done = 0;
+
+        try {
+            while (done < len) {
+                int n = Math.min(len - done, capacity);
+                data.clear();
+                filler.fill(data, off + done, n);
+                data.limit(n * elementSize);
+                gatherBuffers[0] = ByteBuffer.wrap(buffer, 0, index);
+                gatherBuffers[1] = data;
+                if (!gather.writeBuffers(gatherBuffers)) {
+                    break;
+                }
+                bytes += index + n * elementSize;
+                index = 0;
+                done += n;
+            }
+        } finally {
+            gatherBuffers[0] = null;
+            gatherBuffers[1] = null;
+            BufferPool.release(data);
+        }
+        return done;
+    }
+
     @Override
     public void write(int b) throws IOException {
         writeByte((byte) b);
@@ -228,6 +304,15 @@ public final class BufferedArrayOutputStream extends DataOutputStream {
             logger.debug("writeArray(char[" + off + " ... " + (off + len) + "])");
         }
 
+        if (canGather(len, Constants.SIZEOF_CHAR)) {
+            int done = gatherArray(off, len, Constants.SIZEOF_CHAR, (data, o, n) -> data.asCharBuffer().put(ref, o, n));
+            if (done == len) {
+                return;
+            }
+            off += done;
+            len -= done;
+        }
+
         do {
             flush(Constants.SIZEOF_CHAR);
 
@@ -248,6 +333,15 @@ public final class BufferedArrayOutputStream extends DataOutputStream {
             logger.debug("writeArray(short[" + off + " ... " + (off + len) + "])");
         }
 
+        if (canGather(len, Constants.SIZEOF_SHORT)) {
+            int done = gatherArray(off, len, Constants.SIZEOF_SHORT, (data, o, n) -> data.asShortBuffer().put(ref, o, n));
+            if (done == len) {
+                return;
+            }
+            off += done;
+            len -= done;
+        }
+
         do {
             flush(Constants.SIZEOF_SHORT);
 
@@ -268,6 +362,15 @@ public final class BufferedArrayOutputStream extends DataOutputStream {
             logger.debug("writeArray(int[" + off + " ... " + (off + len) + "])");
         }
 
+        if (canGather(len, Constants.SIZEOF_INT)) {
+            int done = gatherArray(off, len, Constants.SIZEOF_INT, (data, o, n) -> data.asIntBuffer().put(ref, o, n));
+            if (done == len) {
+                return;
+            }
+            off += done;
+            len -= done;
+        }
+
         do {
             flush(Constants.SIZEOF_INT);
 
@@ -288,6 +391,15 @@ public final class BufferedArrayOutputStream extends DataOutputStream {
             logger.debug("writeArray(long[" + off + " ... " + (off + len) + "])");
         }
 
+        if (canGather(len, Constants.SIZEOF_LONG)) {
+            int done = gatherArray(off, len, Constants.SIZEOF_LONG, (data, o, n) -> data.asLongBuffer().put(ref, o, n));
+            if (done == len) {
+                return;
+            }
+            off += done;
+            len -= done;
+        }
+
         do {
             flush(Constants.SIZEOF_LONG);
 
@@ -307,6 +419,16 @@ public final class BufferedArrayOutputStream extends DataOutputStream {
         if (DEBUG && logger.isDebugEnabled()) {
             logger.debug("writeArray(float[" + off + " ... " + (off + len) + "])");
         }
+
+        if (canGather(len, Constants.SIZEOF_FLOAT)) {
+            int done = gatherArray(off, len, Constants.SIZEOF_FLOAT, (data, o, n) -> data.asFloatBuffer().put(ref, o, n));
+            if (done == len) {
+                return;
+            }
+            off += done;
+            len -= done;
+        }
+
         do {
             flush(Constants.SIZEOF_FLOAT);
 
@@ -327,6 +449,15 @@ public final class BufferedArrayOutputStream extends DataOutputStream {
             logger.debug("writeArray(double[" + off + " ... " + (off + len) + "])");
         }
 
+        if (canGather(len, Constants.SIZEOF_DOUBLE)) {
+            int done = gatherArray(off, len, Constants.SIZEOF_DOUBLE, (data, o, n) -> data.asDoubleBuffer().put(ref, o, n));
+            if (done == len) {
+                return;
+            }
+            off += done;
+            len -= done;
+        }
+
         do {
             flush(Constants.SIZEOF_DOUBLE);
 
@@ -359,8 +490,17 @@ public final class BufferedArrayOutputStream extends DataOutputStream {
 
     @Override
     public void close() throws IOException {
-        flush();
-        out.close();
+        if (buffer == null) {
+            // Already closed.
+            return;
+        }
+        try {
+            flush();
+            out.close();
+        } finally {
+            BufferPool.release(buffer);
+            buffer = null;
+        }
     }
 
     @Override
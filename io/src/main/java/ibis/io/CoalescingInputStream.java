@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An <code>InputStream</code> that reads the data written by a
+ * {@link CoalescingOutputStream}. Put it under a
+ * {@link BufferedArrayInputStream} to obtain the matching
+ * {@link DataInputStream}. A read never returns more than what is left of the
+ * current write of the sender, so this stream never waits for data that the
+ * sender has not written yet.
+ */
+public final class CoalescingInputStream extends InputStream {
+
+    private final InputStream in;
+
+    private final byte[] header = new byte[Constants.SIZEOF_INT];
+
+    /** Number of bytes left of the current write. */
+    private int left = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param in the underlying <code>InputStream</code>.
+     */
+    public CoalescingInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the length of the next write.
+     *
+     * @return <code>false</code> at end of stream.
+     */
+    private boolean nextWrite() throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return false;
+        }
+        header[0] = (byte) first;
+        for (int off = 1; off < header.length;) {
+            int n = in.read(header, off, header.length - off);
+            if (n < 0) {
+                throw new EOFException("EOF encountered");
+            }
+            off += n;
+        }
+        left = Conversion.defaultConversion.byte2int(header, 0);
+        if (left <= 0) {
+            throw new IOException("Corrupt coalesced stream: length " + left);
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (left == 0 && !nextWrite()) {
+            return -1;
+        }
+        int n = in.read(b, off, Math.min(len, left));
+        if (n < 0) {
+            throw new EOFException("EOF encountered");
+        }
+        left -= n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (left == 0) {
+            // The next write is on its way, as its length is written with it.
+            return in.available();
+        }
+        return Math.min(left, in.available());
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An <code>OutputStream</code> that can hold back flushes, so that the data of
+ * several small messages is handed to the underlying stream in one go, to be
+ * read back with a {@link CoalescingInputStream}. It is meant to be put under a
+ * {@link BufferedArrayOutputStream}, on top of a buffered stream, in the same
+ * way as a {@link CompressionOutputStream}. Each write is preceded by its
+ * length, so that the reader never waits for more than has been written.
+ * <p>
+ * Flushes are only held back while coalescing is switched on, and only until
+ * the number of bytes written since the last flush reaches the size limit.
+ * Whoever switches coalescing on is responsible for calling {@link #flush()}
+ * later on, which passes on the held back data.
+ */
+public final class CoalescingOutputStream extends OutputStream {
+
+    private final OutputStream out;
+
+    private final int limit;
+
+    private final byte[] header = new byte[Constants.SIZEOF_INT];
+
+    /** Number of bytes written since the last flush of the underlying stream. */
+    private long pending = 0;
+
+    private boolean coalescing = false;
+
+    /**
+     * Constructor.
+     *
+     * @param out   the underlying <code>OutputStream</code>.
+     * @param limit number of bytes after which a flush is no longer held back.
+     */
+    public CoalescingOutputStream(OutputStream out, int limit) {
+        this.out = out;
+        this.limit = limit;
+    }
+
+    /**
+     * Switches holding back flushes on or off.
+     *
+     * @param coalescing when set, flushes are held back.
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+    }
+
+    /**
+     * Returns whether there is data that has not been flushed to the underlying
+     * stream.
+     *
+     * @return whether there is unflushed data.
+     */
+    public boolean hasPending() {
+        return pending > 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        Conversion.defaultConversion.int2byte(len, header, 0);
+        out.write(header, 0, header.length);
+        out.write(b, off, len);
+        pending += header.length + len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (coalescing && pending < limit) {
+            return;
+        }
+        pending = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        pending = 0;
+        out.close();
+    }
+}
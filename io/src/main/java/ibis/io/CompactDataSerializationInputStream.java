@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ibis.io;
+
+import java.io.IOException;
+
+/**
+ * The <code>SerializationInputStream</code> counterpart of
+ * {@link CompactDataSerializationOutputStream}.
+ */
+public class CompactDataSerializationInputStream extends DataSerializationInputStream {
+
+    /** When true, no buffering in the data serialization layer. */
+    private static final boolean NO_ARRAY_BUFFERS = IOProperties.properties.getBooleanProperty(IOProperties.s_no_array_buffers);
+
+    /**
+     * Constructor with a <code>DataInputStream</code>.
+     *
+     * @param in the underlying <code>DataInputStream</code>
+     * @exception IOException gets thrown when an IO error occurs.
+     */
+    public CompactDataSerializationInputStream(DataInputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    public String serializationImplName() {
+        return "compact";
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        if (NO_ARRAY_BUFFERS) {
+            return super.readInt();
+        }
+        int zz = (int) readVarLong();
+        return (zz >>> 1) ^ -(zz & 1);
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        if (NO_ARRAY_BUFFERS) {
+            return super.readLong();
+        }
+        long zz = readVarLong();
+        return (zz >>> 1) ^ -(zz & 1);
+    }
+
+    @Override
+    protected void readIntArray(int[] ref, int off, int len) throws IOException {
+        if (NO_ARRAY_BUFFERS || len < IOProperties.SMALL_ARRAY_BOUND / Constants.SIZEOF_INT) {
+            super.readIntArray(ref, off, len);
+            return;
+        }
+        switch (readByte()) {
+        case CompactDataSerializationOutputStream.ARRAY_RAW:
+            super.readIntArray(ref, off, len);
+            break;
+        case CompactDataSerializationOutputStream.ARRAY_DELTAS:
+            readVarDeltas(ref, off, len);
+            break;
+        default:
+            throw new SerializationError("Corrupt int array mode");
+        }
+    }
+
+    @Override
+    protected void readLongArray(long[] ref, int off, int len) throws IOException {
+        if (NO_ARRAY_BUFFERS || len < IOProperties.SMALL_ARRAY_BOUND / Constants.SIZEOF_LONG) {
+            super.readLongArray(ref, off, len);
+            return;
+        }
+        switch (readByte()) {
+        case CompactDataSerializationOutputStream.ARRAY_RAW:
+            super.readLongArray(ref, off, len);
+            break;
+        case CompactDataSerializationOutputStream.ARRAY_DELTAS:
+            readVarDeltas(ref, off, len);
+            break;
+        default:
+            throw new SerializationError("Corrupt long array mode");
+        }
+    }
+}
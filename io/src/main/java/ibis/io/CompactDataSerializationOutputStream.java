@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ibis.io;
+
+import java.io.IOException;
+
+/**
+ * Data serialization that writes ints and longs as zigzag-encoded
+ * variable-length numbers, so that numbers close to zero take one or two
+ * bytes. Int and long arrays that are too large to be written element by
+ * element are written as the variable-length differences between successive
+ * elements, but only when that is smaller than writing them as is; otherwise
+ * they are handed to the underlying stream unchanged. Without array buffers
+ * (see {@link IOProperties#s_no_array_buffers}) this is plain data
+ * serialization.
+ */
+public class CompactDataSerializationOutputStream extends DataSerializationOutputStream {
+
+    /** When true, no buffering in the data serialization layer. */
+    private static final boolean NO_ARRAY_BUFFERS = IOProperties.properties.getBooleanProperty(IOProperties.s_no_array_buffers);
+
+    /** Array mode: the array follows as is. */
+    static final byte ARRAY_RAW = 0;
+
+    /** Array mode: the array follows as variable-length differences. */
+    static final byte ARRAY_DELTAS = 1;
+
+    /**
+     * Constructor with a <code>DataOutputStream</code>.
+     *
+     * @param out the underlying <code>DataOutputStream</code>
+     * @exception IOException gets thrown when an IO error occurs.
+     */
+    public CompactDataSerializationOutputStream(DataOutputStream out) throws IOException {
+        super(out);
+    }
+
+    @Override
+    public String serializationImplName() {
+        return "compact";
+    }
+
+    @Override
+    public void writeInt(int value) throws IOException {
+        if (NO_ARRAY_BUFFERS) {
+            super.writeInt(value);
+        } else {
+            writeVarLong(((value << 1) ^ (value >> 31)) & 0xffffffffL);
+        }
+    }
+
+    @Override
+    public void writeLong(long value) throws IOException {
+        if (NO_ARRAY_BUFFERS) {
+            super.writeLong(value);
+        } else {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+    }
+
+    @Override
+    public void writeArrayInt(int[] ref, int offset, int len) throws IOException {
+        if (NO_ARRAY_BUFFERS || len < IOProperties.SMALL_ARRAY_BOUND / Constants.SIZEOF_INT) {
+            super.writeArrayInt(ref, offset, len);
+        } else if (deltasSmaller(ref, offset, len)) {
+            writeByte(ARRAY_DELTAS);
+            writeVarDeltas(ref, offset, len);
+        } else {
+            writeByte(ARRAY_RAW);
+            super.writeArrayInt(ref, offset, len);
+        }
+    }
+
+    @Override
+    public void writeArrayLong(long[] ref, int offset, int len) throws IOException {
+        if (NO_ARRAY_BUFFERS || len < IOProperties.SMALL_ARRAY_BOUND / Constants.SIZEOF_LONG) {
+            super.writeArrayLong(ref, offset, len);
+        } else if (deltasSmaller(ref, offset, len)) {
+            writeByte(ARRAY_DELTAS);
+            writeVarDeltas(ref, offset, len);
+        } else {
+            writeByte(ARRAY_RAW);
+            super.writeArrayLong(ref, offset, len);
+        }
+    }
+
+    /**
+     * Determines whether the variable-length differences of the specified array
+     * are smaller than the array itself. Stops as soon as they are not.
+     */
+    private static boolean deltasSmaller(int[] ref, int offset, int len) {
+        long limit = (long) len * Constants.SIZEOF_INT;
+        long size = 0;
+        int prev = 0;
+        for (int i = offset; i < offset + len; i++) {
+            int d = ref[i] - prev;
+            prev = ref[i];
+            size += Conversion.varLongSize(((d << 1) ^ (d >> 31)) & 0xffffffffL);
+            if (size >= limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean deltasSmaller(long[] ref, int offset, int len) {
+        long limit = (long) len * Constants.SIZEOF_LONG;
+        long size = 0;
+        long prev = 0;
+        for (int i = offset; i < offset + len; i++) {
+            long d = ref[i] - prev;
+            prev = ref[i];
+            size += Conversion.varLongSize((d << 1) ^ (d >> 63));
+            if (size >= limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
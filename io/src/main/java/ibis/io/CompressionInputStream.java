@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An <code>InputStream</code> that reads the blocks written by a
+ * {@link CompressionOutputStream}. Put it under a
+ * {@link BufferedArrayInputStream} to obtain the matching
+ * {@link DataInputStream}. A block is only read from the underlying stream
+ * when the previous one has been consumed, so this stream never reads beyond
+ * the last block that the sender flushed. Blocks that were sent as is are read
+ * straight into the caller's array.
+ */
+public final class CompressionInputStream extends InputStream {
+
+    private final InputStream in;
+
+    private final byte[] header = new byte[CompressionOutputStream.HEADER_SIZE];
+
+    /** The codecs seen so far, indexed by block kind. */
+    private final BlockCodec[] codecs = new BlockCodec[3];
+
+    /** Compressed data of the current block. */
+    private byte[] packed;
+
+    /** Decompressed data of the current block. */
+    private byte[] block;
+
+    private int index = 0;
+
+    private int limit = 0;
+
+    /** Number of bytes left in the underlying stream of a raw block. */
+    private int rawLeft = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param in the underlying <code>InputStream</code>.
+     */
+    public CompressionInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    private void readFully(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = in.read(b, off, len);
+            if (n < 0) {
+                throw new EOFException("EOF encountered");
+            }
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Reads the next block.
+     *
+     * @return <code>false</code> at end of stream.
+     */
+    private boolean nextBlock() throws IOException {
+        int kind = in.read();
+        if (kind < 0) {
+            return false;
+        }
+        header[0] = (byte) kind;
+        readFully(header, 1, Constants.SIZEOF_INT);
+        int size = Conversion.defaultConversion.byte2int(header, 1);
+        if (size <= 0 || size > CompressionOutputStream.MAX_BLOCK_SIZE) {
+            throw new IOException("Corrupt compressed stream: block size " + size);
+        }
+        if (kind == BlockCodec.RAW) {
+            rawLeft = size;
+            return true;
+        }
+        if (kind >= codecs.length || (codecs[kind] == null && (codecs[kind] = BlockCodec.create((byte) kind)) == null)) {
+            throw new IOException("Corrupt compressed stream: block kind " + kind);
+        }
+        readFully(header, CompressionOutputStream.RAW_HEADER_SIZE, Constants.SIZEOF_INT);
+        int n = Conversion.defaultConversion.byte2int(header, CompressionOutputStream.RAW_HEADER_SIZE);
+        if (n <= 0 || n > codecs[kind].maxCompressedLength(size)) {
+            throw new IOException("Corrupt compressed stream: compressed size " + n);
+        }
+        if (packed == null || packed.length < n) {
+            release();
+            packed = BufferPool.getArray(codecs[kind].maxCompressedLength(CompressionOutputStream.MAX_BLOCK_SIZE));
+            block = BufferPool.getArray(CompressionOutputStream.MAX_BLOCK_SIZE);
+        }
+        readFully(packed, 0, n);
+        codecs[kind].decompress(packed, 0, n, block, 0, size);
+        index = 0;
+        limit = size;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (index == limit && rawLeft == 0) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        if (rawLeft > 0) {
+            int n = in.read(b, off, Math.min(len, rawLeft));
+            if (n < 0) {
+                throw new EOFException("EOF encountered");
+            }
+            rawLeft -= n;
+            return n;
+        }
+        int n = Math.min(len, limit - index);
+        System.arraycopy(block, index, b, off, n);
+        index += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (rawLeft > 0) {
+            return Math.min(rawLeft, in.available());
+        }
+        return (limit - index) + in.available();
+    }
+
+    private void release() {
+        if (packed != null) {
+            BufferPool.release(packed);
+            BufferPool.release(block);
+            packed = null;
+            block = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            in.close();
+        } finally {
+            release();
+            for (BlockCodec codec : codecs) {
+                if (codec != null) {
+                    codec.end();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An <code>OutputStream</code> that compresses each write as a separate block,
+ * to be read back with a {@link CompressionInputStream}. It is meant to be put
+ * under a {@link BufferedArrayOutputStream}, which writes whole buffers, so
+ * that the result is a compressing {@link DataOutputStream}:
+ *
+ * <pre>
+ * new BufferedArrayOutputStream(new CompressionOutputStream(out, props))
+ * </pre>
+ *
+ * Every block starts with a header telling how it was compressed, so that the
+ * receiver does not need to know the codec. Compression is adaptive: blocks
+ * smaller than the <code>ibis.io.compression.threshold</code> property are
+ * sent as is, and so are blocks that do not compress well. After such a block,
+ * the next few blocks are sent as is without trying, a number that doubles
+ * with each failure, so that incompressible data such as floating point
+ * arrays costs little CPU time.
+ */
+public final class CompressionOutputStream extends OutputStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompressionOutputStream.class);
+
+    /** Maximum size of a block. */
+    static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+    /** Size of the header of a raw block: kind and size. */
+    static final int RAW_HEADER_SIZE = 1 + Constants.SIZEOF_INT;
+
+    /** Size of the header of a compressed block: kind, size, compressed size. */
+    static final int HEADER_SIZE = RAW_HEADER_SIZE + Constants.SIZEOF_INT;
+
+    /** Maximum number of blocks sent as is after a block did not compress. */
+    private static final int MAX_SKIP = 64;
+
+    private static final int THRESHOLD = IOProperties.COMPRESSION_THRESHOLD;
+
+    private final OutputStream out;
+
+    private final BlockCodec codec;
+
+    /** Header, followed by the compressed data. */
+    private byte[] packed;
+
+    /** Number of blocks to send as is after the next failure. */
+    private int backoff = 0;
+
+    /** Number of blocks still to be sent as is. */
+    private int skip = 0;
+
+    private long rawBytes = 0;
+
+    private long packedBytes = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param out   the underlying <code>OutputStream</code>.
+     * @param props properties that may specify the codec with the
+     *              <code>ibis.io.compression</code> property, may be
+     *              <code>null</code>.
+     * @exception IllegalArgumentException when the codec does not exist.
+     */
+    public CompressionOutputStream(OutputStream out, Properties props) {
+        String name = props == null ? null : props.getProperty(IOProperties.s_compression);
+        if (name == null) {
+            name = IOProperties.properties.getProperty(IOProperties.s_compression, "lz4");
+        }
+        this.out = out;
+        codec = BlockCodec.create(name);
+        packed = BufferPool.getArray(HEADER_SIZE + codec.maxCompressedLength(MAX_BLOCK_SIZE));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, MAX_BLOCK_SIZE);
+            writeBlock(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void writeBlock(byte[] b, int off, int len) throws IOException {
+        rawBytes += len;
+        if (len >= THRESHOLD) {
+            if (skip > 0) {
+                skip--;
+            } else {
+                int n = codec.compress(b, off, len, packed, HEADER_SIZE);
+                // Only worth it when it saves at least 1/16th.
+                if (n < len - (len >> 4)) {
+                    backoff = 0;
+                    packed[0] = codec.kind();
+                    Conversion.defaultConversion.int2byte(len, packed, 1);
+                    Conversion.defaultConversion.int2byte(n, packed, RAW_HEADER_SIZE);
+                    out.write(packed, 0, HEADER_SIZE + n);
+                    packedBytes += HEADER_SIZE + n;
+                    return;
+                }
+                backoff = Math.min(MAX_SKIP, Math.max(1, 2 * backoff));
+                skip = backoff;
+            }
+        }
+        packed[0] = BlockCodec.RAW;
+        Conversion.defaultConversion.int2byte(len, packed, 1);
+        out.write(packed, 0, RAW_HEADER_SIZE);
+        out.write(b, off, len);
+        packedBytes += RAW_HEADER_SIZE + len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (packed == null) {
+            return;
+        }
+        try {
+            out.close();
+        } finally {
+            BufferPool.release(packed);
+            packed = null;
+            codec.end();
+            if (logger.isDebugEnabled() && rawBytes > 0) {
+                logger.debug("Compressed " + rawBytes + " bytes to " + packedBytes);
+            }
+        }
+    }
+}
@@ -30,6 +30,9 @@ public final class Constants {
 
     public static final int CLEAR_HANDLE = -1;
 
+    /** Announces the registered types, see {@link TypeRegistry}. */
+    public static final int REGISTRY_HANDLE = -2;
+
     public static final int CONTROL_HANDLES = 2;
 
     public static final Class<?> classBooleanArray = AlternativeTypeInfo.getClass("[Z");
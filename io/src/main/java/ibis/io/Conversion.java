@@ -93,6 +93,12 @@ public abstract class Conversion {
     /** The number of bits in a single 'double' */
     public final static int BITS_PER_DOUBLE = BITS_PER_BYTE * DOUBLE_SIZE;
 
+    /** The maximum number of bytes in a variable-length 'int'. */
+    public final static int MAX_VARINT_BYTES = 5;
+
+    /** The maximum number of bytes in a variable-length 'long'. */
+    public final static int MAX_VARLONG_BYTES = 10;
+
     /**
      * Returns a conversion, given the class name of it.
      *
@@ -269,6 +275,36 @@ public abstract class Conversion {
         return o;
     }
 
+    /**
+     * Stores a variable-length number: 7 bits per byte, least significant bits
+     * first, with the high bit set in all but the last byte.
+     *
+     * @param b the destination, which must have room for
+     *          {@link #MAX_VARLONG_BYTES} bytes.
+     * @param i the index at which to store the number
+     * @param v the number, taken as unsigned
+     * @return the index just past the stored number
+     */
+    public static int putVarLong(byte[] b, int i, long v) {
+        while ((v & ~0x7FL) != 0) {
+            b[i++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        b[i++] = (byte) v;
+        return i;
+    }
+
+    /**
+     * Returns the number of bytes {@link #putVarLong(byte[], int, long)} uses
+     * for the specified number.
+     *
+     * @param v the number, taken as unsigned
+     * @return the number of bytes
+     */
+    public static int varLongSize(long v) {
+        return v == 0 ? 1 : (63 - Long.numberOfLeadingZeros(v)) / 7 + 1;
+    }
+
     /**
      * Upwards-round <code>a</code> to a multiple of <code>d</code>. <code>d</code>
      * <b>MUST</b> be a power of two.
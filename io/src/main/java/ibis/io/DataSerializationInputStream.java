@@ -20,6 +20,7 @@ package ibis.io;
 import java.io.IOException;
 import java.io.UTFDataFormatException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -696,6 +697,123 @@ public class DataSerializationInputStream extends ByteSerializationInputStream {
         }
     }
 
+    /**
+     * Reads a variable-length number written by
+     * {@link DataSerializationOutputStream#writeVarLong(long)}. Can only be used
+     * with array buffers.
+     *
+     * @return the number, as an unsigned long.
+     * @exception IOException on IO error.
+     */
+    final long readVarLong() throws IOException {
+        while (byte_index == max_byte_index) {
+            receive();
+        }
+        byte b = byte_buffer[byte_index++];
+        if (b >= 0) {
+            return b;
+        }
+        long v = b & 0x7F;
+        for (int shift = 7;; shift += 7) {
+            if (byte_index == max_byte_index) {
+                throw new SerializationError("Corrupt variable-length number");
+            }
+            b = byte_buffer[byte_index++];
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+    }
+
+    /**
+     * Reads the zigzag-encoded differences written by
+     * {@link DataSerializationOutputStream#writeVarDeltas(int[], int, int)} and
+     * reconstructs the array from them.
+     *
+     * @param ref the array to be read into
+     * @param off the offset at which to start
+     * @param len number of elements to read
+     * @exception IOException on IO error.
+     */
+    final void readVarDeltas(int[] ref, int off, int len) throws IOException {
+        int prev = 0;
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            while (byte_index == max_byte_index) {
+                receive();
+            }
+            // Decode as many numbers as this buffer holds with the buffer and
+            // index in locals.
+            byte[] buf = byte_buffer;
+            int bi = byte_index;
+            int max = max_byte_index;
+            while (i < end && bi < max) {
+                int zz = buf[bi++];
+                if (zz < 0) {
+                    zz &= 0x7F;
+                    for (int shift = 7;; shift += 7) {
+                        if (bi == max) {
+                            throw new SerializationError("Corrupt variable-length number");
+                        }
+                        int b = buf[bi++];
+                        zz |= (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            break;
+                        }
+                    }
+                }
+                prev += (zz >>> 1) ^ -(zz & 1);
+                ref[i++] = prev;
+            }
+            byte_index = bi;
+        }
+    }
+
+    /**
+     * Reads the zigzag-encoded differences written by
+     * {@link DataSerializationOutputStream#writeVarDeltas(long[], int, int)} and
+     * reconstructs the array from them.
+     *
+     * @param ref the array to be read into
+     * @param off the offset at which to start
+     * @param len number of elements to read
+     * @exception IOException on IO error.
+     */
+    final void readVarDeltas(long[] ref, int off, int len) throws IOException {
+        long prev = 0;
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            while (byte_index == max_byte_index) {
+                receive();
+            }
+            byte[] buf = byte_buffer;
+            int bi = byte_index;
+            int max = max_byte_index;
+            while (i < end && bi < max) {
+                long zz = buf[bi++];
+                if (zz < 0) {
+                    zz &= 0x7F;
+                    for (int shift = 7;; shift += 7) {
+                        if (bi == max) {
+                            throw new SerializationError("Corrupt variable-length number");
+                        }
+                        int b = buf[bi++];
+                        zz |= (long) (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            break;
+                        }
+                    }
+                }
+                prev += (zz >>> 1) ^ -(zz & 1);
+                ref[i++] = prev;
+            }
+            byte_index = bi;
+        }
+    }
+
     /**
      * Allocates arrays.
      */
@@ -830,10 +948,20 @@ public class DataSerializationInputStream extends ByteSerializationInputStream {
     }
 
     public String readUTF() throws IOException {
+        return readUTF(readInt());
+    }
+
+    /**
+     * Reads the bytes of an UTF of which the length was already read.
+     *
+     * @param bn the length in bytes, or -1 for a <code>null</code> string.
+     * @return the string read.
+     * @exception IOException in case of error.
+     */
+    protected String readUTF(int bn) throws IOException {
         if (TIME_DATA_SERIALIZATION) {
             timer.start();
         }
-        int bn = readInt();
 
         if (DEBUG && logger.isDebugEnabled()) {
             logger.debug("readUTF: len = " + bn);
@@ -849,6 +977,23 @@ public class DataSerializationInputStream extends ByteSerializationInputStream {
         byte[] b = new byte[bn];
         readByteArray(b, 0, bn);
 
+        int ascii = 0;
+        while (ascii < bn && b[ascii] >= 0) {
+            ascii++;
+        }
+        if (ascii == bn) {
+            // Plain ASCII: this creates a compact string without going
+            // through a char array.
+            String s = new String(b, StandardCharsets.ISO_8859_1);
+            if (TIME_DATA_SERIALIZATION) {
+                timer.stop();
+            }
+            if (DEBUG && logger.isDebugEnabled()) {
+                logger.debug("read string " + s);
+            }
+            return s;
+        }
+
         int len = 0;
         char[] c = new char[bn];
 
@@ -859,7 +1004,11 @@ public class DataSerializationInputStream extends ByteSerializationInputStream {
             }
         }
 
-        for (int i = 0; i < bn; i++) {
+        for (; len < ascii; len++) {
+            c[len] = (char) b[len];
+        }
+
+        for (int i = ascii; i < bn; i++) {
             int bi = b[i] & 0xff;
             if ((bi & ~0x7f) == 0) {
                 c[len++] = (char) (bi & 0x7f);
@@ -19,6 +19,7 @@ package ibis.io;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -839,6 +840,80 @@ public class DataSerializationOutputStream extends ByteSerializationOutputStream
         }
     }
 
+    /**
+     * Writes a variable-length number to the byte buffer: 7 bits per byte, least
+     * significant bits first, with the high bit set in all but the last byte. A
+     * number is never split over two flushes. Can only be used with array
+     * buffers.
+     *
+     * @param value the number, as an unsigned long.
+     * @exception IOException on IO error.
+     */
+    final void writeVarLong(long value) throws IOException {
+        if (byte_index > byte_buffer.length - Conversion.MAX_VARLONG_BYTES) {
+            internalFlush();
+        }
+        byte_index = Conversion.putVarLong(byte_buffer, byte_index, value);
+    }
+
+    /**
+     * Writes the differences between successive elements of an int array as
+     * zigzag-encoded variable-length numbers, see {@link #writeVarLong(long)}.
+     *
+     * @param ref    the array to be written
+     * @param offset the offset at which to start
+     * @param len    number of elements to write
+     * @exception IOException on IO error.
+     */
+    final void writeVarDeltas(int[] ref, int offset, int len) throws IOException {
+        int prev = 0;
+        int end = offset + len;
+        int i = offset;
+        while (i < end) {
+            if (byte_index > byte_buffer.length - Conversion.MAX_VARINT_BYTES) {
+                internalFlush();
+            }
+            byte[] b = byte_buffer;
+            int bi = byte_index;
+            int stop = Math.min(end, i + (b.length - bi) / Conversion.MAX_VARINT_BYTES);
+            for (; i < stop; i++) {
+                int d = ref[i] - prev;
+                prev = ref[i];
+                bi = Conversion.putVarLong(b, bi, ((d << 1) ^ (d >> 31)) & 0xffffffffL);
+            }
+            byte_index = bi;
+        }
+    }
+
+    /**
+     * Writes the differences between successive elements of a long array as
+     * zigzag-encoded variable-length numbers, see {@link #writeVarLong(long)}.
+     *
+     * @param ref    the array to be written
+     * @param offset the offset at which to start
+     * @param len    number of elements to write
+     * @exception IOException on IO error.
+     */
+    final void writeVarDeltas(long[] ref, int offset, int len) throws IOException {
+        long prev = 0;
+        int end = offset + len;
+        int i = offset;
+        while (i < end) {
+            if (byte_index > byte_buffer.length - Conversion.MAX_VARLONG_BYTES) {
+                internalFlush();
+            }
+            byte[] b = byte_buffer;
+            int bi = byte_index;
+            int stop = Math.min(end, i + (b.length - bi) / Conversion.MAX_VARLONG_BYTES);
+            for (; i < stop; i++) {
+                long d = ref[i] - prev;
+                prev = ref[i];
+                bi = Conversion.putVarLong(b, bi, (d << 1) ^ (d >> 63));
+            }
+            byte_index = bi;
+        }
+    }
+
     /**
      * Allocates buffers.
      */
@@ -898,20 +973,28 @@ public class DataSerializationOutputStream extends ByteSerializationOutputStream
             }
         }
 
-        byte[] b = new byte[bn];
-        bn = 0;
+        byte[] b;
 
-        for (int i = 0; i < len; i++) {
-            int c = str.charAt(i); // widening char to int zero-extends
-            if (c > 0x0000 && c <= 0x007f) {
-                b[bn++] = (byte) c;
-            } else if (c <= 0x07ff) {
-                b[bn++] = (byte) (0xc0 | (0x1f & (c >> 6)));
-                b[bn++] = (byte) (0x80 | (0x3f & c));
-            } else {
-                b[bn++] = (byte) (0xe0 | (0x0f & (c >> 12)));
-                b[bn++] = (byte) (0x80 | (0x3f & (c >> 6)));
-                b[bn++] = (byte) (0x80 | (0x3f & c));
+        if (bn == len) {
+            // Plain ASCII, which is its own encoding. For a compact string,
+            // this is a copy of its bytes.
+            b = str.getBytes(StandardCharsets.ISO_8859_1);
+        } else {
+            b = new byte[bn];
+            bn = 0;
+
+            for (int i = 0; i < len; i++) {
+                int c = str.charAt(i); // widening char to int zero-extends
+                if (c > 0x0000 && c <= 0x007f) {
+                    b[bn++] = (byte) c;
+                } else if (c <= 0x07ff) {
+                    b[bn++] = (byte) (0xc0 | (0x1f & (c >> 6)));
+                    b[bn++] = (byte) (0x80 | (0x3f & c));
+                } else {
+                    b[bn++] = (byte) (0xe0 | (0x0f & (c >> 12)));
+                    b[bn++] = (byte) (0x80 | (0x3f & (c >> 6)));
+                    b[bn++] = (byte) (0x80 | (0x3f & c));
+                }
             }
         }
         if (DEBUG && logger.isDebugEnabled()) {
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.io;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses blocks with the JDK's {@link Deflater}, at its fastest setting.
+ * This compresses better than {@link Lz4BlockCodec}, at a considerably higher
+ * CPU cost, so it is meant for slow links.
+ */
+final class DeflateBlockCodec extends BlockCodec {
+
+    private Deflater deflater;
+
+    private Inflater inflater;
+
+    @Override
+    byte kind() {
+        return DEFLATE;
+    }
+
+    @Override
+    int maxCompressedLength(int len) {
+        // Stored blocks add 5 bytes per 16 KB, plus a few bytes at the end.
+        return len + 5 * (len / 16384 + 1) + 16;
+    }
+
+    @Override
+    int compress(byte[] src, int off, int len, byte[] dst, int doff) {
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED, true);
+        }
+        deflater.reset();
+        deflater.setInput(src, off, len);
+        deflater.finish();
+        int n = 0;
+        while (!deflater.finished()) {
+            if (doff + n == dst.length) {
+                // Does not fit, so it is not worth it anyway.
+                return len;
+            }
+            n += deflater.deflate(dst, doff + n, dst.length - doff - n);
+        }
+        return n;
+    }
+
+    @Override
+    void decompress(byte[] src, int off, int len, byte[] dst, int doff, int size) throws IOException {
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        inflater.reset();
+        inflater.setInput(src, off, len);
+        try {
+            int n = 0;
+            while (n < size) {
+                int r = inflater.inflate(dst, doff + n, size - n);
+                if (r == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                n += r;
+            }
+            if (n != size) {
+                throw new IOException("Corrupt compressed block");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed block", e);
+        }
+    }
+
+    @Override
+    void end() {
+        if (deflater != null) {
+            deflater.end();
+        }
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.io;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads and writes the serializable fields of a class that has not been
+ * rewritten by <code>ibisc</code>, through method handles instead of through
+ * reflection. The handles are created once per class, and are stored in the
+ * {@link AlternativeTypeInfo} of the class, so that a non-rewritten class is
+ * serialized in much the same way as a class with a generator.
+ *
+ * Unlike {@link java.lang.invoke.VarHandle}s, setter handles obtained from an
+ * accessible {@link Field} may also assign final fields, so final fields do not
+ * have to go through {@link JavaDependentStuff}.
+ */
+final class FieldAccessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(FieldAccessor.class);
+
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private final AlternativeTypeInfo t;
+
+    /** Getters, of type <code>(Object)T</code>. */
+    private final MethodHandle[] getters;
+
+    /** Setters, of type <code>(Object,T)void</code>. */
+    private final MethodHandle[] setters;
+
+    private FieldAccessor(AlternativeTypeInfo t, MethodHandle[] getters, MethodHandle[] setters) {
+        this.t = t;
+        this.getters = getters;
+        this.setters = setters;
+    }
+
+    /**
+     * Creates an accessor for the serializable fields of the specified type, or
+     * returns <code>null</code> if that is not possible, for instance because a
+     * field cannot be made accessible, or because a field listed in
+     * <code>serialPersistentFields</code> does not exist. In that case, the
+     * reflective code path must be used.
+     *
+     * @param t the type.
+     * @return the accessor, or <code>null</code>.
+     */
+    static FieldAccessor create(AlternativeTypeInfo t) {
+        Field[] fields = t.serializable_fields;
+        if (fields == null) {
+            return null;
+        }
+        MethodHandle[] getters = new MethodHandle[fields.length];
+        MethodHandle[] setters = new MethodHandle[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            Field f = fields[i];
+            if (f == null || !f.trySetAccessible()) {
+                return null;
+            }
+            Class<?> type = f.getType().isPrimitive() ? f.getType() : Object.class;
+            try {
+                getters[i] = lookup.unreflectGetter(f).asType(MethodType.methodType(type, Object.class));
+                setters[i] = lookup.unreflectSetter(f).asType(MethodType.methodType(Void.TYPE, Object.class, type));
+            } catch (IllegalAccessException e) {
+                // For instance a final field of a record or hidden class.
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Cannot create field accessor for " + t.clazz.getName() + ": " + e);
+                }
+                return null;
+            }
+        }
+        return new FieldAccessor(t, getters, setters);
+    }
+
+    /**
+     * Writes the serializable fields of object <code>ref</code>.
+     *
+     * @param out the stream to write to.
+     * @param ref the object.
+     * @exception IOException when an IO error occurs.
+     */
+    void writeFields(IbisSerializationOutputStream out, Object ref) throws IOException {
+        int temp = 0;
+        int i;
+
+        try {
+            for (i = 0; i < t.double_count; i++) {
+                out.writeDouble((double) getters[temp++].invokeExact(ref));
+            }
+            for (i = 0; i < t.long_count; i++) {
+                out.writeLong((long) getters[temp++].invokeExact(ref));
+            }
+            for (i = 0; i < t.float_count; i++) {
+                out.writeFloat((float) getters[temp++].invokeExact(ref));
+            }
+            for (i = 0; i < t.int_count; i++) {
+                out.writeInt((int) getters[temp++].invokeExact(ref));
+            }
+            for (i = 0; i < t.short_count; i++) {
+                out.writeShort((short) getters[temp++].invokeExact(ref));
+            }
+            for (i = 0; i < t.char_count; i++) {
+                out.writeChar((char) getters[temp++].invokeExact(ref));
+            }
+            for (i = 0; i < t.byte_count; i++) {
+                out.writeByte((byte) getters[temp++].invokeExact(ref));
+            }
+            for (i = 0; i < t.boolean_count; i++) {
+                out.writeBoolean((boolean) getters[temp++].invokeExact(ref));
+            }
+            for (i = 0; i < t.reference_count; i++) {
+                out.doWriteObject((Object) getters[temp++].invokeExact(ref));
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IbisIOException("got exception", e);
+        }
+    }
+
+    /**
+     * Reads the serializable fields of object <code>ref</code>.
+     *
+     * @param in  the stream to read from.
+     * @param ref the object.
+     * @exception IOException            when an IO error occurs.
+     * @exception ClassNotFoundException when a class of a field value cannot be
+     *                                   loaded.
+     */
+    void readFields(IbisSerializationInputStream in, Object ref) throws IOException, ClassNotFoundException {
+        int temp = 0;
+        int i;
+
+        try {
+            for (i = 0; i < t.double_count; i++) {
+                setters[temp++].invokeExact(ref, in.readDouble());
+            }
+            for (i = 0; i < t.long_count; i++) {
+                setters[temp++].invokeExact(ref, in.readLong());
+            }
+            for (i = 0; i < t.float_count; i++) {
+                setters[temp++].invokeExact(ref, in.readFloat());
+            }
+            for (i = 0; i < t.int_count; i++) {
+                setters[temp++].invokeExact(ref, in.readInt());
+            }
+            for (i = 0; i < t.short_count; i++) {
+                setters[temp++].invokeExact(ref, in.readShort());
+            }
+            for (i = 0; i < t.char_count; i++) {
+                setters[temp++].invokeExact(ref, in.readChar());
+            }
+            for (i = 0; i < t.byte_count; i++) {
+                setters[temp++].invokeExact(ref, in.readByte());
+            }
+            for (i = 0; i < t.boolean_count; i++) {
+                setters[temp++].invokeExact(ref, in.readBoolean());
+            }
+            for (i = 0; i < t.reference_count; i++) {
+                setters[temp++].invokeExact(ref, in.doReadObject(false));
+            }
+        } catch (IOException | ClassNotFoundException | Error e) {
+            throw e;
+        } catch (ClassCastException e) {
+            throw new IbisIOException("Field type mismatch in " + t.clazz.getName(), e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IbisIOException("got exception", e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Implemented by output streams that can write byte buffers without copying
+ * them into a byte array first, for instance because they are built on top of a
+ * {@link java.nio.channels.GatheringByteChannel}. {@link BufferedArrayOutputStream}
+ * uses this to write large primitive arrays.
+ */
+public interface GatheringOutput {
+
+    /**
+     * Writes the remaining bytes of the specified buffers, in order. Either all
+     * bytes are written, or none are.
+     *
+     * @param buffers the buffers to write.
+     * @return <code>false</code> if the buffers cannot be written this way at the
+     *         moment, in which case nothing was written.
+     * @exception IOException is thrown when an IO error occurs.
+     */
+    public boolean writeBuffers(ByteBuffer[] buffers) throws IOException;
+}
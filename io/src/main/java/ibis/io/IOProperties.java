@@ -52,6 +52,8 @@ public final class IOProperties {
 
     static final String s_classloader = PREFIX + "serialization.classloader";
 
+    static final String s_field_accessors = PREFIX + "serialization.accessors";
+
     static final String s_timer_data = PREFIX + "serialization.timer.data";
 
     static final String s_timer_ibis = PREFIX + "serialization.timer.ibis";
@@ -68,6 +70,10 @@ public final class IOProperties {
 
     static final String s_array_buffer = PREFIX + "array.buffer";
 
+    static final String s_buffer_pool = PREFIX + "buffer.pool";
+
+    static final String s_buffer_pool_size = s_buffer_pool + ".size";
+
     static final String s_debug = PREFIX + "debug";
 
     static final String s_asserts = PREFIX + "assert";
@@ -84,11 +90,20 @@ public final class IOProperties {
 
     static final String s_deepcopy_ser = PREFIX + "deepcopy.serialization";
 
+    static final String s_string_dictionary = PREFIX + "serialization.string.dictionary";
+
+    static final String s_registered_types = PREFIX + "serialization.types";
+
+    static final String s_compression = PREFIX + "compression";
+
+    static final String s_compression_threshold = s_compression + ".threshold";
+
     private static final String[][] propertiesList = new String[][] {
             { PROPERTIES_FILE, PROPERTIES_FILENAME, "String: determines the file name of the Ibis IO properties " + "file" },
             { s_stats_nonrewritten, "false", "Boolean: if true, print non-rewritten object statistics" },
             { s_stats_written, "false", "Boolean: if true, print statistics about objects written" },
             { s_classloader, null, "String: the name of a classloader to be used when a class " + "cannot be found" },
+            { s_field_accessors, "true", "Boolean: if true, fields of classes that are not rewritten are accessed through method handles instead of reflection" },
             { s_timer_data, "false", "Boolean: if true, enables data serialization timers" },
             { s_timer_ibis, "false", "Boolean: if true, enables ibis serialization timers" },
             { s_no_array_buffers, "false", "Boolean: if true, leaves all buffering of Ibis serialization " + "to the layers below it" },
@@ -97,6 +112,8 @@ public final class IOProperties {
             { s_typed_buffer_size, "8192", "Integer: determines the size of the typed buffers used " + "in Ibis data serialization streams" },
             { s_conversion_buf_size, "8192", "Integer: determines the size of the conversion buffers " + "used in Ibis serialization" },
             { s_array_buffer, "32", "Integer: determines the size of the buffer for arrays" },
+            { s_buffer_pool, "true", "Boolean: if true, stream buffers are taken from and returned to a shared buffer pool" },
+            { s_buffer_pool_size, "64", "Integer: determines the maximum number of free buffers kept per size in the buffer pool" },
             { s_debug, "false", "Boolean: if true, enables log4j calls" }, { s_asserts, "false", "Boolean: if true, enables some assertions" },
             { s_small_array_bound, "256",
                     "Integer: determines the bound beyond which arrays of a " + "basic type are written as an array instead of as "
@@ -108,7 +125,15 @@ public final class IOProperties {
                     "Integer: determines the fill-percentage before the ibis hash " + " is resized; choose between 50 and 200; larger values "
                             + " mean more chaining but a smaller hash size" },
             { s_serialization_default, "ibis", "String: either \"ibis\" or \"sun\", determines the default object serialization" },
-            { s_deepcopy_ser, "ibis", "String: determines the serialization used for DeepCopy" } };
+            { s_deepcopy_ser, "ibis", "String: determines the serialization used for DeepCopy" },
+            { s_string_dictionary, "0",
+                    "Integer: the maximum number of frequently written strings that Ibis serialization keeps in a "
+                            + "dictionary that survives resets; 0 disables the dictionary" },
+            { s_registered_types, null,
+                    "String: comma-separated list of classes that are registered with fixed type numbers in Ibis serialization, "
+                            + "in this order; must be the same for senders and receivers" },
+            { s_compression, "lz4", "String: either \"lz4\" or \"deflate\", determines the codec of compressed streams" },
+            { s_compression_threshold, "512", "Integer: blocks smaller than this number of bytes are not compressed" } };
 
     static {
         properties = new TypedProperties(getDefaultProperties());
@@ -121,6 +146,8 @@ public final class IOProperties {
 
     public static final int SMALL_ARRAY_BOUND = properties.getIntProperty(s_small_array_bound, 256); // byte
 
+    public static final boolean FIELD_ACCESSORS = properties.getBooleanProperty(s_field_accessors, true);
+
     public static final int BUFFER_SIZE = properties.getIntProperty(s_buffer_size, 8 * 1024);
 
     public static final int TYPED_BUFFER_SIZE = properties.getIntProperty(s_typed_buffer_size, 8 * 1024);
@@ -129,6 +156,14 @@ public final class IOProperties {
 
     public static final int CONVERSION_BUFFER_SIZE = properties.getIntProperty(s_conversion_buf_size, 32 * 1024);
 
+    public static final boolean BUFFER_POOL = properties.getBooleanProperty(s_buffer_pool, true);
+
+    public static final int BUFFER_POOL_SIZE = properties.getIntProperty(s_buffer_pool_size, 64);
+
+    public static final int STRING_DICTIONARY_SIZE = properties.getIntProperty(s_string_dictionary, 0);
+
+    public static final int COMPRESSION_THRESHOLD = properties.getIntProperty(s_compression_threshold, 512);
+
     /**
      * Returns the hard-coded Ibis IO properties.
      *
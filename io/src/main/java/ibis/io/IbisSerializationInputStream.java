@@ -24,9 +24,15 @@ import java.io.NotActiveException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
 import java.io.StreamCorruptedException;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,6 +90,22 @@ public class IbisSerializationInputStream extends DataSerializationInputStream {
     /** List of types seen sofar. */
     private IbisVector types;
 
+    /**
+     * Types that were looked up by name before, by any stream. Saves a class
+     * lookup each time a new stream sees a type again. The lookup depends on
+     * the context class loader of the reading thread, so the types are kept per
+     * loader. Loaders and types are only weakly referenced, so that they can
+     * still be unloaded.
+     */
+    private static final Map<ClassLoader, ConcurrentHashMap<String, WeakReference<AlternativeTypeInfo>>> typesByName = Collections
+            .synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * The string dictionary of the sender. Strings read through it are shared,
+     * and it survives resets, like the types.
+     */
+    private final ArrayList<String> dictionary = new ArrayList<>();
+
     /**
      * There is a notion of a "current" object. This is needed when a user-defined
      * <code>readObject</code> refers to <code>defaultReadObject</code> or to
@@ -562,12 +584,33 @@ public class IbisSerializationInputStream extends DataSerializationInputStream {
             types.add(Constants.TYPE_DOUBLE, doubleArrayInfo);
 
             next_type = Constants.PRIMITIVE_TYPES;
+            dictionary.clear();
         }
 
         objects.clear();
         next_handle = Constants.CONTROL_HANDLES;
     }
 
+    /**
+     * Adds the first <code>n</code> registered types to the type table, after
+     * checking that the sender registered the same types.
+     *
+     * @param n           the number of types registered by the sender.
+     * @param fingerprint the fingerprint of the types of the sender.
+     */
+    private void addRegisteredTypes(int n, long fingerprint) {
+        Class<?>[] registered = TypeRegistry.registered();
+        if (n > registered.length || TypeRegistry.fingerprint(registered, n) != fingerprint) {
+            throw new SerializationError("Registered types of the sender differ from the ones registered here");
+        }
+        if (next_type != Constants.PRIMITIVE_TYPES) {
+            throw new SerializationError("Internal error: registered types announced with next_type = " + next_type);
+        }
+        for (int i = 0; i < n; i++) {
+            types.add(next_type++, AlternativeTypeInfo.getAlternativeTypeInfo(registered[i]));
+        }
+    }
+
     /**
      * resets the stream, by clearing the object and type table.
      */
@@ -619,6 +662,14 @@ public class IbisSerializationInputStream extends DataSerializationInputStream {
                 }
                 do_reset(true);
                 handle = readInt();
+            } else if (handle == Constants.REGISTRY_HANDLE) {
+                int n = readInt();
+                long fingerprint = readLong();
+                if (DEBUG && logger.isDebugEnabled()) {
+                    logger.debug("received a REGISTRY of " + n + " types");
+                }
+                addRegisteredTypes(n, fingerprint);
+                handle = readInt();
             } else {
                 break;
             }
@@ -855,9 +906,7 @@ public class IbisSerializationInputStream extends DataSerializationInputStream {
             logger.debug("read NEW type number 0x" + Integer.toHexString(type) + " type " + typeName);
         }
 
-        Class<?> clazz = JavaDependentStuff.getClassFromName(typeName);
-
-        AlternativeTypeInfo t = AlternativeTypeInfo.getAlternativeTypeInfo(clazz);
+        AlternativeTypeInfo t = typeFromName(typeName);
 
         types.add(next_type, t);
         next_type++;
@@ -865,6 +914,19 @@ public class IbisSerializationInputStream extends DataSerializationInputStream {
         return t;
     }
 
+    private static AlternativeTypeInfo typeFromName(String typeName) throws ClassNotFoundException {
+        ConcurrentHashMap<String, WeakReference<AlternativeTypeInfo>> cache = typesByName.computeIfAbsent(Thread.currentThread().getContextClassLoader(),
+                l -> new ConcurrentHashMap<>());
+        WeakReference<AlternativeTypeInfo> ref = cache.get(typeName);
+        AlternativeTypeInfo t = ref == null ? null : ref.get();
+        if (t == null) {
+            Class<?> clazz = JavaDependentStuff.getClassFromName(typeName);
+            t = AlternativeTypeInfo.getAlternativeTypeInfo(clazz);
+            cache.put(typeName, new WeakReference<>(t));
+        }
+        return t;
+    }
+
     /**
      * This method reads a value from the stream and assigns it to a final field.
      * IOGenerator uses this method when assigning final fields of an object that is
@@ -1087,6 +1149,10 @@ public class IbisSerializationInputStream extends DataSerializationInputStream {
         if (DEBUG && logger.isDebugEnabled()) {
             logger.debug("alternativeDefaultReadObject, class = " + t.clazz.getName());
         }
+        if (t.accessor != null) {
+            t.accessor.readFields(this, ref);
+            return;
+        }
         for (int i = 0; i < t.double_count; i++) {
             Field f = t.serializable_fields[temp];
             if (t.fields_final[temp]) {
@@ -1409,6 +1475,38 @@ public class IbisSerializationInputStream extends DataSerializationInputStream {
         object_stack[stack_size] = null;
     }
 
+    /**
+     * Reads the contents of a new string, as written by
+     * {@link IbisSerializationOutputStream#writeStringData(String)}.
+     *
+     * @exception IOException gets thrown on IO error
+     * @return the string read.
+     */
+    String readStringData() throws IOException {
+        int len = readInt();
+        if (len >= -1) {
+            return readUTF(len);
+        }
+
+        int index = -2 - len;
+        if (index < dictionary.size()) {
+            if (DEBUG && logger.isDebugEnabled()) {
+                logger.debug("read dictionary entry " + index);
+            }
+            return dictionary.get(index);
+        }
+        if (index != dictionary.size()) {
+            throw new SerializationError("Internal error: dictionary size = " + dictionary.size() + ", index = " + index);
+        }
+
+        String s = readUTF();
+        if (DEBUG && logger.isDebugEnabled()) {
+            logger.debug("read NEW dictionary entry " + index + " string = " + s);
+        }
+        dictionary.add(s);
+        return s;
+    }
+
     /**
      * Reads and returns a <code>String</code> object. This is a special case,
      * because strings are written as an UTF.
@@ -1455,7 +1553,7 @@ public class IbisSerializationInputStream extends DataSerializationInputStream {
             throw new SerializationError("Cannot find java.lang.String?", e);
         }
 
-        String s = readUTF();
+        String s = readStringData();
         if (DEBUG && logger.isDebugEnabled()) {
             logger.debug("readString returns " + s);
         }
@@ -23,6 +23,8 @@ import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 
 import org.slf4j.Logger;
@@ -40,6 +42,12 @@ public class IbisSerializationOutputStream extends DataSerializationOutputStream
     /** If <code>false</code>, makes all timer calls disappear. */
     private static final boolean TIME_IBIS_SERIALIZATION = IOProperties.properties.getBooleanProperty(IOProperties.s_timer_ibis);
 
+    /** Maximum number of strings in the string dictionary, 0 if disabled. */
+    private static final int STRING_DICTIONARY_SIZE = IOProperties.STRING_DICTIONARY_SIZE;
+
+    /** Strings longer than this are not put in the string dictionary. */
+    private static final int MAX_DICTIONARY_STRING = 256;
+
     /** Record how many objects of any class are sent. */
     private static final boolean STATS_OBJECTS = IOProperties.properties.getBooleanProperty(IOProperties.s_stats_written);
 
@@ -106,6 +114,22 @@ public class IbisSerializationOutputStream extends DataSerializationOutputStream
     /** Hashtable for types already put on the stream. */
     private IbisHash types = new IbisHash();
 
+    /** The registered types in the type table, see {@link TypeRegistry}. */
+    private Class<?>[] registered;
+
+    /** Remember when the registered types must be announced. */
+    private boolean registryPending = false;
+
+    /**
+     * Strings that were written often enough to be put in the dictionary, with
+     * their dictionary index. Unlike object handles, dictionary entries survive
+     * a reset; they are cleared together with the types.
+     */
+    private final HashMap<String, Integer> dictionary = STRING_DICTIONARY_SIZE > 0 ? new HashMap<>() : null;
+
+    /** Strings that were written once, and go in the dictionary when written again. */
+    private final HashSet<String> dictionaryCandidates = STRING_DICTIONARY_SIZE > 0 ? new HashSet<>() : null;
+
     /**
      * There is a notion of a "current" object. This is needed when a user-defined
      * <code>writeObject</code> refers to <code>defaultWriteObject</code> or to
@@ -160,7 +184,6 @@ public class IbisSerializationOutputStream extends DataSerializationOutputStream
 
         types_clear();
 
-        next_type = Constants.PRIMITIVE_TYPES;
         next_handle = Constants.CONTROL_HANDLES;
     }
 
@@ -173,7 +196,6 @@ public class IbisSerializationOutputStream extends DataSerializationOutputStream
         super();
         types_clear();
 
-        next_type = Constants.PRIMITIVE_TYPES;
         next_handle = Constants.CONTROL_HANDLES;
     }
 
@@ -292,6 +314,15 @@ public class IbisSerializationOutputStream extends DataSerializationOutputStream
         types.put(Constants.classFloatArray, Constants.TYPE_FLOAT | Constants.TYPE_BIT);
         types.put(Constants.classDoubleArray, Constants.TYPE_DOUBLE | Constants.TYPE_BIT);
         next_type = Constants.PRIMITIVE_TYPES;
+        registered = TypeRegistry.registered();
+        for (Class<?> clazz : registered) {
+            types.put(clazz, next_type++ | Constants.TYPE_BIT);
+        }
+        registryPending = registered.length > 0;
+        if (dictionary != null) {
+            dictionary.clear();
+            dictionaryCandidates.clear();
+        }
     }
 
     @Override
@@ -379,6 +410,15 @@ public class IbisSerializationOutputStream extends DataSerializationOutputStream
             }
             resetPending = false;
         }
+        if (registryPending) {
+            writeInt(Constants.REGISTRY_HANDLE);
+            writeInt(registered.length);
+            writeLong(TypeRegistry.fingerprint(registered, registered.length));
+            if (DEBUG && logger.isDebugEnabled()) {
+                logger.debug("wrote a REGISTRY of " + registered.length + " types");
+            }
+            registryPending = false;
+        }
 
         // treating handles as normal int's --N
         writeInt(v);
@@ -780,7 +820,7 @@ public class IbisSerializationOutputStream extends DataSerializationOutputStream
         if (handle == next_handle) {
             // System.err.write("+");
             next_handle++;
-            writeInt(typehandle | Constants.TYPE_BIT);
+            writeHandle(typehandle | Constants.TYPE_BIT);
             return 1;
         }
 
@@ -809,6 +849,10 @@ public class IbisSerializationOutputStream extends DataSerializationOutputStream
         if (DEBUG && logger.isDebugEnabled()) {
             logger.debug("alternativeDefaultWriteObject, class = " + t.clazz.getName());
         }
+        if (t.accessor != null) {
+            t.accessor.writeFields(this, ref);
+            return;
+        }
         for (i = 0; i < t.double_count; i++) {
             writeDouble(t.serializable_fields[temp++].getDouble(ref));
         }
@@ -993,7 +1037,7 @@ public class IbisSerializationOutputStream extends DataSerializationOutputStream
             if (DEBUG && logger.isDebugEnabled()) {
                 logger.debug("writeString: " + ref);
             }
-            writeUTF(ref);
+            writeStringData(ref);
         } else {
             if (DEBUG && logger.isDebugEnabled()) {
                 logger.debug("writeString: duplicate handle " + handle + " string = " + ref);
@@ -1005,6 +1049,42 @@ public class IbisSerializationOutputStream extends DataSerializationOutputStream
         }
     }
 
+    /**
+     * Writes the contents of a new string. This is an UTF, or, when the
+     * dictionary is enabled, a negative dictionary index, followed by an UTF
+     * when the string is new in the dictionary. A string is added to the
+     * dictionary when it is written for the second time.
+     *
+     * @param ref the string to be written
+     * @exception IOException gets thrown on IO error
+     */
+    void writeStringData(String ref) throws IOException {
+        if (dictionary != null && ref.length() <= MAX_DICTIONARY_STRING) {
+            Integer index = dictionary.get(ref);
+            if (index != null) {
+                writeInt(-2 - index);
+                return;
+            }
+            if (dictionary.size() < STRING_DICTIONARY_SIZE) {
+                if (dictionaryCandidates.remove(ref)) {
+                    int newIndex = dictionary.size();
+                    dictionary.put(ref, newIndex);
+                    if (DEBUG && logger.isDebugEnabled()) {
+                        logger.debug("writeString: NEW dictionary entry " + newIndex + " string = " + ref);
+                    }
+                    writeInt(-2 - newIndex);
+                    writeUTF(ref);
+                    return;
+                }
+                if (dictionaryCandidates.size() >= 4 * STRING_DICTIONARY_SIZE) {
+                    dictionaryCandidates.clear();
+                }
+                dictionaryCandidates.add(ref);
+            }
+        }
+        writeUTF(ref);
+    }
+
     static void addStatSendObject(Object ref) {
         if (STATS_OBJECTS) {
             Class<?> clazz = ref.getClass();
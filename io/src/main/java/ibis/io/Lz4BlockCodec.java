@@ -0,0 +1,253 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.io;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A fast compressor in pure Java that writes the LZ4 block format: sequences of
+ * literals followed by a match, which is a copy of earlier output at a distance
+ * of at most 64 KB. Matches are found with a single-entry hash table of 4-byte
+ * sequences, and the search skips ahead faster the longer it finds nothing, so
+ * that incompressible data is passed over quickly.
+ */
+final class Lz4BlockCodec extends BlockCodec {
+
+    private static final int MIN_MATCH = 4;
+
+    /** The last bytes of a block are always literals. */
+    private static final int LAST_LITERALS = 5;
+
+    /** No match starts this close to the end of a block. */
+    private static final int MF_LIMIT = 12;
+
+    private static final int MAX_DISTANCE = 65535;
+
+    private static final int HASH_LOG = 12;
+
+    /** After this many misses in a row, the search starts skipping bytes. */
+    private static final int SKIP_TRIGGER = 6;
+
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Positions of recently seen 4-byte sequences. Positions are counted from
+     * the start of the first block, so that entries of earlier blocks are too
+     * far away to be used, and the table does not have to be cleared.
+     */
+    private final int[] table = new int[1 << HASH_LOG];
+
+    /** Position of the start of the next block. */
+    private int base = MAX_DISTANCE + 1;
+
+    private static int readInt(byte[] b, int i) {
+        return (int) INTS.get(b, i);
+    }
+
+    /**
+     * Returns the number of bytes, at most up to <code>limit</code>, that are
+     * equal at <code>i</code> and <code>ref</code>. Compares 8 bytes at a time.
+     */
+    private static int matchLength(byte[] b, int i, int ref, int limit) {
+        int start = i;
+        while (i < limit - 7) {
+            long diff = (long) LONGS.get(b, i) ^ (long) LONGS.get(b, ref);
+            if (diff != 0) {
+                return i - start + (Long.numberOfTrailingZeros(diff) >>> 3);
+            }
+            i += 8;
+            ref += 8;
+        }
+        while (i < limit && b[i] == b[ref]) {
+            i++;
+            ref++;
+        }
+        return i - start;
+    }
+
+    private static int hash(int v) {
+        return (v * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int writeLength(byte[] dst, int op, int len) {
+        while (len >= 255) {
+            dst[op++] = (byte) 255;
+            len -= 255;
+        }
+        dst[op++] = (byte) len;
+        return op;
+    }
+
+    @Override
+    byte kind() {
+        return LZ4;
+    }
+
+    @Override
+    int maxCompressedLength(int len) {
+        return len + len / 255 + 16;
+    }
+
+    @Override
+    int compress(byte[] src, int off, int len, byte[] dst, int doff) {
+        if (base > Integer.MAX_VALUE - len - 2 * (MAX_DISTANCE + 1)) {
+            Arrays.fill(table, 0);
+            base = MAX_DISTANCE + 1;
+        }
+        // table entries are ip + shift.
+        final int shift = base - off;
+        base += len + MAX_DISTANCE + 1;
+
+        final int end = off + len;
+        final int matchLimit = end - LAST_LITERALS;
+        final int mfLimit = end - MF_LIMIT;
+        int ip = off;
+        int anchor = off;
+        int op = doff;
+
+        if (len >= MF_LIMIT + 1) {
+            ip++;
+            int misses = 1 << SKIP_TRIGGER;
+            while (ip < mfLimit) {
+                int seq = readInt(src, ip);
+                int h = hash(seq);
+                int ref = table[h] - shift;
+                table[h] = ip + shift;
+                if (ip - ref > MAX_DISTANCE || readInt(src, ref) != seq) {
+                    ip += misses++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                misses = 1 << SKIP_TRIGGER;
+
+                // Extend the match backwards and forwards.
+                while (ip > anchor && ref > off && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLen = MIN_MATCH + matchLength(src, ip + MIN_MATCH, ref + MIN_MATCH, matchLimit);
+
+                // Emit literals and match.
+                int litLen = ip - anchor;
+                int tokenPos = op++;
+                int token;
+                if (litLen >= 15) {
+                    token = 15 << 4;
+                    op = writeLength(dst, op, litLen - 15);
+                } else {
+                    token = litLen << 4;
+                }
+                System.arraycopy(src, anchor, dst, op, litLen);
+                op += litLen;
+                int distance = ip - ref;
+                dst[op++] = (byte) distance;
+                dst[op++] = (byte) (distance >>> 8);
+                int ml = matchLen - MIN_MATCH;
+                if (ml >= 15) {
+                    token |= 15;
+                    op = writeLength(dst, op, ml - 15);
+                } else {
+                    token |= ml;
+                }
+                dst[tokenPos] = (byte) token;
+
+                ip += matchLen;
+                anchor = ip;
+                if (ip < mfLimit) {
+                    table[hash(readInt(src, ip - 2))] = ip - 2 + shift;
+                }
+            }
+        }
+
+        // Last literals.
+        int litLen = end - anchor;
+        if (litLen >= 15) {
+            dst[op++] = (byte) (15 << 4);
+            op = writeLength(dst, op, litLen - 15);
+        } else {
+            dst[op++] = (byte) (litLen << 4);
+        }
+        System.arraycopy(src, anchor, dst, op, litLen);
+        op += litLen;
+        return op - doff;
+    }
+
+    @Override
+    void decompress(byte[] src, int off, int len, byte[] dst, int doff, int size) throws IOException {
+        int ip = off;
+        final int end = off + len;
+        int op = doff;
+        final int oend = doff + size;
+
+        try {
+            for (;;) {
+                int token = src[ip++] & 0xff;
+                int litLen = token >>> 4;
+                if (litLen == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        litLen += b;
+                    } while (b == 255);
+                }
+                if (litLen > oend - op || litLen > end - ip) {
+                    throw new IOException("Corrupt compressed block");
+                }
+                System.arraycopy(src, ip, dst, op, litLen);
+                ip += litLen;
+                op += litLen;
+                if (ip == end) {
+                    break;
+                }
+
+                int distance = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+                ip += 2;
+                int matchLen = token & 15;
+                if (matchLen == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        matchLen += b;
+                    } while (b == 255);
+                }
+                matchLen += MIN_MATCH;
+                int ref = op - distance;
+                if (distance == 0 || ref < doff || matchLen > oend - op) {
+                    throw new IOException("Corrupt compressed block");
+                }
+                if (distance >= matchLen) {
+                    System.arraycopy(dst, ref, dst, op, matchLen);
+                    op += matchLen;
+                } else {
+                    // Overlapping copy, which repeats the last bytes.
+                    for (int i = 0; i < matchLen; i++) {
+                        dst[op++] = dst[ref++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt compressed block", e);
+        }
+        if (op != oend) {
+            throw new IOException("Corrupt compressed block");
+        }
+    }
+}
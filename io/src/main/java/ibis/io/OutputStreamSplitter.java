@@ -19,7 +19,13 @@ package ibis.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ibis.util.ThreadPool;
 
@@ -28,10 +34,26 @@ import ibis.util.ThreadPool;
  * and continue. when the data is written to all streams, throw one large
  * exception that contains all previous exceptions. This way, even when one of
  * the streams dies, the rest will receive the data.
+ *
+ * With more than one stream, each stream gets its own writer thread with a
+ * bounded queue of pending writes. A write copies the data once, queues it for
+ * all writers and returns, so that the caller can fill its next buffer while
+ * the previous one is being sent. Only {@link #flush()} and {@link #close()}
+ * wait until all writers are done, and report exceptions. A writer thread
+ * returns to the thread pool when it has been idle for a while.
+ *
+ * Between {@link #beginSend()} and {@link #endSend()}, a flush does not wait
+ * either, and even a single stream is written by a writer thread. The ticket
+ * returned by {@link #endSend()} can be used to wait until everything written
+ * before it is on its way, see {@link #sync(long)} and {@link #whenDone(long)}.
  **/
-public final class OutputStreamSplitter extends OutputStream {
+public final class OutputStreamSplitter extends OutputStream implements GatheringOutput {
+
+    /** Maximum number of writes queued for a single stream. */
+    private static final int MAX_PENDING = 16;
 
-    private static final int MAXTHREADS = 32;
+    /** Time after which an idle writer thread exits. */
+    private static final long IDLE_TIMEOUT = 10000;
 
     private boolean removeOnException = false;
     private boolean saveException = false;
@@ -40,101 +62,197 @@ public final class OutputStreamSplitter extends OutputStream {
 
     ArrayList<OutputStream> out = new ArrayList<>();
 
-    private int numSenders = 0;
+    /** The writers of the streams, created when needed. */
+    private final IdentityHashMap<OutputStream, Writer> writers = new IdentityHashMap<>();
+
+    /** Number of queued operations that have not completed yet. */
+    private int pending = 0;
+
+    /** Serializes the callers of this splitter. */
+    private final Object callerLock = new Object();
+
+    /** Set between {@link #beginSend()} and {@link #endSend()}. */
+    private boolean sending = false;
 
-    private class Sender implements Runnable {
-        int offset;
-        int len;
-        byte[] buf;
-        int index;
+    /** The last ticket handed out. */
+    private long lastTicket = 0;
 
-        Sender(byte[] buf, int index, int offset, int len) {
-            this.buf = buf;
-            this.offset = offset;
+    /** All tickets up to and including this one are done. */
+    private long completedTicket = 0;
+
+    /** The tickets that are not done yet. */
+    private final HashMap<Long, Marker> markers = new HashMap<>();
+
+    /** Data that is queued for several writers. */
+    private static final class Slice {
+        final byte[] buf;
+        final int len;
+        final AtomicInteger users;
+
+        Slice(byte[] b, int off, int len, int users) {
+            this.buf = BufferPool.getArray(len);
             this.len = len;
-            this.index = index;
+            this.users = new AtomicInteger(users);
+            System.arraycopy(b, off, buf, 0, len);
         }
 
-        @Override
-        public void run() {
-            doWrite(buf, offset, len, index);
-            finish();
+        void release() {
+            if (users.decrementAndGet() == 0) {
+                BufferPool.release(buf);
+            }
         }
     }
 
-    private class Flusher implements Runnable {
-        int index;
+    /** Marks a flush in the queue of a writer. */
+    private static final Object FLUSH = new Object();
 
-        Flusher(int index) {
-            this.index = index;
-        }
+    /** Marks a close in the queue of a writer. */
+    private static final Object CLOSE = new Object();
 
-        @Override
-        public void run() {
-            doFlush(index);
-            finish();
+    /** Marks the end of a send in the queues of all writers. */
+    private static final class Marker {
+        final long ticket;
+        final AtomicInteger remaining;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        volatile boolean failed = false;
+
+        Marker(long ticket, int writers) {
+            this.ticket = ticket;
+            this.remaining = new AtomicInteger(writers);
         }
     }
 
-    private class Closer implements Runnable {
-        int index;
+    /** Performs the operations queued for a single stream, in order. */
+    private final class Writer implements Runnable {
+        private final OutputStream stream;
+
+        private final ArrayDeque<Object> queue = new ArrayDeque<>();
+
+        private boolean running = false;
 
-        Closer(int index) {
-            this.index = index;
+        /** Set when the stream failed, later operations are skipped. */
+        private boolean failed = false;
+
+        Writer(OutputStream stream) {
+            this.stream = stream;
+        }
+
+        synchronized void enqueue(Object op) {
+            while (queue.size() >= MAX_PENDING) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // Ignored
+                }
+            }
+            queue.add(op);
+            if (!running) {
+                running = true;
+                ThreadPool.createNew(this, "Splitter writer");
+            } else {
+                notifyAll();
+            }
+        }
+
+        private synchronized Object next() {
+            long deadline = System.currentTimeMillis() + IDLE_TIMEOUT;
+            while (queue.isEmpty()) {
+                long timeout = deadline - System.currentTimeMillis();
+                if (timeout <= 0) {
+                    running = false;
+                    return null;
+                }
+                try {
+                    wait(timeout);
+                } catch (InterruptedException e) {
+                    // Ignored
+                }
+            }
+            Object op = queue.poll();
+            // wake up a caller waiting for space
+            notifyAll();
+            return op;
         }
 
         @Override
         public void run() {
-            doClose(index);
-            finish();
+            Object op;
+            while ((op = next()) != null) {
+                try {
+                    if (op instanceof Marker) {
+                        Marker m = (Marker) op;
+                        if (failed) {
+                            m.failed = true;
+                        }
+                        if (m.remaining.decrementAndGet() == 0) {
+                            markerDone(m);
+                        }
+                    } else if (!failed) {
+                        if (op instanceof Slice) {
+                            Slice s = (Slice) op;
+                            stream.write(s.buf, 0, s.len);
+                        } else if (op == FLUSH) {
+                            stream.flush();
+                        } else {
+                            stream.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    failed = true;
+                    addException(e, stream);
+                } finally {
+                    if (op instanceof Slice) {
+                        ((Slice) op).release();
+                    }
+                    operationDone();
+                }
+            }
         }
     }
 
-    void doWrite(byte[] buf, int offset, int len, int index) {
-        try {
-            OutputStream o = out.get(index);
-            if (o != null) {
-                o.write(buf, offset, len);
-            }
-        } catch (IOException e) {
-            addException(e, index);
+    private void markerDone(Marker m) {
+        synchronized (this) {
+            completedTicket = Math.max(completedTicket, m.ticket);
+            markers.remove(m.ticket);
+            notifyAll();
         }
+        complete(m);
     }
 
-    void doFlush(int index) {
-        try {
-            OutputStream o = out.get(index);
-            if (o != null) {
-                o.flush();
-            }
-        } catch (IOException e) {
-            addException(e, index);
-        }
+    /**
+     * Completes the future of a send. Its dependent actions must not run in a
+     * writer thread, as they might wait for that writer. They can be added at
+     * any time, so the future is always completed in a pool thread.
+     */
+    private static void complete(Marker m) {
+        ThreadPool.createNew(() -> completeNow(m), "Splitter send completion");
     }
 
-    void doClose(int index) {
-        try {
-            OutputStream o = out.get(index);
-            if (o != null) {
-                o.close();
-            }
-        } catch (IOException e) {
-            addException(e, index);
+    private static void completeNow(Marker m) {
+        if (m.failed) {
+            m.done.completeExceptionally(new IOException("Send failed on at least one stream"));
+        } else {
+            m.done.complete(null);
         }
     }
 
-    private synchronized void finish() {
-        numSenders--;
-        notifyAll();
+    private synchronized void operationDone() {
+        pending--;
+        if (pending == 0) {
+            notifyAll();
+        }
     }
 
-    private synchronized void addException(IOException e, int index) {
+    private synchronized void addException(IOException e, OutputStream stream) {
         if (savedException == null) {
             savedException = new SplitterException();
         }
-        savedException.add(out.get(index), e);
+        savedException.add(stream, e);
         if (removeOnException) {
-            out.set(index, null);
+            int index = out.indexOf(stream);
+            if (index >= 0) {
+                out.set(index, null);
+            }
         }
     }
 
@@ -148,76 +266,89 @@ public final class OutputStreamSplitter extends OutputStream {
         this.saveException = saveException;
     }
 
-    public synchronized void add(OutputStream s) {
-        out.add(s);
+    public void add(OutputStream s) {
+        synchronized (callerLock) {
+            synchronized (this) {
+                out.add(s);
+            }
+        }
     }
 
-    public synchronized void remove(OutputStream s) throws IOException {
+    public void remove(OutputStream s) throws IOException {
+        synchronized (callerLock) {
+            synchronized (this) {
+                waitForWriters();
 
-        while (numSenders != 0) {
-            try {
-                wait();
-            } catch (Exception e) {
-                // Ignored
-            }
-        }
+                int i = out.indexOf(s);
 
-        int i = out.indexOf(s);
+                if (i == -1) {
+                    throw new IOException("Removing unknown stream from splitter.");
+                }
 
-        if (i == -1) {
-            throw new IOException("Removing unknown stream from splitter.");
+                out.remove(i);
+                writers.remove(s);
+            }
         }
-
-        out.remove(i);
     }
 
-    @Override
-    public void write(int b) throws IOException {
-
-        synchronized (this) {
-            while (numSenders != 0) {
-                try {
-                    wait();
-                } catch (Exception e) {
-                    // Ignored
+    /**
+     * Returns the streams to write to, or <code>null</code> if there is at most
+     * one stream, which the caller then writes to itself. Must be called with
+     * the caller lock held.
+     */
+    private synchronized Writer[] getWriters(int ops) {
+        if (out.size() <= 1 && !sending && pending == 0) {
+            return null;
+        }
+        ArrayList<Writer> result = new ArrayList<>(out.size());
+        for (OutputStream o : out) {
+            if (o != null) {
+                Writer w = writers.get(o);
+                if (w == null) {
+                    w = new Writer(o);
+                    writers.put(o, w);
                 }
+                result.add(w);
             }
-            numSenders++;
         }
+        pending += ops * result.size();
+        return result.toArray(new Writer[0]);
+    }
 
-        bytesWritten += out.size();
-
-        for (int i = 0; i < out.size(); i++) {
+    private synchronized void waitForWriters() {
+        while (pending != 0) {
             try {
-                OutputStream o = out.get(i);
-                if (o != null) {
-                    o.write(b);
-                }
-            } catch (IOException e2) {
-                if (savedException == null) {
-                    savedException = new SplitterException();
-                }
-                savedException.add(out.get(i), e2);
-                if (removeOnException) {
-                    out.remove(i);
-                    --i;
-                }
+                wait();
+            } catch (InterruptedException e) {
+                // Ignored
             }
         }
+    }
 
+    /**
+     * Writes to the single stream, if there is one, in the calling thread.
+     *
+     * @return whether the data was written.
+     */
+    private boolean writeDirect(byte[] b, int off, int len) {
+        OutputStream o;
         synchronized (this) {
-            numSenders--;
-            notifyAll();
-        }
-
-        if (savedException != null) {
-            if (!saveException) {
-                SplitterException e = savedException;
-                savedException = null;
-                throw e;
+            if (out.isEmpty() || (o = out.get(0)) == null) {
+                return false;
             }
         }
+        try {
+            o.write(b, off, len);
+            return true;
+        } catch (IOException e) {
+            addException(e, o);
+            return false;
+        }
+    }
 
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
     }
 
     @Override
@@ -227,71 +358,198 @@ public final class OutputStreamSplitter extends OutputStream {
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        if (out.size() > 0) {
-            bytesWritten += len * out.size();
+        synchronized (callerLock) {
+            if (out.size() == 0) {
+                return;
+            }
+            Writer[] w = getWriters(1);
+            if (w == null) {
+                if (writeDirect(b, off, len)) {
+                    bytesWritten += len;
+                }
+                checkExceptions();
+                return;
+            }
+            if (w.length == 0) {
+                return;
+            }
+            // Streams that failed and were removed are not counted.
+            bytesWritten += (long) len * w.length;
+            Slice slice = new Slice(b, off, len, w.length);
+            for (Writer writer : w) {
+                writer.enqueue(slice);
+            }
+            // Exceptions are reported at the next flush.
+        }
+    }
+
+    /**
+     * Writes the buffers with a gathering write, which is only done when there
+     * is a single stream that supports it. With multiple streams, the data has to
+     * be copied anyway.
+     */
+    @Override
+    public boolean writeBuffers(ByteBuffer[] buffers) throws IOException {
+        synchronized (callerLock) {
+            OutputStream o;
             synchronized (this) {
-                while (numSenders != 0) {
-                    try {
-                        wait();
-                    } catch (Exception e) {
-                        // Ignored
-                    }
+                if (out.size() != 1 || sending || pending != 0 || !((o = out.get(0)) instanceof GatheringOutput)) {
+                    return false;
                 }
-                numSenders++;
             }
-            for (int i = 1; i < out.size(); i++) {
-                Sender s = new Sender(b, i, off, len);
-                runThread(s, "Splitter sender");
+            long len = 0;
+            for (ByteBuffer b : buffers) {
+                len += b.remaining();
             }
-            doWrite(b, off, len, 0);
-            done();
+            boolean written = true;
+            try {
+                written = ((GatheringOutput) o).writeBuffers(buffers);
+                if (written) {
+                    bytesWritten += len;
+                }
+            } catch (IOException e) {
+                // The stream is gone, so the data is not copied to it either.
+                addException(e, o);
+            }
+            checkExceptions();
+            return written;
         }
     }
 
     @Override
     public void flush() throws IOException {
-        if (out.size() > 0) {
+        synchronized (callerLock) {
+            finishAll(FLUSH);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (callerLock) {
+            finishAll(CLOSE);
+        }
+    }
+
+    /**
+     * Queues a flush or close for all streams, and waits until all queued
+     * operations are done.
+     */
+    private void finishAll(Object op) throws IOException {
+        Writer[] w = getWriters(1);
+        if (w == null) {
+            OutputStream o;
             synchronized (this) {
-                while (numSenders != 0) {
-                    try {
-                        wait();
-                    } catch (Exception e) {
-                        // Ignored
+                o = out.isEmpty() ? null : out.get(0);
+            }
+            if (o != null) {
+                try {
+                    if (op == FLUSH) {
+                        o.flush();
+                    } else {
+                        o.close();
                     }
+                } catch (IOException e) {
+                    addException(e, o);
                 }
-                numSenders++;
             }
-            for (int i = 1; i < out.size(); i++) {
-                Flusher f = new Flusher(i);
-                runThread(f, "Splitter flusher");
+        } else {
+            for (Writer writer : w) {
+                writer.enqueue(op);
             }
-            doFlush(0);
-            done();
+            synchronized (this) {
+                if (sending && op == FLUSH) {
+                    // Waited for in sync().
+                    return;
+                }
+            }
+            waitForWriters();
         }
+        checkExceptions();
     }
 
-    @Override
-    public void close() throws IOException {
+    /**
+     * Starts a send: until {@link #endSend()}, writes and flushes are only
+     * queued for the writer threads.
+     */
+    public void beginSend() {
+        synchronized (callerLock) {
+            synchronized (this) {
+                sending = true;
+            }
+        }
+    }
 
-        if (out.size() > 0) {
+    /**
+     * Ends a send, and returns a ticket for it.
+     *
+     * @return the ticket.
+     */
+    public long endSend() {
+        synchronized (callerLock) {
+            Writer[] w;
+            Marker m;
             synchronized (this) {
-                while (numSenders != 0) {
+                sending = false;
+                long ticket = ++lastTicket;
+                w = getWriters(1);
+                if (w == null || w.length == 0) {
+                    // Nothing is queued, so the send is done already.
+                    completedTicket = Math.max(completedTicket, ticket);
+                    return ticket;
+                }
+                m = new Marker(ticket, w.length);
+                markers.put(ticket, m);
+            }
+            for (Writer writer : w) {
+                writer.enqueue(m);
+            }
+            return m.ticket;
+        }
+    }
+
+    /**
+     * Waits until everything written before the specified send is on its way,
+     * or until all queued operations are done if there is no such send.
+     *
+     * @param ticket the ticket, obtained from {@link #endSend()}.
+     * @exception IOException is thrown when a stream failed.
+     */
+    public void sync(long ticket) throws IOException {
+        synchronized (this) {
+            if (ticket <= 0 || ticket > lastTicket) {
+                waitForWriters();
+            } else {
+                while (completedTicket < ticket) {
                     try {
                         wait();
-                    } catch (Exception e) {
+                    } catch (InterruptedException e) {
                         // Ignored
                     }
                 }
-                numSenders++;
             }
+        }
+        checkExceptions();
+    }
 
-            for (int i = 1; i < out.size(); i++) {
-                Closer f = new Closer(i);
-                runThread(f, "Splitter closer");
-            }
-            doClose(0);
-            done();
+    /**
+     * Returns a future that completes when everything written before the
+     * specified send is on its way. It completes exceptionally when a stream
+     * failed, the exception itself is reported by the next flush.
+     *
+     * @param ticket the ticket, obtained from {@link #endSend()}.
+     * @return the future.
+     */
+    public synchronized CompletableFuture<Void> whenDone(long ticket) {
+        Marker m = markers.get(ticket);
+        if (m != null) {
+            return m.done;
+        }
+        if (ticket > 0 && ticket <= completedTicket) {
+            return CompletableFuture.completedFuture(null);
         }
+        // Not a ticket of a send, wait for the last one.
+        m = markers.get(lastTicket);
+        return m == null ? CompletableFuture.completedFuture(null) : m.done;
     }
 
     public long bytesWritten() {
@@ -302,53 +560,29 @@ public final class OutputStreamSplitter extends OutputStream {
         bytesWritten = 0;
     }
 
-    public SplitterException getExceptions() {
+    public synchronized SplitterException getExceptions() {
         SplitterException e = savedException;
         savedException = null;
         return e;
     }
 
-    private void runThread(Runnable r, String name) {
-        synchronized (this) {
-            while (numSenders >= MAXTHREADS) {
-                try {
-                    wait();
-                } catch (Exception e) {
-                    // Ignored
-                }
-            }
-            numSenders++;
-        }
-        ThreadPool.createNew(r, name);
-    }
-
-    private void done() throws IOException {
-        synchronized (this) {
-            numSenders--;
-            while (numSenders != 0) {
-                try {
-                    wait();
-                } catch (Exception e) {
-                    // Ignored
-                }
-            }
-            notifyAll();
-
-            if (savedException != null) {
-                if (removeOnException) {
-                    for (int i = 0; i < out.size(); i++) {
-                        if (out.get(i) == null) {
-                            out.remove(i);
-                            i--;
-                        }
+    private synchronized void checkExceptions() throws IOException {
+        if (savedException != null) {
+            if (removeOnException) {
+                for (int i = 0; i < out.size(); i++) {
+                    OutputStream o = out.get(i);
+                    if (o == null) {
+                        out.remove(i);
+                        i--;
                     }
                 }
+                writers.keySet().retainAll(out);
+            }
 
-                if (!saveException) {
-                    SplitterException e = savedException;
-                    savedException = null;
-                    throw e;
-                }
+            if (!saveException) {
+                SplitterException e = savedException;
+                savedException = null;
+                throw e;
             }
         }
     }
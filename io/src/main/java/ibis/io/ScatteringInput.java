@@ -0,0 +1,38 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Implemented by input streams that can read straight into a byte buffer, for
+ * instance because they are built on top of a
+ * {@link java.nio.channels.ReadableByteChannel}.
+ * {@link BufferedArrayInputStream} uses this to read large primitive arrays.
+ */
+public interface ScatteringInput {
+
+    /**
+     * Reads bytes into the specified buffer until it has no remaining space.
+     *
+     * @param buffer the buffer to fill.
+     * @exception java.io.EOFException is thrown when the end of the stream is
+     *                                 reached before the buffer is full.
+     * @exception IOException          is thrown when an IO error occurs.
+     */
+    public void readFully(ByteBuffer buffer) throws IOException;
+}
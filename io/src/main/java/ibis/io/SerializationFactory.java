@@ -56,6 +56,9 @@ public class SerializationFactory {
         if (name.equals("data")) {
             return "ibis.io.DataSerialization";
         }
+        if (name.equals("compact")) {
+            return "ibis.io.CompactDataSerialization";
+        }
         if (name.equals("byte")) {
             return "ibis.io.ByteSerialization";
         }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of classes that have a fixed type number in Ibis serialization.
+ * Normally, the first time a stream writes an object of some class, it sends
+ * the class name along, and the receiver has to look the class up. This is
+ * repeated for every new stream, and after every reset that clears the types.
+ * The type numbers of registered classes are known in advance, so their names
+ * are never sent.
+ *
+ * Senders and receivers must register the same classes in the same order,
+ * before creating their streams, for instance through the
+ * <code>ibis.io.serialization.types</code> property. A stream announces the
+ * number of registered classes it uses and a fingerprint of their names before
+ * its first type, and the receiver checks these against its own registry.
+ * Classes can only be added to the registry, never removed.
+ *
+ * Type numbers are not negotiated per connection. Unregistered classes still
+ * have their names sent again after every new stream and every reset that
+ * clears the types. A send port with more than one receiver writes a single
+ * stream to all of them, and a receiver that connects later does not know
+ * numbers learned before, so such numbers cannot outlive the stream.
+ */
+public final class TypeRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(TypeRegistry.class);
+
+    private static final HashMap<Class<?>, Integer> numbers = new HashMap<>();
+
+    private static final ArrayList<Class<?>> list = new ArrayList<>();
+
+    /** Copy of the list, read by the streams without locking. */
+    private static volatile Class<?>[] classes = new Class<?>[0];
+
+    static {
+        String names = IOProperties.properties.getProperty(IOProperties.s_registered_types);
+        if (names != null) {
+            for (String name : names.split(",")) {
+                name = name.trim();
+                if (name.length() == 0) {
+                    continue;
+                }
+                try {
+                    register(JavaDependentStuff.getClassFromName(name));
+                } catch (ClassNotFoundException e) {
+                    logger.warn("Could not register type " + name + ": class not found");
+                }
+            }
+        }
+    }
+
+    private TypeRegistry() {
+        // prevent construction.
+    }
+
+    /**
+     * Registers the specified class, if it is not registered yet.
+     *
+     * @param clazz the class.
+     * @return the type number of the class.
+     */
+    public static synchronized int register(Class<?> clazz) {
+        Integer number = numbers.get(clazz);
+        if (number == null) {
+            if (clazz.isPrimitive() || (clazz.isArray() && clazz.getComponentType().isPrimitive())) {
+                throw new IllegalArgumentException("Cannot register " + clazz.getName() + ", it has a built-in type number");
+            }
+            number = Constants.PRIMITIVE_TYPES + list.size();
+            numbers.put(clazz, number);
+            list.add(clazz);
+            classes = list.toArray(new Class<?>[list.size()]);
+        }
+        return number;
+    }
+
+    /**
+     * Returns the registered classes, in order.
+     */
+    static Class<?>[] registered() {
+        return classes;
+    }
+
+    /**
+     * Computes a fingerprint of the names of the first <code>n</code> of the
+     * specified classes.
+     */
+    static long fingerprint(Class<?>[] types, int n) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < n; i++) {
+            String name = types[i].getName();
+            for (int j = 0; j < name.length(); j++) {
+                h = (h ^ name.charAt(j)) * 0x100000001b3L;
+            }
+            h = (h ^ ',') * 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import ibis.io.BufferedArrayOutputStream;
+import ibis.io.DataOutputStream;
+import ibis.io.Replacer;
+import ibis.io.SerializationFactory;
+import ibis.io.SerializationOutput;
+
+/**
+ * A write message that is built by a single thread of a sendport with the
+ * {@link ibis.ipl.PortType#COMMUNICATION_CONCURRENT_SENDERS} capability. The
+ * message is serialized into a private buffer, and only handed to the sendport
+ * when it is finished, so that other threads can build their messages at the
+ * same time.
+ */
+final class ConcurrentWriteMessage extends WriteMessage {
+
+    /**
+     * A finished message, waiting in the queue of the sendport until it is
+     * written to the connection(s).
+     */
+    static final class Finished {
+
+        /** The message that produced the data. */
+        final ConcurrentWriteMessage message;
+
+        /** The serialized message. */
+        final byte[] data;
+
+        /** The number of bytes written by the user. */
+        final long count;
+
+        /**
+         * When the message was created. Copied, because the message object is
+         * reused as soon as its thread creates a new message.
+         */
+        final long started;
+
+        /** Completed when the message has been written, or has failed. */
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        Finished(ConcurrentWriteMessage message, byte[] data, long count) {
+            this.message = message;
+            this.data = data;
+            this.count = count;
+            this.started = message.started;
+        }
+    }
+
+    /** Collects the bytes of the message. */
+    private final ByteArrayOutputStream buffer;
+
+    /** The data stream on top of {@link #buffer}. */
+    private final DataOutputStream dataOut;
+
+    /** The serialization stream of this message. */
+    private final SerializationOutput localOut;
+
+    ConcurrentWriteMessage(SendPort port, String serialization, Replacer replacer) throws IOException {
+        super(port);
+        buffer = new ByteArrayOutputStream();
+        dataOut = new BufferedArrayOutputStream(buffer);
+        localOut = SerializationFactory.createSerializationOutput(serialization, dataOut, port.properties);
+        if (replacer != null) {
+            localOut.setReplacer(replacer);
+        }
+        isFinished = true;
+    }
+
+    /**
+     * Returns whether this message is currently being written.
+     *
+     * @return whether the message is alive.
+     */
+    boolean isAlive() {
+        return !isFinished;
+    }
+
+    void initMessage() {
+        this.out = localOut;
+        this.isFinished = false;
+        this.before = dataOut.bytesWritten();
+    }
+
+    @Override
+    protected void throwException(Throwable e) throws IOException {
+        // Nothing has been sent yet, so the connections are not involved.
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        throw new IOException("Unexpected exception", e);
+    }
+
+    @Override
+    public int send() throws IOException {
+        // The message is only sent when it is finished.
+        checkNotFinished();
+        return 0;
+    }
+
+    @Override
+    public void sync(int ticket) throws IOException {
+        checkNotFinished();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // The message is only sent when it is finished.
+        checkNotFinished();
+    }
+
+    @Override
+    public long bytesWritten() {
+        return dataOut.bytesWritten() - before;
+    }
+
+    /**
+     * Waits until the sendport has written the message, so that a failure is
+     * reported to the thread that wrote it.
+     */
+    @Override
+    public long finish() throws IOException {
+        CompletableFuture<Long> done = handOver();
+        for (;;) {
+            try {
+                return done.get();
+            } catch (InterruptedException e) {
+                // ignored
+            } catch (ExecutionException e) {
+                throw (IOException) e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Hands the message to the sendport, and returns a result that is completed
+     * when the message has been written.
+     */
+    @Override
+    public CompletableFuture<Long> finishAsync() {
+        try {
+            return handOver();
+        } catch (IOException e) {
+            CompletableFuture<Long> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+    }
+
+    private CompletableFuture<Long> handOver() throws IOException {
+        checkNotFinished();
+        try {
+            out.reset();
+            out.flush();
+        } catch (Throwable e) {
+            IOException x = e instanceof IOException ? (IOException) e : new IOException("Unexpected exception", e);
+            finish(x);
+            throw x;
+        }
+        isFinished = true;
+        long retval = bytesWritten();
+        byte[] data = buffer.toByteArray();
+        buffer.reset();
+        return port.finishConcurrentMessage(new Finished(this, data, retval));
+    }
+
+    @Override
+    public void finish(IOException e) {
+        if (isFinished) {
+            return;
+        }
+        abort();
+        port.abandonConcurrentMessage(this, e);
+    }
+
+    /**
+     * Drops whatever was written to this message sofar.
+     */
+    private void abort() {
+        try {
+            out.reset();
+            out.flush();
+        } catch (Throwable e2) {
+            // ignored
+        }
+        buffer.reset();
+        isFinished = true;
+    }
+}
@@ -27,6 +27,8 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -95,15 +97,24 @@ public abstract class Ibis implements ibis.ipl.Ibis {
     /** Set when {@link #end()} is called. */
     private boolean ended = false;
 
-    /** The receiveports running on this Ibis instance. */
-    private HashMap<String, ReceivePort> receivePorts;
+    /**
+     * The receiveports running on this Ibis instance. Changed under the lock of
+     * this Ibis, but the statistics getters read it without locking.
+     */
+    private ConcurrentHashMap<String, ReceivePort> receivePorts;
 
-    /** The sendports running on this Ibis instance. */
-    private HashMap<String, SendPort> sendPorts;
+    /** The sendports running on this Ibis instance. See {@link #receivePorts}. */
+    private ConcurrentHashMap<String, SendPort> sendPorts;
 
-    private HashMap<ibis.ipl.IbisIdentifier, Long> sentBytesPerIbis = null;
+    /**
+     * Bytes sent to each Ibis, only kept when <code>ibis.bytescount</code> is
+     * set. Every finished message adds to these, so they are updated without
+     * locking: a counter is only allocated for the first message to an Ibis.
+     */
+    private ConcurrentHashMap<ibis.ipl.IbisIdentifier, LongAdder> sentBytesPerIbis = null;
 
-    private HashMap<ibis.ipl.IbisIdentifier, Long> receivedBytesPerIbis = null;
+    /** Bytes received from each Ibis. See {@link #sentBytesPerIbis}. */
+    private ConcurrentHashMap<ibis.ipl.IbisIdentifier, LongAdder> receivedBytesPerIbis = null;
 
     /** Counter for allocating names for anonymous sendports. */
     private static int send_counter = 0;
@@ -112,22 +123,22 @@ public abstract class Ibis implements ibis.ipl.Ibis {
     private static int receive_counter = 0;
 
     /** Total number of messages send by closed send ports */
-    private long outgoingMessageCount = 0;
+    private final LongAdder outgoingMessageCount = new LongAdder();
 
     /** Total number of messages received by closed receive ports */
-    private long incomingMessageCount = 0;
+    private final LongAdder incomingMessageCount = new LongAdder();
 
     /** Total number of bytes written to messages closed send ports */
-    private long bytesWritten = 0;
+    private final LongAdder bytesWritten = new LongAdder();
 
     /** Total number of bytes send by closed send ports */
-    private long bytesSent = 0;
+    private final LongAdder bytesSent = new LongAdder();
 
     /** Total number of bytes read by closed receive ports */
-    private long bytesReceived = 0;
+    private final LongAdder bytesReceived = new LongAdder();
 
     /** Total number of bytes read from messages (for closed received ports) */
-    private long bytesRead = 0;
+    private final LongAdder bytesRead = new LongAdder();
 
     /**
      * Version, consisting of both the generic implementation version, and the
@@ -192,8 +203,8 @@ public abstract class Ibis implements ibis.ipl.Ibis {
             logger.debug("Ibis constructor: properties = " + properties);
         }
 
-        receivePorts = new HashMap<>();
-        sendPorts = new HashMap<>();
+        receivePorts = new ConcurrentHashMap<>();
+        sendPorts = new ConcurrentHashMap<>();
 
         if (registryHandler != null) {
             // Only install wrapper if user actually has an event handler.
@@ -224,8 +235,8 @@ public abstract class Ibis implements ibis.ipl.Ibis {
         }
 
         if (properties.getBooleanProperty("ibis.bytescount")) {
-            sentBytesPerIbis = new HashMap<>();
-            receivedBytesPerIbis = new HashMap<>();
+            sentBytesPerIbis = new ConcurrentHashMap<>();
+            receivedBytesPerIbis = new ConcurrentHashMap<>();
         }
 
         if (properties.getBooleanProperty("ibis.managementclient")) {
@@ -368,9 +379,9 @@ public abstract class Ibis implements ibis.ipl.Ibis {
     synchronized void deRegister(ReceivePort p) {
         if (receivePorts.remove(p.name) != null) {
             // add statistics for this receive port to "total" statistics
-            incomingMessageCount += p.getMessageCount();
-            bytesReceived += p.getBytesReceived();
-            bytesRead += p.getBytesRead();
+            incomingMessageCount.add(p.getMessageCount());
+            bytesReceived.add(p.getBytesReceived());
+            bytesRead.add(p.getBytesRead());
         }
     }
 
@@ -384,38 +395,45 @@ public abstract class Ibis implements ibis.ipl.Ibis {
     synchronized void deRegister(SendPort p) {
         if (sendPorts.remove(p.name) != null) {
             // add statistics for this sendport to "total" statistics
-            outgoingMessageCount += p.getMessageCount();
-            bytesSent += p.getBytesSent();
-            bytesWritten += p.getBytesWritten();
+            outgoingMessageCount.add(p.getMessageCount());
+            bytesSent.add(p.getBytesSent());
+            bytesWritten.add(p.getBytesWritten());
         }
     }
 
-    synchronized void addSentPerIbis(long cnt, ibis.ipl.ReceivePortIdentifier[] idents) {
+    void addSentPerIbis(long cnt, ibis.ipl.ReceivePortIdentifier[] idents) {
         if (sentBytesPerIbis == null) {
             return;
         }
         for (ibis.ipl.ReceivePortIdentifier rp : idents) {
-            ibis.ipl.IbisIdentifier i = rp.ibisIdentifier();
-            Long oldval = sentBytesPerIbis.get(i);
-            if (oldval != null) {
-                cnt += oldval;
-            }
-            sentBytesPerIbis.put(i, Long.valueOf(cnt));
+            counter(sentBytesPerIbis, rp.ibisIdentifier()).add(cnt);
         }
     }
 
-    synchronized void addReceivedPerIbis(long cnt, ibis.ipl.SendPortIdentifier[] idents) {
+    void addReceivedPerIbis(long cnt, ibis.ipl.SendPortIdentifier[] idents) {
         if (receivedBytesPerIbis == null) {
             return;
         }
         for (ibis.ipl.SendPortIdentifier sp : idents) {
-            ibis.ipl.IbisIdentifier i = sp.ibisIdentifier();
-            Long oldval = receivedBytesPerIbis.get(i);
-            if (oldval != null) {
-                cnt += oldval;
-            }
-            receivedBytesPerIbis.put(i, Long.valueOf(cnt));
+            counter(receivedBytesPerIbis, sp.ibisIdentifier()).add(cnt);
+        }
+    }
+
+    private static LongAdder counter(ConcurrentHashMap<ibis.ipl.IbisIdentifier, LongAdder> map, ibis.ipl.IbisIdentifier ibis) {
+        // Plain get first: computeIfAbsent may lock, and allocates a lambda.
+        LongAdder counter = map.get(ibis);
+        if (counter == null) {
+            counter = map.computeIfAbsent(ibis, k -> new LongAdder());
+        }
+        return counter;
+    }
+
+    private static Map<ibis.ipl.IbisIdentifier, Long> snapshot(ConcurrentHashMap<ibis.ipl.IbisIdentifier, LongAdder> map) {
+        Map<ibis.ipl.IbisIdentifier, Long> result = new HashMap<>();
+        for (Entry<ibis.ipl.IbisIdentifier, LongAdder> entry : map.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
         }
+        return result;
     }
 
     // +++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
@@ -510,6 +528,12 @@ public abstract class Ibis implements ibis.ipl.Ibis {
             }
         }
 
+        if (tp.hasCapability(PortType.COMMUNICATION_CONCURRENT_SENDERS)) {
+            if (!SendPort.STATELESS_SERIALIZATIONS.contains(SendPort.serialization(tp))) {
+                throw new IbisConfigurationException("Concurrent senders only support byte, data or compact data serialization");
+            }
+        }
+
         if (cU != null) {
             if (!tp.hasCapability(PortType.CONNECTION_UPCALLS)) {
                 throw new IbisConfigurationException("no connection upcalls requested for this port type");
@@ -629,8 +653,8 @@ public abstract class Ibis implements ibis.ipl.Ibis {
         return result;
     }
 
-    public synchronized long getOutgoingMessageCount() {
-        long outgoingMessageCount = this.outgoingMessageCount;
+    public long getOutgoingMessageCount() {
+        long outgoingMessageCount = this.outgoingMessageCount.sum();
 
         // also add numbers for current send ports
         for (SendPort sendPort : sendPorts.values()) {
@@ -640,8 +664,8 @@ public abstract class Ibis implements ibis.ipl.Ibis {
         return outgoingMessageCount;
     }
 
-    public synchronized long getBytesSent() {
-        long bytesSend = this.bytesSent;
+    public long getBytesSent() {
+        long bytesSend = this.bytesSent.sum();
 
         // also add numbers for current send ports
         for (SendPort sendPort : sendPorts.values()) {
@@ -651,8 +675,8 @@ public abstract class Ibis implements ibis.ipl.Ibis {
         return bytesSend;
     }
 
-    public synchronized long getBytesWritten() {
-        long bytesWritten = this.bytesWritten;
+    public long getBytesWritten() {
+        long bytesWritten = this.bytesWritten.sum();
 
         // also add numbers for current send ports
         for (SendPort sendPort : sendPorts.values()) {
@@ -662,8 +686,8 @@ public abstract class Ibis implements ibis.ipl.Ibis {
         return bytesWritten;
     }
 
-    public synchronized long getIncomingMessageCount() {
-        long incomingMessageCount = this.incomingMessageCount;
+    public long getIncomingMessageCount() {
+        long incomingMessageCount = this.incomingMessageCount.sum();
 
         // also add numbers for current receive ports
         for (ReceivePort receivePort : receivePorts.values()) {
@@ -672,8 +696,8 @@ public abstract class Ibis implements ibis.ipl.Ibis {
         return incomingMessageCount;
     }
 
-    public synchronized long getBytesReceived() {
-        long bytesReceived = this.bytesReceived;
+    public long getBytesReceived() {
+        long bytesReceived = this.bytesReceived.sum();
         // also add numbers for current receive ports
         for (ReceivePort receivePort : receivePorts.values()) {
             bytesReceived += receivePort.getBytesReceived();
@@ -682,8 +706,8 @@ public abstract class Ibis implements ibis.ipl.Ibis {
         return bytesReceived;
     }
 
-    public synchronized long getBytesRead() {
-        long bytesRead = this.bytesRead;
+    public long getBytesRead() {
+        long bytesRead = this.bytesRead.sum();
         // also add numbers for current receive ports
         for (ReceivePort receivePort : receivePorts.values()) {
             bytesRead += receivePort.getBytesRead();
@@ -725,21 +749,43 @@ public abstract class Ibis implements ibis.ipl.Ibis {
     /*
      * @ibis.experimental
      */
-    public synchronized Map<ibis.ipl.IbisIdentifier, Long> getSentBytesPerIbis() {
+    public Map<ibis.ipl.IbisIdentifier, Long> getSentBytesPerIbis() {
         if (sentBytesPerIbis == null) {
             return null;
         }
-        return new HashMap<>(sentBytesPerIbis);
+        return snapshot(sentBytesPerIbis);
     }
 
     /*
      * @ibis.experimental
      */
-    public synchronized Map<ibis.ipl.IbisIdentifier, Long> getReceivedBytesPerIbis() {
+    public Map<ibis.ipl.IbisIdentifier, Long> getReceivedBytesPerIbis() {
         if (receivedBytesPerIbis == null) {
             return null;
         }
-        return new HashMap<>(receivedBytesPerIbis);
+        return snapshot(receivedBytesPerIbis);
+    }
+
+    /*
+     * @ibis.experimental
+     */
+    public Map<String, Map<String, String>> getSendPortStatistics() {
+        Map<String, Map<String, String>> result = new HashMap<>();
+        for (SendPort port : sendPorts.values()) {
+            result.put(port.name, port.managementProperties());
+        }
+        return result;
+    }
+
+    /*
+     * @ibis.experimental
+     */
+    public Map<String, Map<String, String>> getReceivePortStatistics() {
+        Map<String, Map<String, String>> result = new HashMap<>();
+        for (ReceivePort port : receivePorts.values()) {
+            result.put(port.name, port.managementProperties());
+        }
+        return result;
     }
 
     /*
@@ -788,7 +834,7 @@ public abstract class Ibis implements ibis.ipl.Ibis {
     }
 
     @Override
-    public synchronized Map<String, String> managementProperties() {
+    public Map<String, String> managementProperties() {
         Map<String, String> result = new HashMap<>();
 
         // put gathered statistics in the map
@@ -88,6 +88,21 @@ public abstract class Manageable implements ibis.ipl.Manageable {
 
     protected abstract void updateProperties();
 
+    /**
+     * Formats the traffic of a connection for the <code>ConnectionRates</code>
+     * property of a port.
+     *
+     * @param peer     the other side of the connection.
+     * @param messages number of messages.
+     * @param bytes    number of message bytes.
+     * @param nanos    time over which they were counted, in nanoseconds.
+     * @return the formatted traffic.
+     */
+    static String rates(Object peer, long messages, long bytes, long nanos) {
+        double seconds = Math.max(nanos, 1) / 1e9;
+        return String.format("%s: %d messages (%.1f/s), %d bytes (%.1f/s)", peer, messages, messages / seconds, bytes, bytes / seconds);
+    }
+
     @Override
     public void printManagementProperties(PrintStream stream) {
         updateProperties();
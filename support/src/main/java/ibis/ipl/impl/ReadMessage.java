@@ -48,6 +48,13 @@ public class ReadMessage implements ibis.ipl.ReadMessage {
 
     protected boolean finishCalledFromUpcall = false;
 
+    /**
+     * The value of {@link System#nanoTime()} when the message arrived at the
+     * port, or 0 when the implementation does not deliver it through
+     * {@link ReceivePort#messageArrived(ReadMessage)}.
+     */
+    long arrived;
+
     public ReadMessage(SerializationInput in, ReceivePortConnectionInfo info) {
         this.in = in;
         this.info = info;
@@ -19,13 +19,14 @@ package ibis.ipl.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +38,8 @@ import ibis.ipl.MessageUpcall;
 import ibis.ipl.PortType;
 import ibis.ipl.ReceivePortConnectUpcall;
 import ibis.ipl.ReceiveTimedOutException;
+import ibis.util.Histogram;
+import ibis.util.TypedProperties;
 
 /**
  * Implementation of the {@link ibis.ipl.ReceivePort} interface, to be extended
@@ -47,6 +50,13 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
     /** Debugging output. */
     private static final Logger logger = LoggerFactory.getLogger(ReceivePort.class);
 
+    /**
+     * Property for the time in microseconds that a thread that reads from a
+     * connection itself spins until input arrives, before it blocks in the read.
+     * The default is 0, which means no spinning.
+     */
+    public static final String SPIN = "ibis.receiveport.spin";
+
     // Possible results of a connection attempt.
 
     /** Connection attempt accepted. */
@@ -70,7 +80,12 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
     /** Receiveport already has a connection, and ManyToOne is not specified. */
     public static final byte NO_MANY_TO_X = 6;
 
-    final static Set<Thread> threadsInUpcallSet = Collections.synchronizedSet(new HashSet<Thread>());
+    /**
+     * Threads currently running an upcall. Upcall threads may be virtual
+     * threads, which are never reused, so a thread must always be removed again
+     * when its upcall ends.
+     */
+    final static Set<Thread> threadsInUpcallSet = ConcurrentHashMap.newKeySet();
 
     /** The type of this port. */
     public final PortType type;
@@ -133,6 +148,12 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
     /** Properties. */
     protected final Properties properties;
 
+    /**
+     * Time that a thread that reads from a connection itself spins until input
+     * arrives, in nanoseconds, see {@link #SPIN}.
+     */
+    protected final long spinTime;
+
     private long nMessages = 0;
     private long messageBytes = 0;
     private long bytes = 0;
@@ -140,6 +161,18 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
     private long nLostConnections = 0;
     private long nClosedConnections = 0;
 
+    /** Sizes of the messages, in bytes. */
+    private final Histogram messageSizes = new Histogram();
+
+    /**
+     * Times from the arrival of a message until its upcall starts, in
+     * nanoseconds. Includes waiting for the previous message to be finished.
+     */
+    private final Histogram queueDelays = new Histogram();
+
+    /** Durations of the message upcalls, in nanoseconds. */
+    private final Histogram upcallTimes = new Histogram();
+
     private int outstanding; // For connections that have been allowed but are
                              // not
                              // actually present yet.
@@ -176,7 +209,9 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
                 this.properties.setProperty(key, value);
             }
         }
-        if (type.hasCapability(PortType.SERIALIZATION_DATA)) {
+        if (type.hasCapability(PortType.SERIALIZATION_DATA_COMPACT)) {
+            serialization = "compact";
+        } else if (type.hasCapability(PortType.SERIALIZATION_DATA)) {
             serialization = "data";
         } else if (type.hasCapability(PortType.SERIALIZATION_OBJECT_SUN)) {
             serialization = "sun";
@@ -187,6 +222,7 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
         } else {
             serialization = "byte";
         }
+        spinTime = TimeUnit.MICROSECONDS.toNanos(new TypedProperties(this.properties).getLongProperty(SPIN, 0));
         ibis.register(this);
         if (logger.isDebugEnabled()) {
             logger.debug(ibis.ident + ": ReceivePort '" + name + "' created");
@@ -197,6 +233,47 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
         addValidKey("Connections");
         addValidKey("LostConnections");
         addValidKey("ClosedConnections");
+        addValidKey("MessageSize");
+        addValidKey("QueueDelayMicros");
+        addValidKey("UpcallTimeMicros");
+        addValidKey("ConnectionRates");
+    }
+
+    /**
+     * A condition that a spinning thread waits for, see {@link ReceivePort#spin}.
+     */
+    @FunctionalInterface
+    protected interface SpinCondition {
+        /**
+         * Returns whether the condition holds.
+         *
+         * @return whether the condition holds.
+         * @exception IOException is thrown in case of trouble.
+         */
+        boolean holds() throws IOException;
+    }
+
+    /**
+     * Spins with {@link Thread#onSpinWait()} until the specified condition holds,
+     * for at most {@link #spinTime} nanoseconds. When spinning is switched off,
+     * the condition is checked once. Implementations call this before a thread
+     * that reads from a connection itself blocks in the read, because a message
+     * that arrives while the thread spins is handled without the thread being
+     * descheduled and woken up again.
+     *
+     * @param condition the condition, typically whether input is available.
+     * @return whether the condition holds.
+     * @exception IOException is thrown when checking the condition fails.
+     */
+    protected boolean spin(SpinCondition condition) throws IOException {
+        long deadline = System.nanoTime() + spinTime;
+        while (!condition.holds()) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+        return true;
     }
 
     protected ReadMessage createReadMessage(SerializationInput in, ReceivePortConnectionInfo info) {
@@ -563,6 +640,10 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
             }
         }
         msg.setInUpcall(true);
+        long start = System.nanoTime();
+        if (msg.arrived != 0) {
+            queueDelays.record(start - msg.arrived);
+        }
         try {
             // Notify the message that is is processed from an upcall,
             // so that finish() calls can be detected.
@@ -589,7 +670,10 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
             System.exit(1);
 
         } finally {
+            upcallTimes.record(System.nanoTime() - start);
             msg.setInUpcall(false);
+            // The message may have been finished by another thread.
+            threadsInUpcallSet.remove(Thread.currentThread());
         }
 
         if (!msg.isFinished()) {
@@ -602,6 +686,7 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
     }
 
     public void messageArrived(ReadMessage msg) {
+        msg.arrived = System.nanoTime();
         // Wait until the previous message was finished.
         synchronized (this) {
             while (message != null) {
@@ -633,6 +718,12 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
             ports = connectedTo();
             nMessages++;
             messageBytes += cnt;
+            messageSizes.record(cnt);
+            ReceivePortConnectionInfo info = r.getInfo();
+            if (info != null) {
+                info.messages++;
+                info.messageBytes += cnt;
+            }
             message = null;
             threadsInUpcallSet.remove(Thread.currentThread());
             notifyAll();
@@ -718,6 +809,18 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
         setProperty("Messages", "" + nMessages);
         setProperty("MessageBytes", "" + messageBytes);
         setProperty("LostConnections", "" + nLostConnections);
+        setProperty("MessageSize", messageSizes.summary(1));
+        setProperty("QueueDelayMicros", queueDelays.summary(1000));
+        setProperty("UpcallTimeMicros", upcallTimes.summary(1000));
+        long now = System.nanoTime();
+        StringBuilder rates = new StringBuilder();
+        for (ReceivePortConnectionInfo info : connections.values()) {
+            if (rates.length() > 0) {
+                rates.append("; ");
+            }
+            rates.append(rates(info.origin, info.messages, info.messageBytes, now - info.created));
+        }
+        setProperty("ConnectionRates", rates.toString());
     }
 
     @Override
@@ -741,6 +844,13 @@ public abstract class ReceivePort extends Manageable implements ibis.ipl.Receive
             messageBytes = Long.parseLong(value);
         } else if (key.equals("LostConnections")) {
             nLostConnections = Long.parseLong(value);
+        } else if (key.equals("MessageSize")) {
+            // Any value resets the histogram.
+            messageSizes.reset();
+        } else if (key.equals("QueueDelayMicros")) {
+            queueDelays.reset();
+        } else if (key.equals("UpcallTimeMicros")) {
+            upcallTimes.reset();
         }
     }
 
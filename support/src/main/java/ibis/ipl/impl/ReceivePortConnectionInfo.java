@@ -18,13 +18,18 @@
 package ibis.ipl.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ibis.io.BufferedArrayInputStream;
+import ibis.io.CoalescingInputStream;
+import ibis.io.CompressionInputStream;
 import ibis.io.DataInputStream;
 import ibis.io.SerializationFactory;
 import ibis.io.SerializationInput;
+import ibis.ipl.PortType;
 
 /**
  * This class represents the information about a particular sendport/receiveport
@@ -53,10 +58,26 @@ public class ReceivePortConnectionInfo {
      */
     public DataInputStream dataIn;
 
+    /**
+     * The stream on which serialization streams are created: a decompressing
+     * and/or coalescing stream on top of {@link #dataIn} when the port type asks
+     * for compression or coalescing, otherwise {@link #dataIn} itself.
+     */
+    private DataInputStream streamIn;
+
     protected boolean closed = false;
 
     private long cnt = 0;
 
+    /** Number of messages received on this connection, guarded by the port lock. */
+    long messages = 0;
+
+    /** Number of message bytes received on this connection, guarded by the port lock. */
+    long messageBytes = 0;
+
+    /** The value of {@link System#nanoTime()} when this connection was set up. */
+    final long created = System.nanoTime();
+
     /**
      * Constructs a new <code>ReceivePortConnectionInfo</code> with the specified
      * parameters.
@@ -91,6 +112,19 @@ public class ReceivePortConnectionInfo {
         return cnt;
     }
 
+    /**
+     * Returns the number of bytes that can be read from this connection without
+     * blocking, as seen by the streams below the serialization stream. Between
+     * messages, the serialization stream holds no data of the next message, so
+     * this tells whether the next message has started to arrive.
+     *
+     * @return the number of bytes available.
+     * @exception IOException is thrown on error.
+     */
+    protected int available() throws IOException {
+        return streamIn != null ? streamIn.available() : dataIn.available();
+    }
+
     /**
      * This method must be called each time a connected sendport adds a new
      * connection. This new connection may either be to the current receiveport, or
@@ -103,7 +137,20 @@ public class ReceivePortConnectionInfo {
         if (in != null) {
             in.close();
         }
-        in = SerializationFactory.createSerializationInput(port.serialization, dataIn, port.properties);
+        if (streamIn == null) {
+            boolean compressed = port.type.hasCapability(PortType.COMMUNICATION_COMPRESSED);
+            boolean coalescing = port.type.hasCapability(PortType.COMMUNICATION_COALESCING);
+            if (!compressed && !coalescing) {
+                streamIn = dataIn;
+            } else {
+                InputStream s = coalescing ? new CoalescingInputStream(dataIn) : dataIn;
+                if (compressed) {
+                    s = new CompressionInputStream(s);
+                }
+                streamIn = new BufferedArrayInputStream(s);
+            }
+        }
+        in = SerializationFactory.createSerializationInput(port.serialization, streamIn, port.properties);
         message = port.createReadMessage(in, this);
     }
 
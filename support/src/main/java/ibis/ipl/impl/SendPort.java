@@ -17,7 +17,9 @@
 
 package ibis.ipl.impl;
 
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -28,10 +30,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ibis.io.BufferedArrayOutputStream;
+import ibis.io.CoalescingOutputStream;
+import ibis.io.CompressionOutputStream;
 import ibis.io.DataOutputStream;
 import ibis.io.Replacer;
 import ibis.io.SerializationFactory;
@@ -44,6 +55,8 @@ import ibis.ipl.ConnectionsFailedException;
 import ibis.ipl.IbisConfigurationException;
 import ibis.ipl.PortType;
 import ibis.ipl.SendPortDisconnectUpcall;
+import ibis.util.Histogram;
+import ibis.util.ThreadPool;
 import ibis.util.TypedProperties;
 
 /**
@@ -59,11 +72,22 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
 
     private static final String ALLOW_CONN_IN_UPCALL = "ibis.upcall.connections";
 
+    private static final String COALESCING_DELAY = "ibis.coalescing.delay";
+
+    private static final String COALESCING_SIZE = "ibis.coalescing.size";
+
     private static final String[][] propertiesList = new String[][] {
             { ALLOW_COMM_IN_UPCALL, "false",
                     "Boolean: when set, communication is allowed from inside upcalls," + " without first calling finish()." },
             { ALLOW_CONN_IN_UPCALL, "false",
-                    "Boolean: when set, connection setup is allowed from inside upcalls," + " without first calling finish()." }, };
+                    "Boolean: when set, connection setup is allowed from inside upcalls," + " without first calling finish()." },
+            { COALESCING_DELAY, "500",
+                    "Integer: for coalescing port types, the maximum time in microseconds" + " that finished messages are held back." },
+            { COALESCING_SIZE, "8192",
+                    "Integer: for coalescing port types, the number of bytes after which" + " finished messages are no longer held back." }, };
+
+    /** Times the flushes of the held back messages of coalescing sendports. */
+    private static ScheduledThreadPoolExecutor flusher;
 
     /** The type of this port. */
     public final PortType type;
@@ -98,7 +122,37 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
     private int waitingForMessage = 0;
 
     /** Set when this port is closed. */
-    private boolean closed = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Set when multiple threads may build messages concurrently, see
+     * {@link PortType#COMMUNICATION_CONCURRENT_SENDERS}.
+     */
+    private final boolean concurrentSenders;
+
+    /** The per-thread messages, when concurrent senders are supported. */
+    private final ThreadLocal<ConcurrentWriteMessage> threadMessages;
+
+    /**
+     * Finished messages of concurrent senders that are not written to the
+     * connection(s) yet. This queue is lock-free, so that finishing threads do not
+     * have to wait for each other.
+     */
+    private final ConcurrentLinkedQueue<ConcurrentWriteMessage.Finished> finishedMessages;
+
+    /**
+     * Held by the thread that writes finished messages of concurrent senders to
+     * the connection(s), and by connection setup and teardown, so that they do not
+     * interfere. It is always taken before the lock of this port, so that the
+     * writing thread can do the bookkeeping of each message it writes.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /** Set when there is at least one connection. */
+    private volatile boolean hasReceivers = false;
+
+    /** The number of alive messages of concurrent senders. */
+    private final AtomicInteger concurrentMessagesAlive = new AtomicInteger(0);
 
     /** The Ibis instance of this send port. */
     protected Ibis ibis;
@@ -112,6 +166,28 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
     /** The underlying data output stream. */
     protected DataOutputStream dataOut;
 
+    /**
+     * The stream on which serialization streams are created: a compressing
+     * and/or coalescing stream on top of {@link #dataOut} when the port type asks
+     * for compression or coalescing, otherwise {@link #dataOut} itself.
+     */
+    private DataOutputStream streamOut;
+
+    /**
+     * The stream that holds back the flushes of finished messages when the port
+     * type asks for coalescing, otherwise <code>null</code>.
+     */
+    private CoalescingOutputStream coalescer;
+
+    /** Maximum time that finished messages are held back, in microseconds. */
+    private final long coalescingDelay;
+
+    /** Number of bytes after which finished messages are no longer held back. */
+    private final int coalescingSize;
+
+    /** Set when a flush of the held back messages is scheduled. */
+    private boolean flushScheduled = false;
+
     /** The write message for this port. */
     protected final WriteMessage w;
 
@@ -159,6 +235,15 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
     /** Counts the number of connections that were explicitly closed. */
     private long nClosedConnections = 0;
 
+    /** Sizes of the messages, in bytes. */
+    private final Histogram messageSizes = new Histogram();
+
+    /**
+     * Times from {@link #newMessage()} until the message is finished, in
+     * nanoseconds. For concurrent senders, until the message is queued or written.
+     */
+    private final Histogram messageLatencies = new Histogram();
+
     /**
      * When set, allow newMessage calls in message upcalls without first calling
      * finish().
@@ -190,6 +275,7 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
         this.name = name;
         this.ident = ibis.createSendPortIdentifier(name, ibis.ident);
         this.connectionDowncalls = type.hasCapability(PortType.CONNECTION_DOWNCALLS);
+        this.concurrentSenders = type.hasCapability(PortType.COMMUNICATION_CONCURRENT_SENDERS);
         this.connectUpcall = connectUpcall;
         this.properties = ibis.properties();
         if (properties != null) {
@@ -215,6 +301,15 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
         TypedProperties tp = new TypedProperties(this.properties);
         allowCommunicationInUpcall = tp.getBooleanProperty(ALLOW_COMM_IN_UPCALL, false);
         allowConnectionsInUpcall = tp.getBooleanProperty(ALLOW_CONN_IN_UPCALL, false);
+        coalescingDelay = tp.getLongProperty(COALESCING_DELAY, 500);
+        coalescingSize = tp.getIntProperty(COALESCING_SIZE, 8192);
+        if (concurrentSenders) {
+            threadMessages = new ThreadLocal<>();
+            finishedMessages = new ConcurrentLinkedQueue<>();
+        } else {
+            threadMessages = null;
+            finishedMessages = null;
+        }
         ibis.register(this);
         if (logger.isDebugEnabled()) {
             logger.debug(ibis.identifier() + ": Sendport '" + name + "' created");
@@ -227,6 +322,9 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
         addValidKey("Connections");
         addValidKey("LostConnections");
         addValidKey("ClosedConnections");
+        addValidKey("MessageSize");
+        addValidKey("MessageLatencyMicros");
+        addValidKey("ConnectionRates");
     }
 
     /**
@@ -282,6 +380,17 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
         setProperty("Messages", "" + nMessages);
         setProperty("MessageBytes", "" + messageBytes);
         setProperty("Bytes", "" + bytes);
+        setProperty("MessageSize", messageSizes.summary(1));
+        setProperty("MessageLatencyMicros", messageLatencies.summary(1000));
+        long now = System.nanoTime();
+        StringBuilder rates = new StringBuilder();
+        for (SendPortConnectionInfo info : receivers.values()) {
+            if (rates.length() > 0) {
+                rates.append("; ");
+            }
+            rates.append(info.rates(nMessages, messageBytes, now));
+        }
+        setProperty("ConnectionRates", rates.toString());
     }
 
     @Override
@@ -303,10 +412,23 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
             nConnections = Long.parseLong(value);
         } else if (key.equals("Messages")) {
             nMessages = Long.parseLong(value);
+            restartRates();
         } else if (key.equals("MessageBytes")) {
             messageBytes = Long.parseLong(value);
+            restartRates();
         } else if (key.equals("LostConnections")) {
             nLostConnections = Long.parseLong(value);
+        } else if (key.equals("MessageSize")) {
+            // Any value resets the histogram.
+            messageSizes.reset();
+        } else if (key.equals("MessageLatencyMicros")) {
+            messageLatencies.reset();
+        }
+    }
+
+    private synchronized void restartRates() {
+        for (SendPortConnectionInfo info : receivers.values()) {
+            info.startRates(nMessages, messageBytes);
         }
     }
 
@@ -327,20 +449,41 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
         dataOut.resetBytesWritten();
     }
 
-    private void createOut() throws IOException {
-        String serialization;
-        if (type.hasCapability(PortType.SERIALIZATION_DATA)) {
-            serialization = "data";
+    /**
+     * The serializations that keep no state from one message to the next. The
+     * messages of concurrent senders are serialized by a stream per thread, but
+     * read from a single stream at the receiver, so they are restricted to these.
+     */
+    static final Set<String> STATELESS_SERIALIZATIONS = Set.of("byte", "data", "compact");
+
+    private String serialization() {
+        return serialization(type);
+    }
+
+    /**
+     * Returns the name of the serialization that is used for the specified port
+     * type.
+     *
+     * @param type the port type.
+     * @return the name of the serialization.
+     */
+    static String serialization(PortType type) {
+        if (type.hasCapability(PortType.SERIALIZATION_DATA_COMPACT)) {
+            return "compact";
+        } else if (type.hasCapability(PortType.SERIALIZATION_DATA)) {
+            return "data";
         } else if (type.hasCapability(PortType.SERIALIZATION_OBJECT_SUN)) {
-            serialization = "sun";
+            return "sun";
         } else if (type.hasCapability(PortType.SERIALIZATION_OBJECT_IBIS)) {
-            serialization = "ibis";
+            return "ibis";
         } else if (type.hasCapability(PortType.SERIALIZATION_OBJECT)) {
-            serialization = "object";
-        } else {
-            serialization = "byte";
+            return "object";
         }
-        out = SerializationFactory.createSerializationOutput(serialization, dataOut, properties);
+        return "byte";
+    }
+
+    private void createOut() throws IOException {
+        out = SerializationFactory.createSerializationOutput(serialization(), streamOut, properties);
         if (replacer != null) {
             out.setReplacer(replacer);
         }
@@ -396,7 +539,16 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
     }
 
     @Override
-    public synchronized void connect(ibis.ipl.ReceivePortIdentifier receiver, long timeout, boolean fillTimeout) throws ConnectionFailedException {
+    public void connect(ibis.ipl.ReceivePortIdentifier receiver, long timeout, boolean fillTimeout) throws ConnectionFailedException {
+        lockWriters();
+        try {
+            connectLocked(receiver, timeout, fillTimeout);
+        } finally {
+            unlockWriters();
+        }
+    }
+
+    private synchronized void connectLocked(ibis.ipl.ReceivePortIdentifier receiver, long timeout, boolean fillTimeout) throws ConnectionFailedException {
 
         if (!allowConnectionsInUpcall && ReceivePort.threadsInUpcallSet.contains(Thread.currentThread())) {
             throw new ConnectionFailedException("Connection attempt in upcall is not allowed", receiver);
@@ -410,6 +562,17 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
             throw new ConnectionFailedException("A message was alive while adding a new connection", receiver);
         }
 
+        if (concurrentSenders) {
+            // Messages finished before the connect must not go to the new receiver.
+            writeQueuedMessages();
+        }
+
+        try {
+            flushCoalesced();
+        } catch (IOException e) {
+            throw new ConnectionFailedException("Could not write pending messages", receiver, e);
+        }
+
         if (timeout < 0) {
             throw new ConnectionFailedException("connect(): timeout must be >= 0", receiver);
         }
@@ -456,7 +619,16 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
     }
 
     @Override
-    public synchronized void connect(ibis.ipl.ReceivePortIdentifier[] ports, long timeout, boolean fillTimeout) throws ConnectionsFailedException {
+    public void connect(ibis.ipl.ReceivePortIdentifier[] ports, long timeout, boolean fillTimeout) throws ConnectionsFailedException {
+        lockWriters();
+        try {
+            connectLocked(ports, timeout, fillTimeout);
+        } finally {
+            unlockWriters();
+        }
+    }
+
+    private synchronized void connectLocked(ibis.ipl.ReceivePortIdentifier[] ports, long timeout, boolean fillTimeout) throws ConnectionsFailedException {
 
         ArrayList<ibis.ipl.ReceivePortIdentifier> succes = new ArrayList<>();
 
@@ -582,6 +754,10 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
         if (!allowCommunicationInUpcall && ReceivePort.threadsInUpcallSet.contains(Thread.currentThread())) {
             throw new IOException("Communication in upcall is not allowed");
         }
+        if (concurrentSenders) {
+            return newConcurrentMessage();
+        }
+        long start = System.nanoTime();
         synchronized (this) {
             if (closed) {
                 throw new IOException("newMessage call on closed sendport");
@@ -613,15 +789,51 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
         }
         announceNewMessage();
         w.initMessage(out);
+        w.started = start;
         return w;
     }
 
+    /**
+     * Implements {@link #newMessage()} for sendports with concurrent senders. No
+     * lock is taken: each thread gets its own message, which is only handed to the
+     * connection(s) when it is finished.
+     *
+     * @return the message of the current thread.
+     * @exception IOException is thrown in case of trouble.
+     */
+    private WriteMessage newConcurrentMessage() throws IOException {
+        if (closed) {
+            throw new IOException("newMessage call on closed sendport");
+        }
+        long start = System.nanoTime();
+        ConcurrentWriteMessage m = threadMessages.get();
+        if (m == null) {
+            m = new ConcurrentWriteMessage(this, serialization(), replacer);
+            threadMessages.set(m);
+        } else if (m.isAlive()) {
+            throw new IOException("newMessage call while this thread still has a message alive");
+        }
+        concurrentMessagesAlive.incrementAndGet();
+        m.initMessage();
+        m.started = start;
+        return m;
+    }
+
     @Override
     public void close() throws IOException {
+        lockWriters();
+        try {
+            closeLocked();
+        } finally {
+            unlockWriters();
+        }
+    }
+
+    private void closeLocked() throws IOException {
         ReceivePortIdentifier[] ports;
         synchronized (this) {
             ports = receivers.keySet().toArray(new ReceivePortIdentifier[receivers.size()]);
-            boolean alive = receivers.size() > 0 && aMessageIsAlive;
+            boolean alive = receivers.size() > 0 && (aMessageIsAlive || concurrentMessagesAlive.get() > 0);
             if (alive) {
                 throw new ConnectionClosedException("Closed a sendport port while a message is alive!");
             }
@@ -632,6 +844,9 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
             if (closed) {
                 throw new ConnectionClosedException("Port already closed");
             }
+            if (concurrentSenders) {
+                writeQueuedMessages();
+            }
             closed = true;
             nClosedConnections += ports.length;
         }
@@ -679,7 +894,16 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
     }
 
     @Override
-    public synchronized void disconnect(ibis.ipl.ReceivePortIdentifier receiver) throws IOException {
+    public void disconnect(ibis.ipl.ReceivePortIdentifier receiver) throws IOException {
+        lockWriters();
+        try {
+            disconnectLocked(receiver);
+        } finally {
+            unlockWriters();
+        }
+    }
+
+    private synchronized void disconnectLocked(ibis.ipl.ReceivePortIdentifier receiver) throws IOException {
         if (logger.isDebugEnabled()) {
             logger.debug("Sendport '" + this.name + "' disconnecting from " + receiver.name() + " at " + receiver.ibisIdentifier());
         }
@@ -687,6 +911,10 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
         if (aMessageIsAlive) {
             throw new IOException("Trying to disconnect while a message is alive!");
         }
+        if (concurrentSenders) {
+            writeQueuedMessages();
+        }
+        flushCoalesced();
         SendPortConnectionInfo c = removeInfo(r);
         if (c == null) {
             throw new IOException("Cannot disconnect from " + r + " since we are not connected with it");
@@ -751,7 +979,9 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
      * @param info the associated connection information.
      */
     private synchronized void addInfo(ReceivePortIdentifier id, SendPortConnectionInfo info) {
+        info.startRates(nMessages, messageBytes);
         receivers.put(id, info);
+        hasReceivers = true;
     }
 
     /**
@@ -761,7 +991,9 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
      * @return the removed connection.
      */
     protected synchronized SendPortConnectionInfo removeInfo(ReceivePortIdentifier id) {
-        return receivers.remove(id);
+        SendPortConnectionInfo info = receivers.remove(id);
+        hasReceivers = !receivers.isEmpty();
+        return info;
     }
 
     /**
@@ -794,7 +1026,12 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
                 }
                 nMessages++;
                 messageBytes += cnt;
+                messageSizes.record(cnt);
+                if (!concurrentSenders) {
+                    messageLatencies.record(System.nanoTime() - w.started);
+                }
                 bytes = prevBytes + totalWritten();
+                scheduleFlush();
                 if (collectedExceptions != null) {
                     IOException e = collectedExceptions;
                     collectedExceptions = null;
@@ -806,6 +1043,215 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
         }
     }
 
+    /**
+     * Called by a {@link ConcurrentWriteMessage} when it is finished. The message
+     * is queued, and the queue is written to the connection(s) by the first thread
+     * that finds no other thread doing so. Other threads return immediately, their
+     * message will be written by the thread that is already busy.
+     *
+     * @param m the finished message.
+     * @return the result of the message, which is completed when the message has
+     *         been written, or with the exception that prevented that.
+     */
+    CompletableFuture<Long> finishConcurrentMessage(ConcurrentWriteMessage.Finished m) {
+        finishedMessages.add(m);
+        concurrentMessagesAlive.decrementAndGet();
+        writeQueuedMessagesIfIdle();
+        return m.done;
+    }
+
+    /**
+     * Called by a {@link ConcurrentWriteMessage} when it is finished with an
+     * exception. Nothing of the message has been sent.
+     *
+     * @param m the message.
+     * @param e the exception.
+     */
+    void abandonConcurrentMessage(ConcurrentWriteMessage m, IOException e) {
+        concurrentMessagesAlive.decrementAndGet();
+        finishMessage(m, e);
+    }
+
+    /**
+     * Takes {@link #writeLock} for concurrent senders, so that no queued messages
+     * are written until {@link #unlockWriters()} is called. Must be called before
+     * taking the lock of this port.
+     */
+    private void lockWriters() {
+        if (concurrentSenders) {
+            writeLock.lock();
+        }
+    }
+
+    /**
+     * Releases {@link #writeLock} for concurrent senders, and writes the messages
+     * that were queued in the mean time, because their threads found the lock
+     * taken and left them to us.
+     */
+    private void unlockWriters() {
+        if (concurrentSenders) {
+            writeLock.unlock();
+            writeQueuedMessagesIfIdle();
+        }
+    }
+
+    /**
+     * Writes the queued messages of concurrent senders, unless another thread is
+     * already doing so.
+     */
+    private void writeQueuedMessagesIfIdle() {
+        // Re-check the queue after giving up the lock, because a message may have
+        // been added after our last poll but before we gave it up.
+        while (!finishedMessages.isEmpty() && writeLock.tryLock()) {
+            try {
+                writeQueuedMessages();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes the queued messages of concurrent senders to the connection(s), each
+     * one as a separate message. The caller holds {@link #writeLock}.
+     */
+    private void writeQueuedMessages() {
+        ConcurrentWriteMessage.Finished m;
+        while ((m = finishedMessages.poll()) != null) {
+            writeQueuedMessage(m);
+        }
+    }
+
+    /**
+     * Writes the specified queued message, does its bookkeeping, and completes its
+     * result. A failure only ends up at the message that caused it.
+     */
+    private void writeQueuedMessage(ConcurrentWriteMessage.Finished m) {
+        if (closed) {
+            failQueuedMessage(m, new IOException("Sendport closed before the message could be sent"));
+            return;
+        }
+        if (!hasReceivers) {
+            failQueuedMessage(m, new IOException("Sendport is not connected"));
+            return;
+        }
+        try {
+            if (out == null) {
+                createOut();
+            }
+            announceNewMessage();
+            // Flush the serialization stream, so that the message header ends up
+            // in the data stream before the message itself.
+            out.flush();
+            streamOut.writeArray(m.data);
+            if (finishedMessages.isEmpty()) {
+                flushMessage(streamOut);
+            }
+        } catch (Throwable e) {
+            IOException x = e instanceof IOException ? (IOException) e : new IOException("Unexpected exception", e);
+            handleSendException(m.message, x);
+            failQueuedMessage(m, x);
+            return;
+        }
+        try {
+            finishMessage(m.message, m.count);
+        } catch (IOException e) {
+            m.done.completeExceptionally(e);
+            return;
+        } finally {
+            messageLatencies.record(System.nanoTime() - m.started);
+        }
+        m.done.complete(m.count);
+    }
+
+    private void failQueuedMessage(ConcurrentWriteMessage.Finished m, IOException e) {
+        finishMessage(m.message, e);
+        m.done.completeExceptionally(e);
+    }
+
+    /**
+     * Flushes the specified stream at the end of a message. For coalescing port
+     * types, the data stays in the data output stream until enough of it has been
+     * collected, or until the flush scheduled by {@link #finishMessage(WriteMessage, long)}.
+     *
+     * @param s the serialization stream, or the stream below it.
+     * @throws IOException when an IO error occurs.
+     */
+    void flushMessage(Flushable s) throws IOException {
+        if (coalescer == null) {
+            s.flush();
+            return;
+        }
+        coalescer.setCoalescing(true);
+        try {
+            s.flush();
+        } finally {
+            coalescer.setCoalescing(false);
+        }
+    }
+
+    /**
+     * Schedules a flush of the messages that are held back, if there are any and
+     * no flush is scheduled yet. The caller holds the lock of this port.
+     */
+    private void scheduleFlush() {
+        if (coalescer == null || flushScheduled || !coalescer.hasPending()) {
+            return;
+        }
+        flushScheduled = true;
+        // The flush itself may block on a slow receiver, so it is not done in
+        // the timer thread, which is shared by all coalescing ports.
+        flusher().schedule(() -> ThreadPool.createNew(this::flushTimedOut, "SendPort coalescing flush"), coalescingDelay,
+                TimeUnit.MICROSECONDS);
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor flusher() {
+        if (flusher == null) {
+            flusher = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "SendPort coalescing flusher");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return flusher;
+    }
+
+    /**
+     * Flushes the messages that are held back. When a message is alive, its
+     * finish schedules a new flush.
+     */
+    private void flushTimedOut() {
+        lockWriters();
+        try {
+            synchronized (this) {
+                flushScheduled = false;
+                if (closed || aMessageIsAlive) {
+                    return;
+                }
+                try {
+                    flushCoalesced();
+                } catch (IOException e) {
+                    handleSendException(w, e);
+                }
+            }
+        } finally {
+            unlockWriters();
+        }
+    }
+
+    /**
+     * Flushes the messages that are held back, if any, so that they do not end up
+     * at connections that are set up or closed later on. The caller holds the
+     * lock of this port, and no message is alive.
+     *
+     * @throws IOException when an IO error occurs.
+     */
+    private void flushCoalesced() throws IOException {
+        if (coalescer != null && coalescer.hasPending()) {
+            coalescer.flush();
+        }
+    }
+
     /**
      * Implements the SendPort side of a message finish with exception. This method
      * is called by the {@link WriteMessage#finish(java.io.IOException)}
@@ -906,6 +1352,21 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
      *                a new serialization stream is created.
      */
     public void initStream(DataOutputStream dataOut) {
+        boolean compressed = type.hasCapability(PortType.COMMUNICATION_COMPRESSED);
+        boolean coalescing = type.hasCapability(PortType.COMMUNICATION_COALESCING);
+        if (!compressed && !coalescing) {
+            streamOut = dataOut;
+        } else if (streamOut == null || this.dataOut != dataOut) {
+            OutputStream s = dataOut;
+            if (coalescing) {
+                coalescer = new CoalescingOutputStream(dataOut, coalescingSize);
+                s = coalescer;
+            }
+            if (compressed) {
+                s = new CompressionOutputStream(s, properties);
+            }
+            streamOut = new BufferedArrayOutputStream(s);
+        }
         this.dataOut = dataOut;
         prevBytes += totalWritten();
         resetWritten();
@@ -964,6 +1425,54 @@ public abstract class SendPort extends Manageable implements ibis.ipl.SendPort {
      */
     protected abstract void closePort() throws IOException;
 
+    /**
+     * Starts sending the data written sofar to the current message, without
+     * waiting until it is sent. This method is called by the
+     * {@link WriteMessage#send()} implementation. The default implementation
+     * does nothing, so that the data is sent by {@link #syncSend(long)}.
+     * Implementations that can send in the background should redefine this
+     * method, together with {@link #syncSend(long)} and {@link #whenSent(long)}.
+     *
+     * @return a ticket for the send.
+     * @exception IOException is thrown in case of trouble.
+     */
+    protected long startSend() throws IOException {
+        return 0;
+    }
+
+    /**
+     * Blocks until the data of the send with the specified ticket, and of all
+     * sends before it, has been sent. This method is called by the
+     * {@link WriteMessage#sync(int)} implementation. The default implementation
+     * flushes the serialization stream.
+     *
+     * @param ticket the ticket, as returned by {@link #startSend()}.
+     * @exception IOException is thrown in case of trouble.
+     */
+    protected void syncSend(long ticket) throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Returns a future that completes when the data of the send with the
+     * specified ticket has been sent. This method is called by the
+     * {@link WriteMessage#finishAsync()} implementation. The default
+     * implementation calls {@link #syncSend(long)}.
+     *
+     * @param ticket the ticket, as returned by {@link #startSend()}.
+     * @return the future.
+     */
+    protected CompletableFuture<Void> whenSent(long ticket) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            syncSend(ticket);
+            result.complete(null);
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
     /**
      * This method is called when a {@link WriteMessage} method receives an
      * <code>IOException</code>. The implementation should try and find out which
@@ -27,6 +27,15 @@ public abstract class SendPortConnectionInfo {
     /** The sendport of the connection. */
     public final SendPort port;
 
+    /** Message count of the sendport when this connection was set up. */
+    private long startMessages;
+
+    /** Message byte count of the sendport when this connection was set up. */
+    private long startBytes;
+
+    /** The value of {@link System#nanoTime()} when this connection was set up. */
+    private long startTime;
+
     /**
      * Constructs a <code>SendPortConnectionInfo</code> with the specified
      * parameters.
@@ -43,6 +52,24 @@ public abstract class SendPortConnectionInfo {
         return "unknown";
     }
 
+    /**
+     * Starts measuring the traffic of this connection. All messages of a sendport
+     * go to all its connections, so the traffic of this connection is the traffic
+     * of the sendport since this call.
+     *
+     * @param messages the message count of the sendport.
+     * @param bytes    the message byte count of the sendport.
+     */
+    void startRates(long messages, long bytes) {
+        startMessages = messages;
+        startBytes = bytes;
+        startTime = System.nanoTime();
+    }
+
+    String rates(long messages, long bytes, long now) {
+        return Manageable.rates(target, messages - startMessages, bytes - startBytes, now - startTime);
+    }
+
     /**
      * Should close this particular connection.
      */
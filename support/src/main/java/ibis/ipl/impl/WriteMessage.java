@@ -19,6 +19,8 @@ package ibis.ipl.impl;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import ibis.io.SerializationOutput;
 
@@ -38,6 +40,12 @@ public class WriteMessage implements ibis.ipl.WriteMessage {
 
     protected long before;
 
+    /** The value of {@link System#nanoTime()} when the message was created. */
+    long started;
+
+    /** The ticket of the last send, as returned by {@link SendPort#startSend()}. */
+    private long lastTicket;
+
     protected WriteMessage(SendPort port) {
         this.port = port;
     }
@@ -48,7 +56,7 @@ public class WriteMessage implements ibis.ipl.WriteMessage {
         this.before = port.bytesWritten();
     }
 
-    private final void checkNotFinished() throws IOException {
+    protected final void checkNotFinished() throws IOException {
         if (isFinished) {
             throw new IOException("Operating on a message that was already finished");
         }
@@ -62,10 +70,16 @@ public class WriteMessage implements ibis.ipl.WriteMessage {
     @Override
     public int send() throws IOException {
         checkNotFinished();
+        try {
+            lastTicket = port.startSend();
+            return (int) lastTicket;
+        } catch (Throwable e) {
+            throwException(e);
+        }
         return 0;
     }
 
-    private void throwException(Throwable e) throws IOException {
+    protected void throwException(Throwable e) throws IOException {
         IOException ex;
         if (e instanceof IOException) {
             ex = (IOException) e;
@@ -88,12 +102,22 @@ public class WriteMessage implements ibis.ipl.WriteMessage {
     public void sync(int ticket) throws IOException {
         checkNotFinished();
         try {
-            out.flush();
+            port.syncSend(ticket(ticket));
         } catch (Throwable e) {
             throwException(e);
         }
     }
 
+    /**
+     * Returns the port ticket that the specified user ticket was obtained from.
+     * User tickets are the low 32 bits of the port tickets. They are widened
+     * relative to the ticket of the last send, so that they still match after
+     * the low 32 bits wrap.
+     */
+    private long ticket(int ticket) {
+        return lastTicket - ((int) lastTicket - ticket);
+    }
+
     @Override
     public void flush() throws IOException {
         checkNotFinished();
@@ -408,7 +432,7 @@ public class WriteMessage implements ibis.ipl.WriteMessage {
             throwException(e);
         }
         try {
-            out.flush();
+            port.flushMessage(out::flush);
         } catch (Throwable e) {
             throwException(e);
         }
@@ -418,6 +442,48 @@ public class WriteMessage implements ibis.ipl.WriteMessage {
         return retval;
     }
 
+    /**
+     * Finishes the message after starting to send it, and completes the result
+     * once the sendport reports that the data has been sent.
+     */
+    @Override
+    public CompletableFuture<Long> finishAsync() {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        CompletableFuture<Void> sent;
+        try {
+            checkNotFinished();
+            long ticket = 0;
+            try {
+                out.reset();
+                ticket = port.startSend();
+            } catch (Throwable e) {
+                throwException(e);
+            }
+            // Obtained before the port is released for a next message.
+            sent = port.whenSent(ticket);
+        } catch (IOException e) {
+            finish(e);
+            result.completeExceptionally(e);
+            return result;
+        }
+        isFinished = true;
+        long retval = bytesWritten();
+        try {
+            port.finishMessage(this, retval);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        sent.whenComplete((v, e) -> {
+            if (e == null) {
+                result.complete(retval);
+            } else {
+                result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            }
+        });
+        return result;
+    }
+
     @Override
     public void finish(IOException e) {
         if (isFinished) {
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.registry;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out sequence numbers locally, from blocks of consecutive numbers that
+ * are reserved from a sequencer, so that only one in every block size numbers
+ * costs a round trip. The numbers of one Ibis increase, and no number is handed
+ * out twice, but numbers of different Ibises interleave per block rather than
+ * in the order in which they were asked for, and the unused numbers of an Ibis
+ * that leaves are never handed out. With a block size of 1 every number is
+ * obtained from the sequencer, which gives numbers without gaps.
+ */
+public final class SequenceLeases {
+
+    /**
+     * Reserves blocks of sequence numbers.
+     */
+    public interface Sequencer {
+        /**
+         * Reserves the specified number of consecutive sequence numbers.
+         *
+         * @param name  the name of the sequencer.
+         * @param count the number of sequence numbers.
+         * @return the first reserved sequence number.
+         * @throws IOException when the numbers could not be reserved.
+         */
+        long reserve(String name, int count) throws IOException;
+    }
+
+    /** The unused part of the last block of a sequencer. */
+    private static final class Lease {
+        long next;
+        long end;
+    }
+
+    private final int blockSize;
+
+    private final Sequencer sequencer;
+
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a <code>SequenceLeases</code>.
+     *
+     * @param blockSize number of sequence numbers reserved at a time.
+     * @param sequencer where the blocks are reserved.
+     */
+    public SequenceLeases(int blockSize, Sequencer sequencer) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("sequence number block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.sequencer = sequencer;
+    }
+
+    /**
+     * Returns the next sequence number of the specified sequencer.
+     *
+     * @param name the name of the sequencer.
+     * @return the sequence number.
+     * @throws IOException when a new block could not be reserved.
+     */
+    public long next(String name) throws IOException {
+        if (blockSize == 1) {
+            return sequencer.reserve(name, 1);
+        }
+        Lease lease = leases.get(name);
+        if (lease == null) {
+            lease = leases.computeIfAbsent(name, n -> new Lease());
+        }
+        // Reserve under the lock, so that the blocks are used in order.
+        synchronized (lease) {
+            if (lease.next == lease.end) {
+                lease.next = sequencer.reserve(name, blockSize);
+                lease.end = lease.next + blockSize;
+            }
+            return lease.next++;
+        }
+    }
+}
@@ -16,23 +16,67 @@
 package ibis.ipl.registry.central;
 
 import java.util.ArrayList;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * The event history of a pool. Event times are consecutive integers, so events
+ * are stored in a ring buffer indexed by their time, which makes looking up an
+ * event a constant time operation. Events older than the minimum time set with
+ * {@link #setMinimum(int)} are discarded, and the buffer shrinks again when most
+ * of it has been purged.
+ */
 public class EventList {
 
     private static final Logger logger = LoggerFactory.getLogger(EventList.class);
 
-    private final SortedSet<Event> events;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final Event[] EMPTY = new Event[0];
 
+    /**
+     * The events, event <code>t</code> is stored at index
+     * <code>t &amp; (events.length - 1)</code>. The length is a power of two.
+     */
+    private Event[] events;
+
+    /** No event with a time below this one is stored. */
     private int minimum;
 
+    /** No event with this time or above is stored. */
+    private int end;
+
     public EventList() {
-        events = new TreeSet<>();
+        events = new Event[INITIAL_CAPACITY];
         minimum = 0;
+        end = 0;
+    }
+
+    private int index(int time) {
+        return time & (events.length - 1);
+    }
+
+    /**
+     * Moves the events to a buffer that can hold all times from the minimum up
+     * to (but not including) the specified time.
+     */
+    private void resize(int low, int high) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < high - low) {
+            capacity <<= 1;
+        }
+        if (capacity == events.length) {
+            return;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("resizing event list from " + events.length + " to " + capacity);
+        }
+        Event[] old = events;
+        events = new Event[capacity];
+        for (int time = Math.max(minimum, low); time < end; time++) {
+            events[index(time)] = old[time & (old.length - 1)];
+        }
     }
 
     /**
@@ -43,84 +87,82 @@ public class EventList {
      * @return the specified event, or null if it is not found.
      */
     public Event get(int time) {
-        if (logger.isDebugEnabled()) {
-            logger.debug("getting event " + time);
-        }
-        for (Event event : events) {
-            if (event.getTime() == time) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("getting event " + time + ", returning " + event);
-                }
-                return event;
-            }
-            if (event.getTime() > time) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("getting event " + time + ", returning <null>");
-                }
-                return null;
-            }
+        Event result = null;
+        if (time >= minimum && time < end) {
+            result = events[index(time)];
         }
         if (logger.isDebugEnabled()) {
-            logger.debug("getting event " + time + ", returning <null>");
+            logger.debug("getting event " + time + ", returning " + result);
         }
-        return null;
+        return result;
     }
 
+    /**
+     * Returns the first consecutive run of events with a time of at least the
+     * specified start time. The run is copied out of the ring buffer, because
+     * callers use it after releasing the pool lock, while the buffer may be
+     * purged, or wrap around and reuse the slots. The copy costs no more than
+     * sending the events, which is what the callers do with it.
+     *
+     * @param start the start time.
+     * @return the events, in order.
+     */
     public Event[] getList(int start) {
         if (logger.isDebugEnabled()) {
             logger.debug("getting events from " + start);
         }
-        ArrayList<Event> result = new ArrayList<>();
-
-        for (Event event : events) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("considering " + event);
-            }
-            int time = event.getTime();
-            if (time >= start) {
-                if (result.isEmpty()) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("adding " + event);
-                    }
-                    result.add(event);
-                } else {
-                    Event previous = result.get(result.size() - 1);
-                    if (time != (previous.getTime() + 1)) {
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("NOT adding " + event + " time should be " + (previous.getTime() + 1));
-                        }
-                        return result.toArray(new Event[0]);
-                    }
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("adding " + event);
-                    }
-                    result.add(event);
-                }
-            }
+        int first = Math.max(start, minimum);
+        while (first < end && events[index(first)] == null) {
+            first++;
+        }
+        int last = first;
+        while (last < end && events[index(last)] != null) {
+            last++;
         }
-        return result.toArray(new Event[0]);
+        if (first == last) {
+            return EMPTY;
+        }
+        Event[] result = new Event[last - first];
+        int from = index(first);
+        int count = Math.min(result.length, events.length - from);
+        System.arraycopy(events, from, result, 0, count);
+        System.arraycopy(events, 0, result, count, result.length - count);
+        return result;
     }
 
     public Event[] getSignalEvents(int from, int to) {
         ArrayList<Event> result = new ArrayList<>();
 
-        for (Event event : events) {
-            if (event.getTime() > to) {
-                // no more events will have a time >= from and <= to
-                return result.toArray(new Event[0]);
-            }
-
-            if (event.getType() == Event.SIGNAL && event.getTime() >= from) {
+        int last = Math.min(to + 1, end);
+        for (int time = Math.max(from, minimum); time < last; time++) {
+            Event event = events[index(time)];
+            if (event != null && event.getType() == Event.SIGNAL) {
                 result.add(event);
             }
         }
 
-        return result.toArray(new Event[0]);
+        return result.toArray(EMPTY);
     }
 
     public void add(Event... newEvents) {
         for (Event event : newEvents) {
-            events.add(event);
+            int time = event.getTime();
+            if (time < minimum) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("not adding event older than " + minimum + ": " + event);
+                }
+                continue;
+            }
+            if (time - minimum >= events.length) {
+                resize(minimum, time + 1);
+            }
+            int i = index(time);
+            if (events[i] == null) {
+                events[i] = event;
+            }
+            if (time >= end) {
+                end = time + 1;
+            }
             if (logger.isDebugEnabled()) {
                 logger.debug("adding event to list: " + event + ", list now " + toString());
             }
@@ -128,26 +170,34 @@ public class EventList {
     }
 
     public void setMinimum(int time) {
-        minimum = time;
         if (logger.isDebugEnabled()) {
             logger.debug("purging upto " + time);
         }
-        while (!events.isEmpty() && events.first().getTime() < time) {
-            Event first = events.first();
-            if (logger.isDebugEnabled()) {
-                logger.debug("removing " + first);
+        if (time < minimum) {
+            if (end - time > events.length) {
+                resize(time, end);
             }
-            events.remove(first);
+            minimum = time;
+            return;
+        }
+        for (int t = minimum; t < Math.min(time, end); t++) {
+            events[index(t)] = null;
+        }
+        minimum = time;
+        if (end < minimum) {
+            end = minimum;
+        }
+        // Give memory back after a purge, but leave some room to grow.
+        if (events.length > INITIAL_CAPACITY && (end - minimum) < events.length / 4) {
+            resize(minimum, minimum + 2 * (end - minimum));
         }
     }
 
     public int getNextRequiredEvent() {
         int result = minimum;
 
-        for (Event event : events) {
-            if (event.getTime() == result + 1) {
-                result = result + 1;
-            }
+        while (get(result + 1) != null) {
+            result = result + 1;
         }
 
         if (logger.isDebugEnabled()) {
@@ -159,12 +209,15 @@ public class EventList {
 
     @Override
     public String toString() {
-        String message = "eventList: ";
-        for (Event event : events) {
-            message += event + " ";
+        StringBuilder message = new StringBuilder("eventList: ");
+        for (int time = minimum; time < end; time++) {
+            Event event = events[index(time)];
+            if (event != null) {
+                message.append(event).append(' ');
+            }
         }
 
-        return message;
+        return message.toString();
     }
 
 }
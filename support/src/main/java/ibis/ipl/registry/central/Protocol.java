@@ -57,8 +57,21 @@ public final class Protocol {
 
     public static final byte OPCODE_GET_TOKEN = 16;
 
-    public static final int NR_OF_OPCODES = 17;
+    public static final byte OPCODE_SESSION = 17;
+
+    /** Reserves a block of sequence numbers: like SEQUENCE_NR, with a count. */
+    public static final byte OPCODE_SEQUENCE_BLOCK = 18;
+
+    public static final int NR_OF_OPCODES = 19;
 
     public static final String[] OPCODE_NAMES = { "JOIN", "LEAVE", "GOSSIP", "ELECT", "SEQUENCE_NR", "DEAD", "MAYBE_DEAD", "SIGNAL", "PING", "PUSH",
-            "BROADCAST", "FORWARD", "GET_STATE", "HEARTBEAT", "TERMINATE", "ADD_TOKENS", "GET_TOKEN" };
+            "BROADCAST", "FORWARD", "GET_STATE", "HEARTBEAT", "TERMINATE", "ADD_TOKENS", "GET_TOKEN", "SESSION", "SEQUENCE_BLOCK" };
+
+    // frames sent by the server on a session
+
+    /** Reply to a request of the client, followed by a long result. */
+    public static final byte SESSION_REPLY = 0;
+
+    /** New events, followed by the minimum event time of the pool. */
+    public static final byte SESSION_EVENTS = 1;
 }
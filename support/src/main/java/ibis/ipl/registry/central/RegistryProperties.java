@@ -42,10 +42,16 @@ public class RegistryProperties {
 
     public static final String PEER_BOOTSTRAP = PREFIX + "peer.bootstrap";
 
+    public static final String SESSION = PREFIX + "session";
+
     public static final String CLIENT_CONNECT_TIMEOUT = PREFIX + "client.connect.timeout";
 
     public static final String SERVER_CONNECT_TIMEOUT = PREFIX + "server.connect.timeout";
 
+    public static final String SERVER_MAX_SESSIONS = PREFIX + "server.max.sessions";
+
+    public static final String SEQUENCE_BLOCK_SIZE = PREFIX + "sequence.block.size";
+
     public static final String STATISTICS = PREFIX + "statistics";
 
     public static final String STATISTICS_INTERVAL = PREFIX + "statistics.interval";
@@ -69,12 +75,22 @@ public class RegistryProperties {
 
             { PEER_BOOTSTRAP, "true", "Boolean: bootstrap with peers, not just with the server" },
 
+            { SESSION, "true", "Boolean: keep a connection to the server open for heartbeats, sequence numbers and events, "
+                    + "instead of setting up a connection for each (not used with a broadcast tree)" },
+
             { PURGE_HISTORY, "false", "Boolean: purge history when not needed anymore" },
 
+            { SEQUENCE_BLOCK_SIZE, "1", "Int: number of sequence numbers reserved at the server at a time. Larger blocks save "
+                    + "round trips, but numbers of different Ibises are then no longer handed out in the order they were asked for" },
+
             { CLIENT_CONNECT_TIMEOUT, "300", "Int(seconds): how long do clients attempt to connect to the server and peers before giving up" },
 
             { SERVER_CONNECT_TIMEOUT, "10", "Int(seconds): how long does the server attempt to connect to a client before giving up" },
 
+            { SERVER_MAX_SESSIONS, "1000", "Int: maximum number of sessions the server keeps open at a time. Each session uses a server "
+                    + "thread for as long as the member lives. Members beyond this limit are refused a session, and set up a "
+                    + "connection for each heartbeat, sequence number request and event push instead" },
+
             { STATISTICS, "false", "Boolean: gather per-pool statistics at the server and save them to a file" },
 
             { STATISTICS_INTERVAL, "60", "Int(seconds): how often do we send statistics to the server" },
@@ -48,6 +48,12 @@ final class CommunicationHandler implements Runnable {
 
     private static final int MAX_THREADS = 10;
 
+    /** First delay (ms) before a new session is opened after a failure. */
+    private static final long SESSION_RETRY_MIN = 1000;
+
+    /** Longest delay (ms) before a new session is opened after a failure. */
+    private static final long SESSION_RETRY_MAX = 60000;
+
     private static final Logger logger = LoggerFactory.getLogger(CommunicationHandler.class);
 
     // private final byte[] version;
@@ -78,6 +84,22 @@ final class CommunicationHandler implements Runnable {
 
     private final boolean tree;
 
+    private final boolean useSession;
+
+    // persistent connection to the server, if any
+
+    private final Object sessionLock = new Object();
+
+    private ServerSession session = null;
+
+    // set when the server refused a session, or does not know about them
+    private boolean sessionRefused = false;
+
+    // no session is opened before this time, after a failure
+    private long nextSessionAttempt = 0;
+
+    private long sessionRetryDelay = 0;
+
     // bootstrap data
 
     private IbisIdentifier identifier;
@@ -117,6 +139,9 @@ final class CommunicationHandler implements Runnable {
             peerBootstrap = properties.getBooleanProperty(RegistryProperties.PEER_BOOTSTRAP);
         }
 
+        // events are forwarded along the tree, not pushed to every member
+        useSession = properties.getBooleanProperty(RegistryProperties.SESSION) && !tree;
+
         timeout = properties.getIntProperty(RegistryProperties.CLIENT_CONNECT_TIMEOUT) * 1000;
 
         String clientID = this.properties.getProperty(Ibis.ID_PROPERTY);
@@ -388,6 +413,98 @@ final class CommunicationHandler implements Runnable {
         }
     }
 
+    /**
+     * Returns the session with the server, and opens one if there is none.
+     * After a session failed, or could not be opened, no new one is tried for a
+     * while, and the caller sets up a connection of its own instead. If the
+     * server refused the session, no new one is tried at all.
+     *
+     * @return the session, or <code>null</code> if sessions are not used, or no
+     *         session could be opened.
+     */
+    private ServerSession getSession() {
+        if (!useSession) {
+            return null;
+        }
+
+        synchronized (sessionLock) {
+            if (session != null) {
+                if (!session.isClosed()) {
+                    return session;
+                }
+                session = null;
+                sessionFailed();
+            }
+
+            if (sessionRefused || System.currentTimeMillis() < nextSessionAttempt) {
+                return null;
+            }
+
+            IbisIdentifier identifier;
+            int joinTime;
+            synchronized (this) {
+                identifier = this.identifier;
+                joinTime = this.joinTime;
+            }
+
+            if (identifier == null || pool.isStopped()) {
+                return null;
+            }
+
+            boolean requestBootstrap = !peerBootstrap && !pool.isInitialized();
+
+            Connection connection;
+            try {
+                connection = new Connection(serverAddress, timeout, true, virtualSocketFactory);
+            } catch (IOException e) {
+                if (logger.isInfoEnabled()) {
+                    logger.info(identifier + ": could not connect to server for session", e);
+                }
+                sessionFailed();
+                return null;
+            }
+
+            try {
+                session = new ServerSession(connection, pool, identifier, requestBootstrap, joinTime, timeout);
+                sessionRetryDelay = 0;
+                if (logger.isDebugEnabled()) {
+                    logger.debug("opened session with server");
+                }
+            } catch (IOException e) {
+                // An older server does not know about sessions, and a busy
+                // one refuses them. Use a connection per request from now on.
+                if (logger.isInfoEnabled()) {
+                    logger.info(identifier + ": server refused session, not using sessions", e);
+                }
+                sessionRefused = true;
+            }
+            return session;
+        }
+    }
+
+    // called with the session lock held
+    private void sessionFailed() {
+        sessionRetryDelay = sessionRetryDelay == 0 ? SESSION_RETRY_MIN : Math.min(2 * sessionRetryDelay, SESSION_RETRY_MAX);
+        nextSessionAttempt = System.currentTimeMillis() + sessionRetryDelay;
+    }
+
+    /**
+     * Opens the session with the server, so that events are received over it
+     * from now on.
+     */
+    void startSession() {
+        getSession();
+    }
+
+    private void closeSession() {
+        synchronized (sessionLock) {
+            if (session != null) {
+                session.close();
+                session = null;
+            }
+        }
+    }
+
     public void signal(String signal, ibis.ipl.IbisIdentifier... ibisses) throws IOException {
         long start = System.currentTimeMillis();
 
@@ -452,8 +569,18 @@ final class CommunicationHandler implements Runnable {
 
     }
 
-    public long getSeqno(String name) throws IOException {
+    /**
+     * Reserves consecutive sequence numbers at the server. A single number is
+     * asked for with the old request, which all servers understand.
+     *
+     * @param name  the name of the sequencer.
+     * @param count the number of sequence numbers.
+     * @return the first reserved sequence number.
+     * @throws IOException when the server could not be reached.
+     */
+    public long getSeqno(String name, int count) throws IOException {
         long start = System.currentTimeMillis();
+        byte opcode = count == 1 ? Protocol.OPCODE_SEQUENCE_NR : Protocol.OPCODE_SEQUENCE_BLOCK;
 
         if (pool.isStopped()) {
             throw new IOException("cannot get sequence number, registry already stopped");
@@ -462,13 +589,34 @@ final class CommunicationHandler implements Runnable {
         if (logger.isDebugEnabled()) {
             logger.debug("getting sequence number");
         }
+
+        ServerSession session = getSession();
+        if (session != null) {
+            try {
+                long result = session.getSequenceNumbers(name, count);
+                heartbeat.resetDeadlines();
+                if (statistics != null) {
+                    statistics.add(opcode, System.currentTimeMillis() - start, 0, 0, false);
+                }
+                return result;
+            } catch (IOException e) {
+                // fall back to a new connection
+                if (logger.isDebugEnabled()) {
+                    logger.debug("could not get sequence number over session", e);
+                }
+            }
+        }
+
         Connection connection = new Connection(serverAddress, timeout, true, virtualSocketFactory);
 
         try {
             connection.out().writeByte(Protocol.MAGIC_BYTE);
-            connection.out().writeByte(Protocol.OPCODE_SEQUENCE_NR);
+            connection.out().writeByte(opcode);
             getIdentifier().writeTo(connection.out());
             connection.out().writeUTF(name);
+            if (count != 1) {
+                connection.out().writeInt(count);
+            }
             connection.out().flush();
 
             connection.getAndCheckReply();
@@ -484,7 +632,7 @@ final class CommunicationHandler implements Runnable {
             heartbeat.resetDeadlines();
             long end = System.currentTimeMillis();
             if (statistics != null) {
-                statistics.add(Protocol.OPCODE_SEQUENCE_NR, end - start, connection.read(), connection.written(), false);
+                statistics.add(opcode, end - start, connection.read(), connection.written(), false);
             }
 
             return result;
@@ -591,6 +739,22 @@ final class CommunicationHandler implements Runnable {
             logger.debug("sending heartbeat to server");
         }
 
+        ServerSession session = getSession();
+        if (session != null) {
+            try {
+                session.heartbeat(pool.getNextRequiredEvent());
+                if (statistics != null) {
+                    statistics.add(Protocol.OPCODE_HEARTBEAT, System.currentTimeMillis() - start, 0, 0, false);
+                }
+                return true;
+            } catch (IOException e) {
+                // fall back to a new connection
+                if (logger.isDebugEnabled()) {
+                    logger.debug("could not send heartbeat over session", e);
+                }
+            }
+        }
+
         Connection connection = null;
         try {
             connection = new Connection(serverAddress, timeout, true, virtualSocketFactory);
@@ -630,6 +794,9 @@ final class CommunicationHandler implements Runnable {
 
         long start = System.currentTimeMillis();
 
+        // no more events needed
+        closeSession();
+
         Connection connection = new Connection(serverAddress, timeout, true, virtualSocketFactory);
 
         try {
@@ -1174,6 +1341,8 @@ final class CommunicationHandler implements Runnable {
     }
 
     void end() {
+        closeSession();
+
         try {
             serverSocket.close();
         } catch (Exception e) {
@@ -31,6 +31,7 @@ import ibis.ipl.IbisConfigurationException;
 import ibis.ipl.NoSuchPropertyException;
 import ibis.ipl.RegistryEventHandler;
 import ibis.ipl.impl.IbisIdentifier;
+import ibis.ipl.registry.SequenceLeases;
 import ibis.ipl.registry.central.Event;
 import ibis.ipl.registry.central.Protocol;
 import ibis.ipl.registry.central.RegistryProperties;
@@ -57,6 +58,9 @@ public final class Registry extends ibis.ipl.registry.Registry {
     // client-side representation of the Pool the local Ibis is in.
     private final Pool pool;
 
+    // hands out sequence numbers from blocks reserved at the server.
+    private final SequenceLeases sequenceLeases;
+
     private final IbisIdentifier identifier;
 
     private final IbisCapabilities capabilities;
@@ -146,11 +150,15 @@ public final class Registry extends ibis.ipl.registry.Registry {
 
             communicationHandler.bootstrap();
 
+            communicationHandler.startSession();
+
         } catch (RemoteException e) {
             // error caused by server "complaining"
             throw new IbisConfigurationException(e.getMessage());
         }
 
+        sequenceLeases = new SequenceLeases(properties.getIntProperty(RegistryProperties.SEQUENCE_BLOCK_SIZE), communicationHandler::getSeqno);
+
         // start writing statistics
         if (statistics != null) {
             statistics.setID(identifier.getID() + "@" + identifier.location(), pool.getName());
@@ -349,7 +357,7 @@ public final class Registry extends ibis.ipl.registry.Registry {
             throw new IOException("cannot send signals, registry already stopped");
         }
 
-        return communicationHandler.getSeqno(name);
+        return sequenceLeases.next(name);
     }
 
     @Override
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.registry.central.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.ipl.impl.IbisIdentifier;
+import ibis.ipl.registry.central.Event;
+import ibis.ipl.registry.central.Protocol;
+import ibis.ipl.support.Connection;
+import ibis.util.ThreadPool;
+
+/**
+ * A connection to the server that is kept open for as long as this Ibis is a
+ * member of the pool. Heartbeats and sequence number requests are sent over
+ * it, and the server pushes new events over it, instead of setting up a new
+ * connection for each of these.
+ */
+final class ServerSession implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerSession.class);
+
+    private final Connection connection;
+
+    private final Pool pool;
+
+    private final long timeout;
+
+    /** Only one request can be outstanding at a time. */
+    private final Object requestLock = new Object();
+
+    private boolean closed = false;
+
+    private boolean replied = false;
+
+    private long reply;
+
+    ServerSession(Connection connection, Pool pool, IbisIdentifier identifier, boolean requestBootstrap, int joinTime, long timeout)
+            throws IOException {
+        this.connection = connection;
+        this.pool = pool;
+        this.timeout = timeout;
+
+        try {
+            connection.out().writeByte(Protocol.MAGIC_BYTE);
+            connection.out().writeByte(Protocol.OPCODE_SESSION);
+            identifier.writeTo(connection.out());
+            connection.out().writeBoolean(requestBootstrap);
+            connection.out().writeInt(joinTime);
+            connection.out().writeInt(pool.getNextRequiredEvent());
+            connection.out().flush();
+
+            connection.getAndCheckReply();
+
+            if (requestBootstrap) {
+                pool.init(connection.in());
+            }
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+
+        ThreadPool.createNew(this, "registry session");
+    }
+
+    /**
+     * Sends a heartbeat to the server, and tells it which events this Ibis has.
+     *
+     * @param nextRequiredEvent the next event this Ibis needs.
+     * @throws IOException if the session failed.
+     */
+    void heartbeat(int nextRequiredEvent) throws IOException {
+        synchronized (requestLock) {
+            startRequest();
+            connection.out().writeByte(Protocol.OPCODE_HEARTBEAT);
+            connection.out().writeInt(nextRequiredEvent);
+            connection.out().flush();
+            waitForReply();
+        }
+    }
+
+    long getSequenceNumbers(String name, int count) throws IOException {
+        synchronized (requestLock) {
+            startRequest();
+            if (count == 1) {
+                connection.out().writeByte(Protocol.OPCODE_SEQUENCE_NR);
+                connection.out().writeUTF(name);
+            } else {
+                connection.out().writeByte(Protocol.OPCODE_SEQUENCE_BLOCK);
+                connection.out().writeUTF(name);
+                connection.out().writeInt(count);
+            }
+            connection.out().flush();
+            return waitForReply();
+        }
+    }
+
+    private synchronized void startRequest() throws IOException {
+        if (closed) {
+            throw new IOException("session closed");
+        }
+        replied = false;
+    }
+
+    private synchronized long waitForReply() throws IOException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!replied && !closed) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                close();
+                throw new IOException("timeout waiting for reply on session");
+            }
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                // IGNORE
+            }
+        }
+        if (!replied) {
+            throw new IOException("session closed");
+        }
+        return reply;
+    }
+
+    private synchronized void gotReply(long result) {
+        reply = result;
+        replied = true;
+        notifyAll();
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        connection.close();
+    }
+
+    /**
+     * Reads replies and events sent by the server.
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                byte type = connection.in().readByte();
+
+                switch (type) {
+                case Protocol.SESSION_REPLY:
+                    gotReply(connection.in().readLong());
+                    break;
+                case Protocol.SESSION_EVENTS:
+                    int count = connection.in().readInt();
+                    if (count < 0) {
+                        throw new IOException("negative event count");
+                    }
+                    Event[] events = new Event[count];
+                    for (int i = 0; i < count; i++) {
+                        events[i] = new Event(connection.in());
+                    }
+                    int minEventTime = connection.in().readInt();
+
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("received " + count + " events over session");
+                    }
+                    pool.newEventsReceived(events);
+                    if (minEventTime != -1) {
+                        pool.purgeHistoryUpto(minEventTime);
+                    }
+                    break;
+                default:
+                    throw new IOException("unknown frame type in session: " + type);
+                }
+            }
+        } catch (EOFException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("session closed by server");
+            }
+        } catch (IOException e) {
+            if (!isClosed() && logger.isInfoEnabled()) {
+                logger.info("session with server failed", e);
+            }
+        } finally {
+            close();
+        }
+    }
+}
@@ -95,7 +95,7 @@ public final class CentralRegistryService extends Thread implements Service, Reg
         pools = new TreeMap<>();
 
         // start handling connections
-        handler = new ServerConnectionHandler(this, socketFactory, policy);
+        handler = new ServerConnectionHandler(this, socketFactory, policy, typedProperties.getIntProperty(RegistryProperties.SERVER_MAX_SESSIONS));
 
         ThreadPool.createNew(this, "Central Registry Service");
 
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.ipl.registry.central.server;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.ipl.registry.central.Event;
+import ibis.ipl.registry.central.Member;
+import ibis.ipl.registry.central.Protocol;
+import ibis.ipl.support.Connection;
+
+/**
+ * A connection that a member keeps open to the server. The member sends its
+ * heartbeats and sequence number requests over it, and the server pushes new
+ * events over it as they happen, so neither side needs to set up a connection
+ * for these. Only the events the member has not been sent yet are pushed.
+ */
+final class ClientSession {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientSession.class);
+
+    private final Pool pool;
+
+    private final Member member;
+
+    private final Connection connection;
+
+    /** Time of the first event not sent to the member yet. */
+    private int sentTime;
+
+    private boolean closed = false;
+
+    ClientSession(Pool pool, Member member, Connection connection, int nextRequiredEvent) {
+        this.pool = pool;
+        this.member = member;
+        this.connection = connection;
+        this.sentTime = nextRequiredEvent;
+    }
+
+    Pool getPool() {
+        return pool;
+    }
+
+    Member getMember() {
+        return member;
+    }
+
+    /**
+     * Sends the events the member has not been sent yet.
+     *
+     * @throws IOException if the events could not be sent.
+     */
+    synchronized void push() throws IOException {
+        if (closed) {
+            throw new IOException("session closed");
+        }
+        Event[] events = pool.getEvents(sentTime);
+        if (events.length == 0) {
+            return;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("pushing " + events.length + " events to " + member + " over session");
+        }
+        DataOutputStream out = connection.out();
+        out.writeByte(Protocol.SESSION_EVENTS);
+        out.writeInt(events.length);
+        for (Event event : events) {
+            event.writeTo(out);
+        }
+        out.writeInt(pool.getMinEventTime());
+        out.flush();
+        sentTime = events[events.length - 1].getTime() + 1;
+    }
+
+    private synchronized void reply(long result) throws IOException {
+        connection.out().writeByte(Protocol.SESSION_REPLY);
+        connection.out().writeLong(result);
+        connection.out().flush();
+    }
+
+    /**
+     * Handles requests of the member until it closes the session.
+     */
+    void run() {
+        try {
+            while (true) {
+                byte opcode = connection.in().readByte();
+
+                switch (opcode) {
+                case Protocol.OPCODE_HEARTBEAT:
+                    // The member also reports which events it has, so that
+                    // the history can be purged.
+                    int nextRequiredEvent = connection.in().readInt();
+                    if (nextRequiredEvent > member.getCurrentTime()) {
+                        member.setCurrentTime(nextRequiredEvent);
+                    }
+                    reply(0);
+                    break;
+                case Protocol.OPCODE_SEQUENCE_NR:
+                    String name = connection.in().readUTF();
+                    reply(pool.getSequenceNumber(name));
+                    break;
+                case Protocol.OPCODE_SEQUENCE_BLOCK:
+                    name = connection.in().readUTF();
+                    int count = connection.in().readInt();
+                    if (count <= 0) {
+                        throw new IOException("invalid sequence number count: " + count);
+                    }
+                    reply(pool.getSequenceNumbers(name, count));
+                    break;
+                default:
+                    throw new IOException("unknown opcode in session: " + opcode);
+                }
+                pool.gotHeartbeat(member.getIbis());
+            }
+        } catch (EOFException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("session of " + member + " closed by peer");
+            }
+        } catch (IOException e) {
+            if (!isClosed() && logger.isInfoEnabled()) {
+                logger.info("session of " + member + " failed", e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        pool.removeSession(this);
+        connection.close();
+    }
+}
@@ -23,6 +23,8 @@ import java.util.Formatter;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +45,13 @@ import ibis.ipl.support.Connection;
 import ibis.smartsockets.virtual.VirtualSocketFactory;
 import ibis.util.ThreadPool;
 
+/**
+ * The server side of a pool. Membership, elections and the event history
+ * change together, and are protected by the lock on the pool object, so that
+ * {@link #writeState(DataOutputStream, int)} sees a consistent snapshot.
+ * Heartbeats, membership checks, sequence numbers and tokens are handled
+ * outside of this lock, so that they do not contend with joins and elections.
+ */
 final class Pool implements Runnable {
 
     public static final int BOOTSTRAP_LIST_SIZE = 25;
@@ -66,14 +75,23 @@ final class Pool implements Runnable {
 
     private final long heartbeatInterval;
 
-    private int currentEventTime;
+    private volatile int currentEventTime;
 
-    private int minEventTime;
+    private volatile int minEventTime;
 
     private final ElectionSet elections;
 
     private final MemberSet members;
 
+    /**
+     * The members by their ID. Only changed together with {@link #members}, but
+     * may be read without holding the pool lock.
+     */
+    private final ConcurrentHashMap<String, Member> memberIndex;
+
+    /** Open sessions of members, by member ID. */
+    private final ConcurrentHashMap<String, ClientSession> sessions;
+
     private final OndemandEventPusher pusher;
 
     private final String name;
@@ -101,19 +119,19 @@ final class Pool implements Runnable {
     // so the server can print them if so requested
     private final int[] eventStats;
 
-    private final Map<String, Integer> sequencers;
+    private final ConcurrentHashMap<String, AtomicLong> sequencers;
 
     private final Map<String, Integer> tokens;
 
     private int nextID;
 
-    private boolean ended = false;
+    private volatile boolean ended = false;
 
-    private boolean closed = false;
+    private volatile boolean closed = false;
 
     private Event closeEvent = null;
 
-    private boolean terminated = false;
+    private volatile boolean terminated = false;
 
     private Event terminateEvent = null;
 
@@ -148,7 +166,9 @@ final class Pool implements Runnable {
         currentEventTime = 0;
         minEventTime = 0;
         nextID = 0;
-        sequencers = new HashMap<>();
+        sequencers = new ConcurrentHashMap<>();
+        memberIndex = new ConcurrentHashMap<>();
+        sessions = new ConcurrentHashMap<>();
         tokens = new HashMap<>();
 
         events = new EventList();
@@ -201,11 +221,11 @@ final class Pool implements Runnable {
         }
     }
 
-    synchronized int getEventTime() {
+    int getEventTime() {
         return currentEventTime;
     }
 
-    synchronized int getMinEventTime() {
+    int getMinEventTime() {
         return minEventTime;
     }
 
@@ -249,8 +269,8 @@ final class Pool implements Runnable {
         }
     }
 
-    synchronized int getSize() {
-        return members.size();
+    int getSize() {
+        return memberIndex.size();
     }
 
     synchronized ibis.ipl.Location[] getLocations() {
@@ -276,15 +296,15 @@ final class Pool implements Runnable {
      *
      * @see ibis.ipl.impl.registry.central.SuperPool#ended()
      */
-    synchronized boolean hasEnded() {
+    boolean hasEnded() {
         return ended;
     }
 
-    synchronized boolean isClosed() {
+    boolean isClosed() {
         return closed;
     }
 
-    synchronized boolean hasTerminated() {
+    boolean hasTerminated() {
         return terminated;
     }
 
@@ -341,6 +361,7 @@ final class Pool implements Runnable {
         member.updateTime();
 
         members.add(member);
+        memberIndex.put(identifier.getID(), member);
 
         if (logger.isDebugEnabled()) {
             logger.debug("members now: " + members);
@@ -434,6 +455,7 @@ final class Pool implements Runnable {
      * IbisIdentifier )
      */
     synchronized void leave(IbisIdentifier identifier) throws Exception {
+        memberIndex.remove(identifier.getID());
         if (members.remove(identifier) == null) {
             // May happen if it was declared dead before. So, no exception.
             // --Ceriel
@@ -480,6 +502,7 @@ final class Pool implements Runnable {
      * IbisIdentifier )
      */
     synchronized void dead(IbisIdentifier identifier, Exception exception) {
+        memberIndex.remove(identifier.getID());
         Member member = members.remove(identifier);
         if (member == null) {
             // member removed already
@@ -516,6 +539,21 @@ final class Pool implements Runnable {
         pusher.enqueue(member);
     }
 
+    Member getMember(IbisIdentifier identifier) {
+        return memberIndex.get(identifier.getID());
+    }
+
+    void addSession(ClientSession session) {
+        ClientSession old = sessions.put(session.getMember().getIbis().getID(), session);
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    void removeSession(ClientSession session) {
+        sessions.remove(session.getMember().getIbis().getID(), session);
+    }
+
     synchronized Event[] getEvents(int startTime) {
         return events.getList(startTime);
     }
@@ -554,18 +592,17 @@ final class Pool implements Runnable {
         return election.getWinner();
     }
 
-    synchronized long getSequenceNumber(String name) {
-        Integer currentValue = sequencers.get(name);
-
-        if (currentValue == null) {
-            currentValue = 0;
-        }
-
-        int result = currentValue;
-
-        sequencers.put(name, currentValue + 1);
+    long getSequenceNumber(String name) {
+        return getSequenceNumbers(name, 1);
+    }
 
-        return result;
+    /**
+     * Reserves consecutive sequence numbers.
+     *
+     * @return the first one.
+     */
+    long getSequenceNumbers(String name, int count) {
+        return sequencers.computeIfAbsent(name, n -> new AtomicLong()).getAndAdd(count);
     }
 
     /*
@@ -574,9 +611,9 @@ final class Pool implements Runnable {
      * @seeibis.ipl.impl.registry.central.SuperPool#maybeDead(ibis.ipl.impl.
      * IbisIdentifier)
      */
-    synchronized void maybeDead(IbisIdentifier identifier) {
+    void maybeDead(IbisIdentifier identifier) {
 
-        Member member = members.get(identifier);
+        Member member = memberIndex.get(identifier.getID());
 
         if (member != null) {
             if (member.getTime() > (System.currentTimeMillis() - RECENTLY_SEEN_THRESHOLD)) {
@@ -590,7 +627,9 @@ final class Pool implements Runnable {
 
                 member.clearTime();
                 // wake up checker thread, this suspect now (among) the oldest
-                notifyAll();
+                synchronized (this) {
+                    notifyAll();
+                }
             }
         } else if (logger.isDebugEnabled()) {
             logger.debug("got maybeDead for " + identifier + " which is not in pool");
@@ -712,6 +751,20 @@ final class Pool implements Runnable {
                 return;
             }
         }
+
+        ClientSession session = sessions.get(member.getIbis().getID());
+        if (session != null) {
+            try {
+                session.push();
+                return;
+            } catch (IOException e) {
+                // fall back to a new connection
+                if (logger.isDebugEnabled()) {
+                    logger.debug("cannot push events to " + member + " over session", e);
+                }
+                session.close();
+            }
+        }
         if (logger.isDebugEnabled()) {
             if (force) {
                 logger.debug("forced pushing entries to " + member);
@@ -865,8 +918,8 @@ final class Pool implements Runnable {
         return null;
     }
 
-    synchronized void gotHeartbeat(IbisIdentifier identifier) {
-        Member member = members.get(identifier);
+    void gotHeartbeat(IbisIdentifier identifier) {
+        Member member = memberIndex.get(identifier.getID());
 
         if (logger.isDebugEnabled()) {
             logger.debug("updating last seen time for " + member);
@@ -885,8 +938,8 @@ final class Pool implements Runnable {
         return members.getRandom();
     }
 
-    synchronized boolean isMember(Member member) {
-        return members.contains(member);
+    boolean isMember(Member member) {
+        return memberIndex.containsKey(member.getIbis().getID());
     }
 
     synchronized Member[] getMembers() {
@@ -1000,6 +1053,12 @@ final class Pool implements Runnable {
     }
 
     public String getToken(String name2) {
+        synchronized (tokens) {
+            return takeToken(name2);
+        }
+    }
+
+    private String takeToken(String name2) {
         Integer currentValue = tokens.get(name2);
 
         if (currentValue == null) {
@@ -1016,12 +1075,9 @@ final class Pool implements Runnable {
     }
 
     public void addTokens(String name2, int count) {
-        Integer currentValue = tokens.get(name2);
-
-        if (currentValue != null) {
-            count += currentValue;
+        synchronized (tokens) {
+            tokens.merge(name2, count, Integer::sum);
         }
-        tokens.put(name2, count);
     }
 
 }
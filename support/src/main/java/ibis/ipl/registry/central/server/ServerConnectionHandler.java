@@ -51,11 +51,23 @@ final class ServerConnectionHandler implements Runnable {
 
     private int maxNrOfThreads = 0;
 
+    /**
+     * Maximum number of sessions served at a time. A session keeps a thread of
+     * its own for as long as the member lives, as connections are blocking.
+     * Sessions beyond this are refused, and those members use a connection per
+     * request instead.
+     */
+    private final int maxSessions;
+
+    private int currentNrOfSessions = 0;
+
     private ControlPolicy policy;
 
-    ServerConnectionHandler(CentralRegistryService server, VirtualSocketFactory connectionFactory, ControlPolicy policy) throws IOException {
+    ServerConnectionHandler(CentralRegistryService server, VirtualSocketFactory connectionFactory, ControlPolicy policy, int maxSessions)
+            throws IOException {
         this.server = server;
         this.socketFactory = connectionFactory;
+        this.maxSessions = maxSessions;
 
         serverSocket = socketFactory.createServerSocket(Protocol.VIRTUAL_PORT, CONNECTION_BACKLOG, null);
         this.policy = policy;
@@ -221,9 +233,15 @@ final class ServerConnectionHandler implements Runnable {
 
     }
 
-    private Pool handleGetSequenceNumber(Connection connection) throws Exception {
+    private Pool handleGetSequenceNumber(Connection connection, boolean block) throws Exception {
         IbisIdentifier identifier = new IbisIdentifier(connection.in());
         String name = connection.in().readUTF();
+        int count = block ? connection.in().readInt() : 1;
+
+        if (count <= 0) {
+            connection.closeWithError("invalid sequence number count: " + count);
+            throw new Exception("invalid sequence number count: " + count);
+        }
 
         Pool pool = server.getPool(identifier.poolName());
 
@@ -232,7 +250,7 @@ final class ServerConnectionHandler implements Runnable {
             throw new Exception("pool " + identifier.poolName() + " not found");
         }
 
-        long number = pool.getSequenceNumber(name);
+        long number = pool.getSequenceNumbers(name, count);
 
         connection.sendOKReply();
 
@@ -385,6 +403,41 @@ final class ServerConnectionHandler implements Runnable {
 
     }
 
+    private ClientSession handleSession(Connection connection) throws Exception {
+        IbisIdentifier identifier = new IbisIdentifier(connection.in());
+        boolean requestBootstrap = connection.in().readBoolean();
+        int joinTime = connection.in().readInt();
+        int nextRequiredEvent = connection.in().readInt();
+
+        Pool pool = server.getPool(identifier.poolName());
+
+        if (pool == null) {
+            connection.closeWithError("pool not found");
+            throw new Exception("pool " + identifier.poolName() + " not found");
+        }
+
+        Member member = pool.getMember(identifier);
+
+        if (member == null) {
+            connection.closeWithError("not a member of the pool");
+            throw new Exception(identifier + " not a member of pool " + identifier.poolName());
+        }
+
+        connection.sendOKReply();
+        if (requestBootstrap) {
+            pool.writeState(connection.out(), joinTime);
+        }
+
+        ClientSession session = new ClientSession(pool, member, connection, nextRequiredEvent);
+        pool.addSession(session);
+        // also flushes the bootstrap data
+        session.push();
+        connection.out().flush();
+
+        pool.gotHeartbeat(identifier);
+        return session;
+    }
+
     private Pool handleTerminate(Connection connection) throws Exception {
         IbisIdentifier source = new IbisIdentifier(connection.in());
 
@@ -430,6 +483,18 @@ final class ServerConnectionHandler implements Runnable {
         notifyAll();
     }
 
+    private synchronized boolean sessionStarted() {
+        if (currentNrOfSessions >= maxSessions) {
+            return false;
+        }
+        currentNrOfSessions++;
+        return true;
+    }
+
+    private synchronized void sessionEnded() {
+        currentNrOfSessions--;
+    }
+
     @Override
     public void run() {
         Connection connection = null;
@@ -466,6 +531,7 @@ final class ServerConnectionHandler implements Runnable {
 
         byte opcode = 0;
         Pool pool = null;
+        ClientSession session = null;
         try {
             byte magic = connection.in().readByte();
 
@@ -490,7 +556,10 @@ final class ServerConnectionHandler implements Runnable {
                 pool = handleElect(connection);
                 break;
             case Protocol.OPCODE_SEQUENCE_NR:
-                pool = handleGetSequenceNumber(connection);
+                pool = handleGetSequenceNumber(connection, false);
+                break;
+            case Protocol.OPCODE_SEQUENCE_BLOCK:
+                pool = handleGetSequenceNumber(connection, true);
                 break;
             case Protocol.OPCODE_DEAD:
                 pool = handleDead(connection);
@@ -516,6 +585,20 @@ final class ServerConnectionHandler implements Runnable {
             case Protocol.OPCODE_GET_TOKEN:
                 pool = handleGetToken(connection);
                 break;
+            case Protocol.OPCODE_SESSION:
+                if (!sessionStarted()) {
+                    connection.closeWithError("too many sessions");
+                    break;
+                }
+                try {
+                    session = handleSession(connection);
+                } finally {
+                    if (session == null) {
+                        sessionEnded();
+                    }
+                }
+                pool = session.getPool();
+                break;
             default:
                 logger.error("unknown opcode: " + opcode);
             }
@@ -524,7 +607,9 @@ final class ServerConnectionHandler implements Runnable {
             connection.closeWithError("Server: " + e.getMessage());
             logger.error("error on handling connection", e);
         } finally {
-            connection.close();
+            if (session == null) {
+                connection.close();
+            }
         }
 
         if (pool != null) {
@@ -540,6 +625,13 @@ final class ServerConnectionHandler implements Runnable {
             }
         }
         threadEnded();
+
+        if (session != null) {
+            // This thread no longer counts as a connection handler, as it
+            // may serve the session for as long as the member lives.
+            session.run();
+            sessionEnded();
+        }
     }
 
     public void end() {
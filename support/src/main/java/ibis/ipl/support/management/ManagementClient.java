@@ -85,6 +85,12 @@ public class ManagementClient implements Runnable {
         if (name.equals("receivedBytesPerIbis")) {
             return ibis.getReceivedBytesPerIbis();
         }
+        if (name.equals("sendPortStatistics")) {
+            return ibis.getSendPortStatistics();
+        }
+        if (name.equals("receivePortStatistics")) {
+            return ibis.getReceivePortStatistics();
+        }
         if (name.equals("wonElections")) {
             return ibis.wonElections();
         }
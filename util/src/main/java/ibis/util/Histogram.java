@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010 Vrije Universiteit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values, such as message sizes or latencies
+ * in nanoseconds, with a fixed relative precision. Every power of two is
+ * divided into 16 buckets, so that a value is known to within 1/16th of itself,
+ * and the whole range of <code>long</code> fits in 960 buckets. Recording a
+ * value is cheap and does not lock, so that it can be done on every message,
+ * from any number of threads. Reads are snapshots that may miss values that
+ * are recorded concurrently.
+ */
+public final class Histogram {
+
+    private static final int SUB_BITS = 4;
+
+    private static final int SUB = 1 << SUB_BITS;
+
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    private static int bucket(long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) (value >>> shift) - SUB;
+    }
+
+    /** Returns the largest value that ends up in the specified bucket. */
+    private static long highest(int bucket) {
+        if (bucket < 2 * SUB) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long low = (long) (SUB + (bucket & (SUB - 1))) << shift;
+        return low + (1L << shift) - 1;
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value the value.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.getAndIncrement(bucket(value));
+        total.getAndAdd(value);
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+            // retry
+        }
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of values.
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean of the recorded values, or 0 if there are none.
+     *
+     * @return the mean.
+     */
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0.0 : (double) total.get() / count;
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the maximum.
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value below which the specified percentage of the recorded
+     * values lie, or 0 if there are none. This is the largest value of the
+     * bucket it is in, so it may be up to 1/16th too high.
+     *
+     * @param percentile the percentage, between 0 and 100.
+     * @return the value.
+     */
+    public long percentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        return percentile(snapshot, count, percentile);
+    }
+
+    private long percentile(long[] snapshot, long count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value)) {
+            return Long.toString((long) value);
+        }
+        return String.format("%.1f", value);
+    }
+
+    /**
+     * Returns a one-line summary of the recorded values: the count, mean,
+     * median, 90th, 99th and 99.9th percentiles and the maximum.
+     *
+     * @param unit the values are divided by this number, so that for instance
+     *             nanoseconds are shown as microseconds with a unit of 1000.
+     * @return the summary.
+     */
+    public String summary(double unit) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        double mean = count == 0 ? 0.0 : (double) total.get() / count;
+        return "count=" + count + " mean=" + format(mean / unit) + " p50=" + format(percentile(snapshot, count, 50) / unit) + " p90="
+                + format(percentile(snapshot, count, 90) / unit) + " p99=" + format(percentile(snapshot, count, 99) / unit) + " p99.9="
+                + format(percentile(snapshot, count, 99.9) / unit) + " max=" + format(max.get() / unit);
+    }
+
+    @Override
+    public String toString() {
+        return summary(1);
+    }
+}
@@ -17,7 +17,11 @@
 
 package ibis.util;
 
+import java.lang.reflect.Method;
 import java.util.LinkedList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,12 +30,128 @@ import org.slf4j.LoggerFactory;
  * Threadpool which uses timeouts to determine the number of threads. There is
  * no maximum number of threads in this pool, to prevent deadlocks.
  *
+ * When the system property <code>ibis.util.threadpool</code> is set to
+ * <code>virtual</code> and the JVM supports virtual threads, each task runs in
+ * a new virtual thread instead. Virtual threads are cheap to create, and do not
+ * occupy a platform thread while they are blocked in socket I/O.
+ *
  * @author Niels Drost.
  */
 public final class ThreadPool {
 
     static final Logger logger = LoggerFactory.getLogger(ThreadPool.class);
 
+    /** Property selecting the backend: <code>pool</code> or <code>virtual</code>. */
+    public static final String s_backend = "ibis.util.threadpool";
+
+    /** Creates virtual threads, or <code>null</code> when using the pool. */
+    private static final ThreadFactory virtualThreads = virtualThreadFactory();
+
+    /** Number of virtual threads currently running. */
+    private static final AtomicInteger nrOfVirtualThreads = new AtomicInteger();
+
+    private static final AtomicInteger maxVirtualThreads = new AtomicInteger();
+
+    /** Number of tasks started, and their start latency, for statistics. */
+    private static final AtomicLong nrOfTasks = new AtomicLong();
+
+    private static final AtomicLong totalStartLatency = new AtomicLong();
+
+    private static final AtomicLong maxStartLatency = new AtomicLong();
+
+    static {
+        if (logger.isInfoEnabled()) {
+            Runtime.getRuntime().addShutdownHook(new Thread("ThreadPool statistics") {
+                @Override
+                public void run() {
+                    long n = nrOfTasks.get();
+                    if (virtualThreads != null) {
+                        logger.info("maximum number of simultaneous virtual threads was: " + maxVirtualThreads.get());
+                    }
+                    if (n > 0) {
+                        logger.info("started " + n + " tasks, average start latency " + (totalStartLatency.get() / n / 1000) + " us, maximum "
+                                + (maxStartLatency.get() / 1000) + " us");
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Wraps a task to keep statistics on the time between its submission and the
+     * start of its execution.
+     */
+    private static final class Task implements Runnable {
+        private final Runnable work;
+
+        private final long submitted = System.nanoTime();
+
+        Task(Runnable work) {
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            long latency = System.nanoTime() - submitted;
+            nrOfTasks.incrementAndGet();
+            totalStartLatency.addAndGet(latency);
+            maxStartLatency.accumulateAndGet(latency, Math::max);
+            work.run();
+        }
+    }
+
+    /**
+     * Runs a task in a virtual thread, with the same failure semantics as a pool
+     * thread.
+     */
+    private static final class VirtualTask implements Runnable {
+        private final Runnable work;
+
+        private final String name;
+
+        VirtualTask(Runnable work, String name) {
+            this.work = work;
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            int n = nrOfVirtualThreads.incrementAndGet();
+            maxVirtualThreads.accumulateAndGet(n, Math::max);
+            try {
+                work.run();
+            } catch (Throwable t) {
+                logger.error("caught exception in virtual thread " + name, t);
+                System.exit(1);
+            } finally {
+                nrOfVirtualThreads.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns a factory for virtual threads if they are requested and
+     * supported, <code>null</code> otherwise. Reflection is used so that this
+     * class still runs on JVMs without virtual threads.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        String backend = System.getProperty(s_backend, "pool");
+        if (!"virtual".equalsIgnoreCase(backend)) {
+            if (!"pool".equalsIgnoreCase(backend)) {
+                logger.warn("Unknown " + s_backend + " value " + backend + ", using pool");
+            }
+            return null;
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Throwable e) {
+            logger.warn("Virtual threads not available in this JVM, using pool", e);
+            return null;
+        }
+    }
+
     private static final class PoolThread extends Thread {
 
         static {
@@ -177,7 +297,20 @@ public final class ThreadPool {
      * @param runnable the <code>Runnable</code> to be executed.
      * @param name     set the thread name for the duration of this run
      */
-    public static synchronized void createNew(Runnable runnable, String name) {
+    public static void createNew(Runnable runnable, String name) {
+        if (logger.isInfoEnabled()) {
+            runnable = new Task(runnable);
+        }
+        if (virtualThreads != null) {
+            Thread t = virtualThreads.newThread(new VirtualTask(runnable, name));
+            t.setName(name);
+            t.start();
+            return;
+        }
+        createPoolThread(runnable, name);
+    }
+
+    private static synchronized void createPoolThread(Runnable runnable, String name) {
         PoolThread poolThread;
 
         if (!threadPool.isEmpty()) {